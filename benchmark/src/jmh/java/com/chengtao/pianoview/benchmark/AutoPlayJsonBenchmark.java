@@ -0,0 +1,84 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.chengtao.pianoview.utils.AutoPlayJsonDecoder;
+import com.google.gson.Gson;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 自动播放 JSON 解码：流式解码到 {@link AutoPlayTimeline} 与 Gson 反射绑定到实体列表的对比。
+ * 配合 "-prof gc" 运行可以比较每次解码分配的内存。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class AutoPlayJsonBenchmark {
+  private static final Type ENTITY_LIST_TYPE = new TypeToken<List<JsonAutoPlayEntity>>() {
+  }.getType();
+
+  @Param({ "1000", "100000" })
+  public int notes;
+
+  private final Gson gson = new Gson();
+  private String json;
+
+  @Setup(Level.Trial) public void setUp() {
+    json = syntheticJson(notes);
+  }
+
+  @Benchmark public AutoPlayTimeline streamingDecoder() throws Exception {
+    return AutoPlayJsonDecoder.decode(new StringReader(json));
+  }
+
+  @Benchmark public List<JsonAutoPlayEntity> reflectiveBinding() {
+    return gson.fromJson(new StringReader(json), ENTITY_LIST_TYPE);
+  }
+
+  /**
+   * 与 AutoPlayEntity 相同的 Gson 映射(AutoPlayEntity 依赖 Android 框架，不能在这里直接使用)
+   */
+  public static class JsonAutoPlayEntity {
+    private KeyType type;
+    private int group;
+    private int position;
+    @SerializedName("break") private long currentBreakTime;
+  }
+
+  public enum KeyType {
+    @SerializedName("0")
+    BLACK, @SerializedName("1")
+    WHITE
+  }
+
+  static String syntheticJson(int notes) {
+    StringBuilder sb = new StringBuilder(notes * 56);
+    sb.append("[\n");
+    for (int i = 0; i < notes; i++) {
+      sb.append("  {\n    \"type\":")
+          .append(i % 5 == 0 ? 0 : 1)
+          .append(",\n    \"group\":")
+          .append(1 + i % 7)
+          .append(",\n    \"position\":")
+          .append(i % 5)
+          .append(",\n    \"break\":")
+          .append(125 * (1 + i % 4))
+          .append(i == notes - 1 ? "\n  }\n" : "\n  },\n");
+    }
+    sb.append("]");
+    return sb.toString();
+  }
+}
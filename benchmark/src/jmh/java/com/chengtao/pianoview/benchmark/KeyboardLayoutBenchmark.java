@@ -0,0 +1,39 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.utils.KeyboardLayout;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 按坐标查找琴键(每次触摸和滑动插值都会调用)的开销，坐标遍历整个键盘的宽度和高度。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class KeyboardLayoutBenchmark {
+  private static final int POINTS = 1024;
+
+  private KeyboardLayout layout;
+  private final int[] xs = new int[POINTS];
+  private final int[] ys = new int[POINTS];
+  private int next;
+
+  @Setup public void setUp() {
+    layout = new KeyboardLayout(84, 420, 52, 260);
+    for (int i = 0; i < POINTS; i++) {
+      xs[i] = (int) ((i * 7919L) % layout.getWidth());
+      ys[i] = (int) ((i * 104729L) % 420);
+    }
+  }
+
+  @Benchmark public int findKeyIndex() {
+    int i = next++ & (POINTS - 1);
+    return layout.findKeyIndex(xs[i], ys[i]);
+  }
+}
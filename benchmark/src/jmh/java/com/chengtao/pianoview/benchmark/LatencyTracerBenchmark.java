@@ -0,0 +1,46 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.utils.LatencyHistogram;
+import com.chengtao.pianoview.utils.LatencyTracer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 开启延迟追踪后一次触摸(四个时间戳和五个直方图记录)增加的开销，以及查询百分位数的开销。
+ * 用 -prof gc 运行可以确认记录时不分配对象。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class LatencyTracerBenchmark {
+  private LatencyTracer tracer;
+  private long event;
+
+  @Setup public void setUp() {
+    tracer = new LatencyTracer();
+    // 让百分位查询遍历有数据的桶
+    for (int i = 0; i < 100000; i++) {
+      tracer.getHistogram(LatencyTracer.Segment.TOTAL).record(i * 997L % 50000000L);
+    }
+  }
+
+  @Benchmark public void traceTouch() {
+    long now = System.nanoTime();
+    tracer.beginEvent(now - (event++ & 0xFFFFF), now);
+    tracer.markKeyResolved(System.nanoTime());
+    tracer.markAudioStart(System.nanoTime());
+    tracer.markAudioSubmitted(System.nanoTime());
+    tracer.endEvent();
+  }
+
+  @Benchmark public long p99() {
+    LatencyHistogram total = tracer.getHistogram(LatencyTracer.Segment.TOTAL);
+    return total.getP99();
+  }
+}
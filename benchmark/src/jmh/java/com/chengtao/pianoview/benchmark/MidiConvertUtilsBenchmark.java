@@ -0,0 +1,132 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.chengtao.pianoview.utils.MidiConvertUtils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 标准 MIDI 文件解析吞吐量，输入为生成的多音轨文件(每个音符有 note on/off，
+ * 使用 running status，并带有控制器事件和速度变化)。辅助计数器 "notes" 给出每秒解析的音符数。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class MidiConvertUtilsBenchmark {
+  @Param({ "2", "16" })
+  public int tracks;
+
+  @Param({ "10000" })
+  public int notesPerTrack;
+
+  private byte[] file;
+
+  @Setup(Level.Trial) public void setUp() {
+    file = syntheticMidi(tracks, notesPerTrack);
+  }
+
+  @Benchmark public AutoPlayTimeline convertByInputStream(
+      PianoConvertUtilsBenchmark.NoteCounter counter) throws Exception {
+    AutoPlayTimeline timeline =
+        MidiConvertUtils.convertByInputStream(new ByteArrayInputStream(file));
+    counter.notes += timeline.size();
+    return timeline;
+  }
+
+  static byte[] syntheticMidi(int tracks, int notesPerTrack) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeInt(out, 0x4D546864);
+    writeInt(out, 6);
+    writeShort(out, 1);
+    writeShort(out, tracks + 1);
+    writeShort(out, 480);
+    // 速度音轨: 每 16 拍变一次速度
+    ByteArrayOutputStream tempo = new ByteArrayOutputStream();
+    for (int i = 0; i < notesPerTrack / 16; i++) {
+      int value = 400000 + (i % 5) * 50000;
+      writeVarLen(tempo, i == 0 ? 0 : 480 * 16);
+      tempo.write(0xFF);
+      tempo.write(0x51);
+      tempo.write(3);
+      tempo.write(value >> 16);
+      tempo.write((value >> 8) & 0xFF);
+      tempo.write(value & 0xFF);
+    }
+    writeEndOfTrack(tempo);
+    writeTrack(out, tempo);
+    for (int t = 0; t < tracks; t++) {
+      ByteArrayOutputStream track = new ByteArrayOutputStream();
+      int channel = t % 9;
+      writeVarLen(track, 0);
+      track.write(0xB0 | channel);
+      track.write(7);
+      track.write(100);
+      for (int i = 0; i < notesPerTrack; i++) {
+        int note = 21 + (t * 7 + i * 5) % 88;
+        int length = 120 * (1 + (i + t) % 4);
+        // note on 之后全部使用 running status，力度为 0 表示 note off
+        writeVarLen(track, i == 0 ? 0 : 60);
+        if (i == 0) {
+          track.write(0x90 | channel);
+        }
+        track.write(note);
+        track.write(64 + i % 32);
+        writeVarLen(track, length);
+        track.write(note);
+        track.write(0);
+      }
+      writeEndOfTrack(track);
+      writeTrack(out, track);
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeTrack(ByteArrayOutputStream out, ByteArrayOutputStream track) {
+    byte[] data = track.toByteArray();
+    writeInt(out, 0x4D54726B);
+    writeInt(out, data.length);
+    out.write(data, 0, data.length);
+  }
+
+  private static void writeEndOfTrack(ByteArrayOutputStream track) {
+    writeVarLen(track, 0);
+    track.write(0xFF);
+    track.write(0x2F);
+    track.write(0);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value >>> 16);
+    writeShort(out, value);
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write((value >> 8) & 0xFF);
+    out.write(value & 0xFF);
+  }
+
+  private static void writeVarLen(ByteArrayOutputStream out, int value) {
+    int buffer = value & 0x7F;
+    while ((value >>= 7) > 0) {
+      buffer <<= 8;
+      buffer |= (value & 0x7F) | 0x80;
+    }
+    while (true) {
+      out.write(buffer & 0xFF);
+      if ((buffer & 0x80) == 0) {
+        break;
+      }
+      buffer >>= 8;
+    }
+  }
+}
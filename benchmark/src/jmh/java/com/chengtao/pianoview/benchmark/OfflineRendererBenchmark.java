@@ -0,0 +1,93 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.utils.OfflineRenderer;
+import com.chengtao.pianoview.utils.PianoConvertUtils;
+import com.chengtao.pianoview.utils.PianoKeyIndex;
+import com.chengtao.pianoview.utils.SampleBank;
+import com.chengtao.pianoview.utils.WavUtils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 离线渲染速度。采样库为生成的衰减正弦波(22050 Hz 立体声，每个采样 2 秒，与库中的采样格式一致)，
+ * 输出写入丢弃数据的通道，只测混音和编码。辅助计数器 "audioMs" 除以 1000 即为实时倍数。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class OfflineRendererBenchmark {
+  private static final int SAMPLE_RATE = 22050;
+
+  @Param({ "1000" })
+  public int notes;
+
+  @Param({ "11", "32" })
+  public int maxVoices;
+
+  private PianoConvertUtils.Score score;
+  private OfflineRenderer renderer;
+  private final WritableByteChannel discard = new WritableByteChannel() {
+    @Override public int write(ByteBuffer src) {
+      int remaining = src.remaining();
+      src.position(src.limit());
+      return remaining;
+    }
+
+    @Override public boolean isOpen() {
+      return true;
+    }
+
+    @Override public void close() {
+    }
+  };
+
+  @Setup(Level.Trial) public void setUp() throws Exception {
+    SampleBank bank = new SampleBank();
+    int frames = SAMPLE_RATE * 2;
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      double frequency = 440 * Math.pow(2, (PianoKeyIndex.toMidiNote(keyIndex) - 69) / 12.0);
+      short[] samples = new short[frames * 2];
+      for (int i = 0; i < frames; i++) {
+        double t = (double) i / SAMPLE_RATE;
+        short value = (short) (8000 * Math.exp(-3 * t) * Math.sin(2 * Math.PI * frequency * t));
+        samples[i * 2] = value;
+        samples[i * 2 + 1] = value;
+      }
+      bank.put(keyIndex, new WavUtils.Pcm(SAMPLE_RATE, 2, samples));
+    }
+    score = PianoConvertUtils.convertByConfigString(
+        PianoConvertUtilsBenchmark.syntheticScore(notes));
+    renderer = new OfflineRenderer(bank).setMaxVoices(maxVoices);
+  }
+
+  @Benchmark public OfflineRenderer.Result render(AudioCounter counter) throws IOException {
+    OfflineRenderer.Result result = renderer.render(score.getTimeline(), discard);
+    counter.audioMs += result.getAudioDurationMs();
+    return result;
+  }
+
+  /**
+   * 以操作计数的方式报告渲染的音频时长，JMH 会将其换算为每秒渲染的音频毫秒数。
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class AudioCounter {
+    public long audioMs;
+
+    @Setup(Level.Iteration) public void reset() {
+      audioMs = 0;
+    }
+  }
+}
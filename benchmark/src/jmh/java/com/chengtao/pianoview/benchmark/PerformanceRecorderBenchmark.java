@@ -0,0 +1,38 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.utils.PerformanceRecorder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 录制一次按键(按下和抬起)在触摸处理路径上增加的开销，包括取时间戳。
+ * 用 -prof gc 运行可以确认每个事件不分配对象。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PerformanceRecorderBenchmark {
+  private PerformanceRecorder recorder;
+  private int key;
+
+  @Setup public void setUp() {
+    recorder = new PerformanceRecorder();
+    recorder.start();
+  }
+
+  @Benchmark public void recordKeyDownUp() {
+    int keyIndex = key++ % 88;
+    recorder.recordKeyDown(keyIndex, System.nanoTime());
+    recorder.recordKeyUp(keyIndex, System.nanoTime());
+  }
+
+  @Benchmark public long nanoTimeBaseline() {
+    return System.nanoTime() + System.nanoTime();
+  }
+}
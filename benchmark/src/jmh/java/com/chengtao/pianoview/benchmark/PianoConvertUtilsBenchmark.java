@@ -0,0 +1,98 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.utils.PianoConvertUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 简谱配置解析吞吐量。除了每秒解析次数外，辅助计数器 "notes" 给出每秒解析的音符数。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class PianoConvertUtilsBenchmark {
+  @Param({ "flight_of_the_bumble_bee", "simple_little_star_config", "synthetic_10000",
+      "synthetic_100000" })
+  public String score;
+
+  private String configString;
+
+  @Setup(Level.Trial) public void setUp() throws IOException {
+    if (score.startsWith("synthetic_")) {
+      configString = syntheticScore(Integer.parseInt(score.substring("synthetic_".length())));
+    } else {
+      configString = readAsset(score);
+    }
+  }
+
+  @Benchmark public Object convertByConfigString(NoteCounter counter) throws Exception {
+    PianoConvertUtils.Score result = PianoConvertUtils.convertByConfigString(configString);
+    counter.notes += result.getKeyCount();
+    return result;
+  }
+
+  /**
+   * 以操作计数的方式报告音符数，JMH 会将其换算为 notes/s。
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class NoteCounter {
+    public long notes;
+
+    @Setup(Level.Iteration) public void reset() {
+      notes = 0;
+    }
+  }
+
+  /**
+   * 生成覆盖所有音符写法(八度、升降记号、倍数)的合成乐谱
+   *
+   * @param notes 音符数
+   * @return 配置字符串
+   */
+  static String syntheticScore(int notes) {
+    String[] octaves = { "", "HO", "LO" };
+    String[] accidentals = { "", "H", "M", "L" };
+    String[] times = { "", "*0.25", "*0.5", "*2", "*4" };
+    StringBuilder sb = new StringBuilder(notes * 8);
+    sb.append("{\n  tune:C;\n  frequency:240;\n  name:\"synthetic\";\n}\n");
+    for (int i = 0; i < notes; i++) {
+      sb.append(octaves[i % octaves.length])
+          .append(accidentals[(i / 3) % accidentals.length])
+          .append(i % 8)
+          .append(times[(i / 7) % times.length]);
+      sb.append(i % 8 == 7 ? " |\n" : ", ");
+    }
+    return sb.toString();
+  }
+
+  private static String readAsset(String name) throws IOException {
+    InputStream is = PianoConvertUtilsBenchmark.class.getClassLoader().getResourceAsStream(name);
+    if (is == null) {
+      throw new IOException("missing asset " + name);
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toString("UTF-8");
+    } finally {
+      is.close();
+    }
+  }
+}
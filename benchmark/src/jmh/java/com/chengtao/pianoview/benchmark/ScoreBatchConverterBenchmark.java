@@ -0,0 +1,99 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.utils.ScoreBatchConverter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 批量转换吞吐量，输入为生成的乐谱库(每个文件为不同的合成乐谱)，编译结果写入输出目录。
+ * 辅助计数器 "files" 给出每秒转换的文件数。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class ScoreBatchConverterBenchmark {
+  @Param({ "1", "2", "4" })
+  public int parallelism;
+
+  @Param({ "200" })
+  public int files;
+
+  @Param({ "500" })
+  public int notesPerFile;
+
+  private File corpus;
+  private File output;
+  private List<File> sources;
+  private ScoreBatchConverter converter;
+
+  @Setup(Level.Trial) public void setUp() throws IOException {
+    corpus = File.createTempFile("score-corpus", "");
+    corpus.delete();
+    corpus.mkdirs();
+    output = new File(corpus, "out");
+    Charset utf8 = Charset.forName("UTF-8");
+    for (int i = 0; i < files; i++) {
+      // 音符数各不相同，模拟大小不一的乐谱
+      String score = PianoConvertUtilsBenchmark.syntheticScore(notesPerFile / 2 + i % notesPerFile);
+      FileOutputStream fos = new FileOutputStream(new File(corpus, "song" + i + ".txt"));
+      try {
+        fos.write(score.getBytes(utf8));
+      } finally {
+        fos.close();
+      }
+    }
+    sources = ScoreBatchConverter.listScores(corpus);
+    converter = new ScoreBatchConverter(parallelism);
+  }
+
+  @TearDown(Level.Trial) public void tearDown() {
+    converter.shutdown();
+    delete(corpus);
+  }
+
+  @Benchmark public Object convert(FileCounter counter) {
+    List<ScoreBatchConverter.Result> results =
+        converter.convert(sources, null, output, null).get();
+    counter.files += results.size();
+    return results;
+  }
+
+  /**
+   * 以操作计数的方式报告文件数，JMH 会将其换算为 files/s。
+   */
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class FileCounter {
+    public long files;
+
+    @Setup(Level.Iteration) public void reset() {
+      files = 0;
+    }
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
@@ -0,0 +1,59 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.utils.PianoConvertUtils;
+import com.chengtao.pianoview.utils.ScoreBinaryUtils;
+import com.chengtao.pianoview.utils.ScoreCache;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 再次打开同一首乐谱的开销：每次重新解析、内存缓存命中以及磁盘缓存命中(新的缓存实例，映射已编译的文件)。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ScoreCacheBenchmark {
+  @Param({ "1000", "10000" })
+  public int notes;
+
+  private byte[] source;
+  private File directory;
+  private ScoreCache memoryCache;
+
+  @Setup(Level.Trial) public void setUp() throws Exception {
+    source = PianoConvertUtilsBenchmark.syntheticScore(notes).getBytes(Charset.forName("UTF-8"));
+    directory = File.createTempFile("score-cache", "");
+    directory.delete();
+    memoryCache = new ScoreCache(directory, Long.MAX_VALUE);
+    memoryCache.get(ScoreCache.SourceFormat.NOTATION, source);
+  }
+
+  @TearDown(Level.Trial) public void tearDown() {
+    memoryCache.clear();
+    directory.delete();
+  }
+
+  @Benchmark public Object parse() throws Exception {
+    return PianoConvertUtils.convertByInputStream(new ByteArrayInputStream(source));
+  }
+
+  @Benchmark public ScoreBinaryUtils.BinaryScore memoryHit() throws Exception {
+    return memoryCache.get(ScoreCache.SourceFormat.NOTATION, source);
+  }
+
+  @Benchmark public ScoreBinaryUtils.BinaryScore diskHit() throws Exception {
+    return new ScoreCache(directory, Long.MAX_VALUE).get(ScoreCache.SourceFormat.NOTATION, source);
+  }
+}
@@ -0,0 +1,80 @@
+package com.chengtao.pianoview.benchmark;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.chengtao.pianoview.listener.OnAutoPlayNoteListener;
+import com.chengtao.pianoview.utils.AutoPlayScheduler;
+import com.chengtao.pianoview.utils.PianoConvertUtils;
+import com.chengtao.pianoview.utils.ScoreBinaryUtils;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 时间线编译和调度：把解析结果编译为二进制乐谱、读取编译结果，以及自动播放调度器
+ * 遍历整个时间线(不等待，只测前瞻窗口和回调的开销)。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TimelineBenchmark {
+  @Param({ "1000", "100000" })
+  public int notes;
+
+  private PianoConvertUtils.Score score;
+  private AutoPlayTimeline timeline;
+  private ByteArrayOutputStream out;
+  private ByteBuffer compiled;
+
+  @Setup public void setUp() throws Exception {
+    score = PianoConvertUtils.convertByConfigString(
+        PianoConvertUtilsBenchmark.syntheticScore(notes));
+    timeline = score.getTimeline();
+    out = new ByteArrayOutputStream(notes * 8 + 1024);
+    ScoreBinaryUtils.write(score, out);
+    compiled = ByteBuffer.wrap(out.toByteArray());
+  }
+
+  @Benchmark public int compile() throws Exception {
+    out.reset();
+    ScoreBinaryUtils.write(score, out);
+    return out.size();
+  }
+
+  @Benchmark public long load() throws Exception {
+    ScoreBinaryUtils.BinaryScore binary = ScoreBinaryUtils.wrap(compiled.duplicate());
+    long total = 0;
+    for (int i = 0; i < binary.size(); i++) {
+      total += binary.getBreakTime(i);
+    }
+    return total;
+  }
+
+  @Benchmark public void schedule(final Blackhole blackhole) throws Exception {
+    AutoPlayScheduler scheduler = new AutoPlayScheduler(16, 1500, new OnAutoPlayNoteListener() {
+      @Override
+      public void onAutoPlayNoteDown(int keyIndex, int lowestKeyIndex, int highestKeyIndex) {
+        blackhole.consume(keyIndex + lowestKeyIndex + highestKeyIndex);
+      }
+
+      @Override public void onAutoPlayNoteUp() {
+      }
+    }) {
+      @Override protected void sleep(long millis) {
+      }
+    };
+    for (int i = 0; i < timeline.size(); i++) {
+      scheduler.offer(timeline.getType(i), timeline.getGroup(i), timeline.getPosition(i),
+          timeline.getBreakTime(i));
+    }
+    scheduler.drain();
+  }
+}
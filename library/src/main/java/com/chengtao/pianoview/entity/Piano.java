@@ -12,6 +12,8 @@ import android.graphics.drawable.ScaleDrawable;
 import androidx.core.content.ContextCompat;
 import android.view.Gravity;
 import com.chengtao.pianoview.R;
+import com.chengtao.pianoview.utils.KeyboardLayout;
+import com.chengtao.pianoview.utils.PianoKeyIndex;
 import com.google.gson.annotations.SerializedName;
 import java.util.ArrayList;
 
@@ -27,6 +29,10 @@ public class Piano {
   //黑白键集合
   private ArrayList<PianoKey[]> blackPianoKeys = new ArrayList<>(BLACK_PIANO_KEY_GROUPS);
   private ArrayList<PianoKey[]> whitePianoKeys = new ArrayList<>(WHITE_PIANO_KEY_GROUPS);
+  //按钢琴键编号排列的所有键
+  private final PianoKey[] keysByIndex = new PianoKey[PIANO_NUMS];
+  //键盘布局，用于计算键的位置和按坐标查找
+  private KeyboardLayout layout;
   //黑白键高度和宽度
   private int blackKeyWidth;
   private int blackKeyHeight;
@@ -78,6 +84,8 @@ public class Piano {
       blackKeyHeight = (int) ((float) blackDrawable.getIntrinsicHeight() * scaleY);
       whiteKeyWidth = (int) ((float) whiteDrawable.getIntrinsicWidth() * scaleX);
       whiteKeyHeight = (int) ((float) whiteDrawable.getIntrinsicHeight() * scaleY);
+      layout = new KeyboardLayout(whiteKeyWidth, whiteKeyHeight, blackKeyWidth, blackKeyHeight);
+      pianoWith = layout.getWidth();
 
       //初始化黑键
       for (int i = 0; i < BLACK_PIANO_KEY_GROUPS; i++) {
@@ -96,12 +104,13 @@ public class Piano {
           keys[j].setType(PianoKeyType.BLACK);
           keys[j].setGroup(i);
           keys[j].setPositionOfGroup(j);
+          indexKey(keys[j]);
           keys[j].setVoiceId(getVoiceFromResources("b" + i + j));
           keys[j].setPressed(false);
           keys[j].setKeyDrawable(
               new ScaleDrawable(ContextCompat.getDrawable(context, R.drawable.black_piano_key),
                   Gravity.NO_GRAVITY, 1, scaleY).getDrawable());
-          setBlackKeyDrawableBounds(i, j, keys[j].getKeyDrawable());
+          setKeyDrawableBounds(keys[j]);
           areaOfKey[0] = keys[j].getKeyDrawable().getBounds();
           keys[j].setAreaOfKey(areaOfKey);
           if (i == 0) {
@@ -148,13 +157,13 @@ public class Piano {
           mKeys[j].setType(PianoKeyType.WHITE);
           mKeys[j].setGroup(i);
           mKeys[j].setPositionOfGroup(j);
+          indexKey(mKeys[j]);
           mKeys[j].setVoiceId(getVoiceFromResources("w" + i + j));
           mKeys[j].setPressed(false);
           mKeys[j].setKeyDrawable(
               new ScaleDrawable(ContextCompat.getDrawable(context, R.drawable.white_piano_key),
                   Gravity.NO_GRAVITY, 1, scaleY).getDrawable());
-          setWhiteKeyDrawableBounds(i, j, mKeys[j].getKeyDrawable());
-          pianoWith += whiteKeyWidth;
+          setKeyDrawableBounds(mKeys[j]);
           if (i == 0) {
             switch (j) {
               case 0:
@@ -222,6 +231,13 @@ public class Piano {
     }
   }
 
+  private void indexKey(PianoKey key) {
+    int keyIndex = PianoKeyIndex.indexOf(key.getType().getValue(), key.getGroup(),
+        key.getPositionOfGroup());
+    key.setKeyIndex(keyIndex);
+    keysByIndex[keyIndex] = key;
+  }
+
   public enum PianoVoice {
     DO, RE, MI, FA, SO, LA, SI
   }
@@ -327,49 +343,69 @@ public class Piano {
   }
 
   /**
-   * 设置白色键图案的位置
+   * 按键盘布局设置钢琴键图案的位置
    *
-   * @param group 组数，从0开始
-   * @param positionOfGroup 在本组中的位置
-   * @param drawable 要设置的Drawale对象
+   * @param key 已编号的钢琴键
    */
-  private void setWhiteKeyDrawableBounds(int group, int positionOfGroup, Drawable drawable) {
-    int offset = 0;
-    if (group == 0) {
-      offset = 5;
+  private void setKeyDrawableBounds(PianoKey key) {
+    int keyIndex = key.getKeyIndex();
+    key.getKeyDrawable().setBounds(layout.getLeft(keyIndex), layout.getTop(keyIndex),
+        layout.getRight(keyIndex),
+        layout.getBottom(keyIndex));
+  }
+
+  public ArrayList<PianoKey[]> getWhitePianoKeys() {
+    return whitePianoKeys;
+  }
+
+  public ArrayList<PianoKey[]> getBlackPianoKeys() {
+    return blackPianoKeys;
+  }
+
+  /**
+   * 按编号获取钢琴键
+   *
+   * @param keyIndex 钢琴键编号(0~87，即 MIDI 音符号减 21)
+   * @return 钢琴键，编号超出范围时返回null
+   */
+  public PianoKey getKey(int keyIndex) {
+    if (keyIndex < 0 || keyIndex >= PIANO_NUMS) {
+      return null;
     }
-    drawable.setBounds((7 * group - 5 + offset + positionOfGroup) * whiteKeyWidth, 0,
-        (7 * group - 4 + offset + positionOfGroup) * whiteKeyWidth, whiteKeyHeight);
+    return keysByIndex[keyIndex];
   }
 
   /**
-   * 设置黑色键图案的位置
+   * 按类型、组和组内位置获取钢琴键
    *
+   * @param type 钢琴键类型
    * @param group 组数，从0开始
-   * @param positionOfGroup 组内的位置
-   * @param drawable 要设置的Drawale对象
+   * @param positionOfGroup 组内位置
+   * @return 钢琴键，不存在时返回null
    */
-  private void setBlackKeyDrawableBounds(int group, int positionOfGroup, Drawable drawable) {
-    int whiteOffset = 0;
-    int blackOffset = 0;
-    if (group == 0) {
-      whiteOffset = 5;
-    }
-    if (positionOfGroup == 2 || positionOfGroup == 3 || positionOfGroup == 4) {
-      blackOffset = 1;
+  public PianoKey getKey(PianoKeyType type, int group, int positionOfGroup) {
+    if (type == null) {
+      return null;
     }
-    drawable.setBounds((7 * group - 4 + whiteOffset + blackOffset + positionOfGroup) * whiteKeyWidth
-            - blackKeyWidth / 2, 0,
-        (7 * group - 4 + whiteOffset + blackOffset + positionOfGroup) * whiteKeyWidth
-            + blackKeyWidth / 2, blackKeyHeight);
+    return getKey(PianoKeyIndex.indexOf(type.getValue(), group, positionOfGroup));
   }
 
-  public ArrayList<PianoKey[]> getWhitePianoKeys() {
-    return whitePianoKeys;
+  /**
+   * 按坐标查找钢琴键，见 {@link KeyboardLayout#findKeyIndex}
+   *
+   * @param x 横坐标(整个键盘的像素坐标)
+   * @param y 纵坐标
+   * @return 钢琴键编号，不在任何键上时返回-1
+   */
+  public int findKeyIndex(int x, int y) {
+    return layout == null ? -1 : layout.findKeyIndex(x, y);
   }
 
-  public ArrayList<PianoKey[]> getBlackPianoKeys() {
-    return blackPianoKeys;
+  /**
+   * @return 键盘布局，缩放比例无效时为null
+   */
+  public KeyboardLayout getLayout() {
+    return layout;
   }
 
   public int getPianoWith() {
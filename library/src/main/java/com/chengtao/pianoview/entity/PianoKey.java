@@ -32,6 +32,8 @@ public class PianoKey {
   private String letterName;
   //被点击的手指的下标
   private int fingerID = -1;
+  //钢琴键编号(0~87，即 MIDI 音符号减 21)
+  private int keyIndex = -1;
 
   public Piano.PianoKeyType getType() {
     return type;
@@ -65,6 +67,17 @@ public class PianoKey {
     this.positionOfGroup = positionOfGroup;
   }
 
+  /**
+   * @return 钢琴键编号(0~87，即 MIDI 音符号减 21，见 {@code PianoKeyIndex})
+   */
+  public int getKeyIndex() {
+    return keyIndex;
+  }
+
+  public void setKeyIndex(int keyIndex) {
+    this.keyIndex = keyIndex;
+  }
+
   public Drawable getKeyDrawable() {
     return keyDrawable;
   }
@@ -0,0 +1,302 @@
+package com.chengtao.pianoview.utils;
+
+import java.util.Arrays;
+
+/**
+ * 音频引擎的健康统计快照(不可变)：采样加载耗时、常驻内存、发声数，以及因采样加载失败、
+ * 超出最大发声数或后端失败而丢失的音符。由 {@link AudioUtils#getMetrics()} 获取，时间单位均为纳秒。
+ *
+ * <p>SoundPool 不回调音符的结束，也不报告 underrun，因此发声数按采样时长估算，
+ * 后端失败以 {@code SoundPool.play} 返回 0 计。
+ */
+public final class AudioMetrics {
+  private final int samplesExpected;
+  private final int samplesLoaded;
+  private final int loadFailures;
+  private final long loadTimeNanos;
+  private final boolean loadFinished;
+  private final long loadP50Nanos;
+  private final long loadP95Nanos;
+  private final long loadMaxNanos;
+  private final long residentBytes;
+  private final int maxVoices;
+  private final int activeVoices;
+  private final int peakVoices;
+  private final long notesPlayed;
+  private final long notLoadedDrops;
+  private final long voiceCapDrops;
+  private final long backendErrors;
+
+  private AudioMetrics(Recorder recorder, long nowNanos) {
+    samplesExpected = recorder.samplesExpected;
+    samplesLoaded = recorder.samplesLoaded;
+    loadFailures = recorder.loadFailures;
+    loadFinished = recorder.loadEndNanos != 0;
+    if (recorder.loadStartNanos == 0) {
+      loadTimeNanos = 0;
+    } else {
+      loadTimeNanos = (loadFinished ? recorder.loadEndNanos : nowNanos) - recorder.loadStartNanos;
+    }
+    loadP50Nanos = recorder.loadHistogram.getP50();
+    loadP95Nanos = recorder.loadHistogram.getP95();
+    loadMaxNanos = recorder.loadHistogram.getMax();
+    residentBytes = recorder.residentBytes;
+    maxVoices = recorder.voiceEnds.length;
+    activeVoices = recorder.activeVoices(nowNanos);
+    peakVoices = recorder.peakVoices;
+    notesPlayed = recorder.notesPlayed;
+    notLoadedDrops = recorder.notLoadedDrops;
+    voiceCapDrops = recorder.voiceCapDrops;
+    backendErrors = recorder.backendErrors;
+  }
+
+  /**
+   * @return 需要加载的采样数
+   */
+  public int getSamplesExpected() {
+    return samplesExpected;
+  }
+
+  public int getSamplesLoaded() {
+    return samplesLoaded;
+  }
+
+  public int getLoadFailures() {
+    return loadFailures;
+  }
+
+  /**
+   * @return 开始加载到全部采样加载完成的耗时，尚未完成时为到目前为止的耗时
+   */
+  public long getLoadTimeNanos() {
+    return loadTimeNanos;
+  }
+
+  public boolean isLoadFinished() {
+    return loadFinished;
+  }
+
+  /**
+   * @return 单个采样从提交加载到加载完成的耗时中位数
+   */
+  public long getLoadP50Nanos() {
+    return loadP50Nanos;
+  }
+
+  public long getLoadP95Nanos() {
+    return loadP95Nanos;
+  }
+
+  public long getLoadMaxNanos() {
+    return loadMaxNanos;
+  }
+
+  /**
+   * @return 已加载采样解码后的 PCM 字节数(按 WAV 头部估算)
+   */
+  public long getResidentBytes() {
+    return residentBytes;
+  }
+
+  /**
+   * @return 最大发声数(SoundPool 的 maxStreams)
+   */
+  public int getMaxVoices() {
+    return maxVoices;
+  }
+
+  /**
+   * @return 当前仍在发声的音符数(估算)
+   */
+  public int getActiveVoices() {
+    return activeVoices;
+  }
+
+  public int getPeakVoices() {
+    return peakVoices;
+  }
+
+  /**
+   * @return 提交给 SoundPool 的音符数
+   */
+  public long getNotesPlayed() {
+    return notesPlayed;
+  }
+
+  /**
+   * @return 按下时采样尚未加载、随后加载失败而丢失的音符数。加载成功的音符会在加载完成后补发，不计入
+   */
+  public long getNotLoadedDrops() {
+    return notLoadedDrops;
+  }
+
+  /**
+   * @return 因超出最大发声数而被 SoundPool 提前截断的音符数
+   */
+  public long getVoiceCapDrops() {
+    return voiceCapDrops;
+  }
+
+  /**
+   * @return SoundPool 拒绝播放的次数
+   */
+  public long getBackendErrors() {
+    return backendErrors;
+  }
+
+  @Override public String toString() {
+    return "AudioMetrics [loaded=" + samplesLoaded + "/" + samplesExpected + ", failures="
+        + loadFailures + ", loadTime=" + loadTimeNanos / 1000000 + "ms, loadP95="
+        + loadP95Nanos / 1000 + "us, resident=" + residentBytes / 1024 + "KB, voices="
+        + activeVoices + "/" + maxVoices + ", peak=" + peakVoices + ", played=" + notesPlayed
+        + ", notLoaded=" + notLoadedDrops + ", voiceCap=" + voiceCapDrops + ", backendErrors="
+        + backendErrors + "]";
+  }
+
+  /**
+   * 统计的记录端，由 {@link AudioUtils} 在加载线程、回调线程和播放线程上调用，方法均加锁
+   */
+  static final class Recorder {
+    // 时长未知(非 WAV 采样)时按此估算发声时间
+    static final long DEFAULT_VOICE_NANOS = 2000000000L;
+
+    private final long[] loadRequestNanos = new long[PianoKeyIndex.KEY_COUNT];
+    private final long[] sampleBytes = new long[PianoKeyIndex.KEY_COUNT];
+    private final long[] sampleNanos = new long[PianoKeyIndex.KEY_COUNT];
+    private final boolean[] loaded = new boolean[PianoKeyIndex.KEY_COUNT];
+    private final LatencyHistogram loadHistogram = new LatencyHistogram();
+    // 每个发声槽位的预计结束时间
+    private final long[] voiceEnds;
+    private int samplesExpected;
+    private int samplesLoaded;
+    private int loadFailures;
+    private long loadStartNanos;
+    private long loadEndNanos;
+    private long residentBytes;
+    private int peakVoices;
+    private long notesPlayed;
+    private long notLoadedDrops;
+    private long voiceCapDrops;
+    private long backendErrors;
+
+    Recorder(int maxVoices) {
+      voiceEnds = new long[Math.max(1, maxVoices)];
+    }
+
+    synchronized void loadStarted(int expected, long nanos) {
+      samplesExpected = expected;
+      loadStartNanos = nanos;
+      loadEndNanos = 0;
+      if (expected == 0) {
+        loadEndNanos = nanos;
+      }
+    }
+
+    /**
+     * 采样的格式信息，可以在加载完成前后任意时刻提供
+     */
+    synchronized void sampleInfo(int keyIndex, long bytes, long durationNanos) {
+      if (loaded[keyIndex]) {
+        residentBytes += bytes - sampleBytes[keyIndex];
+      }
+      sampleBytes[keyIndex] = bytes;
+      sampleNanos[keyIndex] = durationNanos;
+    }
+
+    synchronized void loadRequested(int keyIndex, long nanos) {
+      loadRequestNanos[keyIndex] = nanos;
+    }
+
+    synchronized void loadCompleted(int keyIndex, boolean success, long nanos) {
+      if (loadRequestNanos[keyIndex] != 0) {
+        loadHistogram.record(nanos - loadRequestNanos[keyIndex]);
+        loadRequestNanos[keyIndex] = 0;
+      }
+      if (success && !loaded[keyIndex]) {
+        loaded[keyIndex] = true;
+        samplesLoaded++;
+        residentBytes += sampleBytes[keyIndex];
+      } else if (!success) {
+        loadFailures++;
+      }
+      if (loadEndNanos == 0 && loadStartNanos != 0
+          && samplesLoaded + loadFailures >= samplesExpected) {
+        loadEndNanos = nanos;
+      }
+    }
+
+    /**
+     * 记录等待加载的音符因采样加载失败而被丢弃
+     *
+     * @param notes 丢弃的音符数
+     */
+    synchronized void notLoadedDropped(int notes) {
+      notLoadedDrops += notes;
+    }
+
+    /**
+     * 记录一次提交给后端的播放
+     *
+     * @param success 后端是否接受
+     */
+    synchronized void played(int keyIndex, boolean success, long nanos) {
+      if (!success) {
+        backendErrors++;
+        return;
+      }
+      notesPlayed++;
+      int active = 0;
+      int slot = -1;
+      int oldest = 0;
+      for (int i = 0; i < voiceEnds.length; i++) {
+        if (isSounding(voiceEnds[i], nanos)) {
+          active++;
+          if (voiceEnds[i] - voiceEnds[oldest] < 0) {
+            oldest = i;
+          }
+        } else if (slot < 0) {
+          slot = i;
+        }
+      }
+      if (active == voiceEnds.length) {
+        // 所有槽位都在发声，SoundPool 会停止最早的一个
+        voiceCapDrops++;
+        slot = oldest;
+      } else {
+        active++;
+      }
+      long duration = sampleNanos[keyIndex];
+      long end = nanos + (duration > 0 ? duration : DEFAULT_VOICE_NANOS);
+      // 0 表示空闲槽位
+      voiceEnds[slot] = end == 0 ? 1 : end;
+      if (active > peakVoices) {
+        peakVoices = active;
+      }
+    }
+
+    synchronized void released() {
+      residentBytes = 0;
+      samplesLoaded = 0;
+      Arrays.fill(loaded, false);
+      Arrays.fill(voiceEnds, 0);
+    }
+
+    synchronized AudioMetrics snapshot(long nowNanos) {
+      return new AudioMetrics(this, nowNanos);
+    }
+
+    private int activeVoices(long nowNanos) {
+      int active = 0;
+      for (long end : voiceEnds) {
+        if (isSounding(end, nowNanos)) {
+          active++;
+        }
+      }
+      return active;
+    }
+
+    private static boolean isSounding(long end, long nowNanos) {
+      return end != 0 && end - nowNanos > 0;
+    }
+  }
+}
@@ -8,14 +8,18 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
 import com.chengtao.pianoview.entity.Piano;
 import com.chengtao.pianoview.entity.PianoKey;
 import com.chengtao.pianoview.listener.LoadAudioMessage;
 import com.chengtao.pianoview.listener.OnLoadAudioListener;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -41,41 +45,52 @@ public class AudioUtils implements LoadAudioMessage {
   //发送进度的间隙时间
   private final static int SEND_PROGRESS_MESSAGE_BREAK_TIME = 500;
   //音频池，用于播放音频
-  private SoundPool pool;
+  private volatile SoundPool pool;
   //上下文
   private Context context;
   //加载音频接口
   private OnLoadAudioListener loadAudioListener;
-  //存放黑键和白键的音频加载后的ID的集合（位置 -> sampleId）
-  private SparseIntArray whiteKeyMusics = new SparseIntArray();
-  private SparseIntArray blackKeyMusics = new SparseIntArray();
-  // 位置 -> resId（用于按需加载）
-  private SparseIntArray whiteKeyResIds = new SparseIntArray();
-  private SparseIntArray blackKeyResIds = new SparseIntArray();
+  //按钢琴键编号存放音频加载后的ID（0 表示尚未加载，LOADING 表示已占位、正在提交加载）
+  private final int[] keyMusics = new int[Piano.PIANO_NUMS];
+  private static final int LOADING = -1;
+  //按钢琴键编号存放resId（用于按需加载）
+  private final int[] keyResIds = new int[Piano.PIANO_NUMS];
+  // 保护 keyMusics、loadedSamples、pendingPlays 和 earlyLoads，播放可能来自任意线程。
+  // SoundPool.load 会解码采样，不能在持有锁时调用
+  private final Object sampleLock = new Object();
   // sampleId -> 已加载标记
   private SparseBooleanArray loadedSamples = new SparseBooleanArray();
-  // sampleId -> 待播放次数（在加载完成后立即播放）
-  private SparseIntArray pendingPlays = new SparseIntArray();
+  // 钢琴键编号 -> 待播放音符的增益（在加载完成后按原力度立即播放）
+  private SparseArray<ArrayList<Float>> pendingPlays = new SparseArray<>();
+  // sampleId -> 加载状态，load() 返回并发布 sampleId 之前就已完成加载的采样
+  private SparseIntArray earlyLoads = new SparseIntArray();
   //是否加载成功
   private boolean isLoadFinish = false;
   //是否正在加载
   private boolean isLoading = false;
   //是否已释放
   private volatile boolean released = false;
+  //MIDI 力度最大值
+  public static final int MAX_VELOCITY = 127;
   //用于处理进度消息
   private Handler handler;
   private AudioManager audioManager;
-  private float cachedVolume = 1f;
-  private long lastVolumeUpdateMs = 0L;
+  private volatile float cachedVolume = 1f;
+  private volatile long lastVolumeUpdateMs = 0L;
   private static final long VOLUME_REFRESH_INTERVAL_MS = 250L;
   private long currentTime;
   private int loadNum;
-  private int minSoundId = -1;
-  private int maxSoundId = -1;
+  //需要加载的音频数(resId 不为 0 的琴键数)
+  private volatile int loadTotal = Piano.PIANO_NUMS;
+  //加载耗时、发声数和丢失音符的统计
+  private final AudioMetrics.Recorder metrics;
+  //可选的触摸到发声延迟追踪
+  private LatencyTracer latencyTracer;
 
   private AudioUtils(Context context, OnLoadAudioListener loadAudioListener, int maxStream) {
     this.context = context;
     this.loadAudioListener = loadAudioListener;
+    metrics = new AudioMetrics.Recorder(maxStream);
     handler = new AudioStatusHandler(context.getMainLooper());
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
       pool = new SoundPool.Builder().setMaxStreams(maxStream)
@@ -121,92 +136,73 @@ public class AudioUtils implements LoadAudioMessage {
       if (!isLoading && !isLoadFinish) {
         isLoading = true;
         pool.setOnLoadCompleteListener((soundPool, sampleId, status) -> {
-          loadedSamples.put(sampleId, true);
-          int pending = pendingPlays.get(sampleId, 0);
-          if (pending > 0) {
-            for (int i = 0; i < pending; i++) {
-              play(sampleId);
-            }
-            pendingPlays.delete(sampleId);
-          }
-          loadNum++;
-          if (loadNum >= Piano.PIANO_NUMS) {
-            isLoadFinish = true;
-            sendProgressMessage(100);
-            sendFinishMessage();
-            // 静音预热，避免首次播放卡顿（单次触发，不占用持续stream）
-            if (whiteKeyMusics.size() > 0) {
-              pool.play(whiteKeyMusics.get(0), 0f, 0f, 1, 0, 1f);
+          int keyIndex = -1;
+          synchronized (sampleLock) {
+            for (int i = 0; i < Piano.PIANO_NUMS; i++) {
+              if (keyMusics[i] == sampleId) {
+                keyIndex = i;
+                break;
+              }
             }
-          } else {
-            if (System.currentTimeMillis() - currentTime >= SEND_PROGRESS_MESSAGE_BREAK_TIME) {
-              sendProgressMessage((int) (((float) loadNum / (float) Piano.PIANO_NUMS) * 100f));
-              currentTime = System.currentTimeMillis();
+            if (keyIndex < 0) {
+              // load() 尚未返回，由提交加载的线程发布 sampleId 后处理
+              earlyLoads.put(sampleId, status);
+              return;
             }
           }
+          onSampleLoaded(keyIndex, sampleId, status == 0);
         });
         loader.execute(() -> {
           sendStartMessage();
-          // 先收集所有resId与位置映射，便于按需加载
-          ArrayList<PianoKey[]> whiteKeys = piano.getWhitePianoKeys();
-          int whiteKeyPos = 0;
-          for (int i = 0; i < whiteKeys.size(); i++) {
-            for (PianoKey key : whiteKeys.get(i)) {
-              whiteKeyResIds.put(whiteKeyPos, key.getVoiceId());
-              whiteKeyPos++;
-            }
-          }
-          ArrayList<PianoKey[]> blackKeys = piano.getBlackPianoKeys();
-          int blackKeyPos = 0;
-          for (int i = 0; i < blackKeys.size(); i++) {
-            for (PianoKey key : blackKeys.get(i)) {
-              blackKeyResIds.put(blackKeyPos, key.getVoiceId());
-              blackKeyPos++;
+          // 先收集所有resId，便于按需加载
+          int total = 0;
+          synchronized (sampleLock) {
+            collectResIds(piano.getWhitePianoKeys());
+            collectResIds(piano.getBlackPianoKeys());
+            for (int resId : keyResIds) {
+              if (resId != 0) {
+                total++;
+              }
             }
           }
+          loadTotal = total;
+          metrics.loadStarted(total, System.nanoTime());
 
-          // 优先加载中间音区（第4组）以提升首屏可用性
-          List<Integer> whiteOrder = new ArrayList<>();
-          List<Integer> blackOrder = new ArrayList<>();
-          // 计算全局位置的辅助函数
-          // white: group==0 -> pos, else (group-1)*7+2+pos
-          // black: group==0 -> pos, else (group-1)*5+1+pos
+          // 优先加载中间音区（第4组）以提升首屏可用性，先白再黑，以保持 loadNum 语义接近原逻辑
           int middleGroup = 4; // 经验选取
-          // 先加入中间组
-          for (int pos = 0; pos < 7; pos++) {
-            int global = (middleGroup - 1) * 7 + 2 + pos;
-            whiteOrder.add(global);
-          }
-          for (int pos = 0; pos < 5; pos++) {
-            int global = (middleGroup - 1) * 5 + 1 + pos;
-            blackOrder.add(global);
-          }
-          // 再加入剩余位置
-          for (int i = 0; i < whiteKeyResIds.size(); i++) {
-            int key = whiteKeyResIds.keyAt(i);
-            if (!whiteOrder.contains(key)) whiteOrder.add(key);
-          }
-          for (int i = 0; i < blackKeyResIds.size(); i++) {
-            int key = blackKeyResIds.keyAt(i);
-            if (!blackOrder.contains(key)) blackOrder.add(key);
+          int[] order = new int[Piano.PIANO_NUMS];
+          int count = 0;
+          for (int type : new int[] { AutoPlayTimeline.WHITE_KEY, AutoPlayTimeline.BLACK_KEY }) {
+            for (int keyIndex = 0; keyIndex < Piano.PIANO_NUMS; keyIndex++) {
+              if (PianoKeyIndex.getType(keyIndex) == type
+                  && PianoKeyIndex.getGroup(keyIndex) == middleGroup) {
+                order[count++] = keyIndex;
+              }
+            }
+            for (int keyIndex = 0; keyIndex < Piano.PIANO_NUMS; keyIndex++) {
+              if (PianoKeyIndex.getType(keyIndex) == type
+                  && PianoKeyIndex.getGroup(keyIndex) != middleGroup) {
+                order[count++] = keyIndex;
+              }
+            }
           }
 
-          // 分批加载，先白再黑，以保持 loadNum 语义接近原逻辑
           try {
-            for (Integer idx : whiteOrder) {
-              int resId = whiteKeyResIds.get(idx);
-              int soundID = pool.load(context, resId, 1);
-              whiteKeyMusics.put(idx, soundID);
-              if (minSoundId == -1) {
-                minSoundId = soundID;
+            for (int keyIndex : order) {
+              int resId = keyResIds[keyIndex];
+              if (resId == 0) {
+                continue;
               }
-            }
-            for (Integer idx : blackOrder) {
-              int resId = blackKeyResIds.get(idx);
-              int soundID = pool.load(context, resId, 1);
-              blackKeyMusics.put(idx, soundID);
-              if (soundID > maxSoundId) {
-                maxSoundId = soundID;
+              readSampleInfo(keyIndex, resId);
+              boolean reserved = false;
+              synchronized (sampleLock) {
+                if (keyMusics[keyIndex] == 0) {
+                  keyMusics[keyIndex] = LOADING;
+                  reserved = true;
+                }
+              }
+              if (reserved) {
+                loadSample(keyIndex, resId);
               }
             }
           } catch (Exception e) {
@@ -218,89 +214,200 @@ public class AudioUtils implements LoadAudioMessage {
     }
   }
 
+  /**
+   * 在锁外提交加载，播放线程不必等待采样解码。调用前需在锁内把 keyMusics[keyIndex] 设为 LOADING
+   */
+  private void loadSample(int keyIndex, int resId) {
+    SoundPool pool = this.pool;
+    if (released || pool == null) {
+      return;
+    }
+    metrics.loadRequested(keyIndex, System.nanoTime());
+    int sampleId = pool.load(context, resId, 1);
+    int earlyStatus = 0;
+    boolean early = false;
+    ArrayList<Float> dropped = null;
+    synchronized (sampleLock) {
+      if (keyMusics[keyIndex] != LOADING) {
+        // 提交加载期间已经释放
+        return;
+      }
+      keyMusics[keyIndex] = sampleId;
+      if (sampleId == 0) {
+        // 提交失败不会有回调，下次按下时重新加载
+        dropped = pendingPlays.get(keyIndex);
+        pendingPlays.delete(keyIndex);
+      }
+      int index = earlyLoads.indexOfKey(sampleId);
+      if (index >= 0) {
+        early = true;
+        earlyStatus = earlyLoads.valueAt(index);
+        earlyLoads.removeAt(index);
+      }
+    }
+    if (dropped != null) {
+      metrics.notLoadedDropped(dropped.size());
+    } else if (early) {
+      onSampleLoaded(keyIndex, sampleId, earlyStatus == 0);
+    }
+  }
+
+  /**
+   * 采样加载完成：补发等待中的音符并更新进度，在 SoundPool 回调线程或提交加载的线程中调用
+   */
+  private void onSampleLoaded(int keyIndex, int sampleId, boolean success) {
+    ArrayList<Float> pending;
+    int loaded;
+    synchronized (sampleLock) {
+      // 加载失败时不标记为已加载，待播放的音符丢失
+      if (success) {
+        loadedSamples.put(sampleId, true);
+      }
+      pending = pendingPlays.get(keyIndex);
+      pendingPlays.delete(keyIndex);
+      // 每个琴键只加载一次，按需加载的回调同样计入
+      loaded = ++loadNum;
+    }
+    metrics.loadCompleted(keyIndex, success, System.nanoTime());
+    if (pending != null) {
+      if (success) {
+        for (int i = 0; i < pending.size(); i++) {
+          play(keyIndex, sampleId, pending.get(i));
+        }
+      } else {
+        metrics.notLoadedDropped(pending.size());
+      }
+    }
+    int total = loadTotal;
+    if (loaded >= total) {
+      isLoadFinish = true;
+      sendProgressMessage(100);
+      sendFinishMessage();
+      // 静音预热，避免首次播放卡顿（单次触发，不占用持续stream）
+      SoundPool pool = this.pool;
+      if (pool != null && keyMusics[0] > 0) {
+        pool.play(keyMusics[0], 0f, 0f, 1, 0, 1f);
+      }
+    } else {
+      if (System.currentTimeMillis() - currentTime >= SEND_PROGRESS_MESSAGE_BREAK_TIME) {
+        sendProgressMessage((int) (((float) loaded / (float) total) * 100f));
+        currentTime = System.currentTimeMillis();
+      }
+    }
+  }
+
+  /**
+   * 读取采样的 WAV 头部，用于估算内存占用和发声时长。非 WAV 采样按未知处理
+   */
+  private void readSampleInfo(int keyIndex, int resId) {
+    Context context = this.context;
+    if (context == null) {
+      return;
+    }
+    InputStream is = null;
+    try {
+      is = context.getResources().openRawResource(resId);
+      WavUtils.Info info = WavUtils.readInfo(is);
+      metrics.sampleInfo(keyIndex, info.getPcmBytes(), info.getDurationNanos());
+    } catch (Exception ignored) {
+      // 统计信息缺失不影响加载
+    } finally {
+      if (is != null) {
+        try {
+          is.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private void collectResIds(ArrayList<PianoKey[]> keys) {
+    for (int i = 0; i < keys.size(); i++) {
+      for (PianoKey key : keys.get(i)) {
+        keyResIds[key.getKeyIndex()] = key.getVoiceId();
+      }
+    }
+  }
+
   /**
    * 播放音乐
    *
    * @param key 钢琴键
    */
   public void playMusic(final PianoKey key) {
-    if (key != null && key.getType() != null) {
-      switch (key.getType()) {
-        case BLACK:
-          playBlackKeyMusic(key.getGroup(), key.getPositionOfGroup());
-          break;
-        case WHITE:
-          playWhiteKeyMusic(key.getGroup(), key.getPositionOfGroup());
-          break;
-      }
+    if (key != null) {
+      playMusic(key.getKeyIndex());
     }
   }
 
   /**
-   * 播放白键音乐
+   * 播放音乐
    *
-   * @param group 组数，从0开始
-   * @param positionOfGroup 组内位置
+   * @param keyIndex 钢琴键编号(0~87，即 MIDI 音符号减 21，见 {@link PianoKeyIndex})
    */
-  private void playWhiteKeyMusic(int group, int positionOfGroup) {
-    int position;
-    if (group == 0) {
-      position = positionOfGroup;
-    } else {
-      position = (group - 1) * 7 + 2 + positionOfGroup;
-    }
-    playByPosition(true, position);
+  public void playMusic(int keyIndex) {
+    playMusic(keyIndex, 1f);
   }
 
   /**
-   * 播放黑键音乐
+   * 按力度播放音乐，可以在任意线程调用，直接提交给 SoundPool 而不经过主线程
    *
-   * @param group 组数，从0开始
-   * @param positionOfGroup 组内位置
+   * @param keyIndex 钢琴键编号
+   * @param velocity MIDI 力度(1~127)
    */
-  private void playBlackKeyMusic(int group, int positionOfGroup) {
-    int position;
-    if (group == 0) {
-      position = positionOfGroup;
-    } else {
-      position = (group - 1) * 5 + 1 + positionOfGroup;
+  public void noteOn(int keyIndex, int velocity) {
+    if (velocity > 0) {
+      playMusic(keyIndex, Math.min(velocity, MAX_VELOCITY) / (float) MAX_VELOCITY);
     }
-    playByPosition(false, position);
   }
 
-  private void playByPosition(boolean isWhite, int position) {
-    // 已释放或资源不可用时直接返回，避免异步播放时的空指针
-    if (released || pool == null) {
-      return;
+  private void playMusic(int keyIndex, float gain) {
+    LatencyTracer tracer = latencyTracer;
+    if (tracer != null) {
+      tracer.markAudioStart(System.nanoTime());
     }
-    // 获取已知的sampleId
-    SparseIntArray map = isWhite ? whiteKeyMusics : blackKeyMusics;
-    SparseIntArray resIds = isWhite ? whiteKeyResIds : blackKeyResIds;
-    if (map == null || resIds == null) {
+    // 已释放或资源不可用时直接返回，避免异步播放时的空指针
+    SoundPool pool = this.pool;
+    if (released || pool == null || keyIndex < 0 || keyIndex >= Piano.PIANO_NUMS) {
       return;
     }
-    int sampleId = map.get(position, 0);
-    if (sampleId != 0) {
-      if (loadedSamples.get(sampleId, false)) {
-        play(sampleId);
-      } else {
+    int sampleId;
+    int resId = 0;
+    synchronized (sampleLock) {
+      sampleId = keyMusics[keyIndex];
+      if (sampleId == 0) {
+        // 未加载过，占位后在锁外按需触发加载
+        resId = keyResIds[keyIndex];
+        if (resId == 0) {
+          return;
+        }
+        keyMusics[keyIndex] = LOADING;
+        addPendingPlay(keyIndex, gain);
+      } else if (sampleId == LOADING || !loadedSamples.get(sampleId, false)) {
         // 尚未完成加载，记录待播放
-        int count = pendingPlays.get(sampleId, 0);
-        pendingPlays.put(sampleId, count + 1);
+        addPendingPlay(keyIndex, gain);
+        return;
       }
-      return;
     }
-    // 未加载过，按需触发加载
-    int resId = resIds.get(position, 0);
     if (resId != 0) {
-      int newSampleId = pool.load(context, resId, 1);
-      map.put(position, newSampleId);
-      int count = pendingPlays.get(newSampleId, 0);
-      pendingPlays.put(newSampleId, count + 1);
+      loadSample(keyIndex, resId);
+      return;
     }
+    play(keyIndex, sampleId, gain);
   }
 
-  private void play(int soundId) {
+  // 调用方需持有 sampleLock
+  private void addPendingPlay(int keyIndex, float gain) {
+    ArrayList<Float> gains = pendingPlays.get(keyIndex);
+    if (gains == null) {
+      gains = new ArrayList<>(1);
+      pendingPlays.put(keyIndex, gains);
+    }
+    gains.add(gain);
+  }
+
+  private void play(int keyIndex, int soundId, float gain) {
+    SoundPool pool = this.pool;
     if (released || pool == null) {
       return;
     }
@@ -308,15 +415,42 @@ public class AudioUtils implements LoadAudioMessage {
     if (audioManager != null && (now - lastVolumeUpdateMs >= VOLUME_REFRESH_INTERVAL_MS)) {
       float actualVolume = (float) audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
       float maxVolume = (float) audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
+      float volume = cachedVolume;
       if (maxVolume > 0f) {
-        cachedVolume = actualVolume / maxVolume;
+        volume = actualVolume / maxVolume;
       }
-      if (cachedVolume <= 0f) {
-        cachedVolume = 1f;
+      if (volume <= 0f) {
+        volume = 1f;
       }
+      cachedVolume = volume;
       lastVolumeUpdateMs = now;
     }
-    pool.play(soundId, cachedVolume, cachedVolume, 1, 0, 1f);
+    float volume = cachedVolume * gain;
+    int streamId = pool.play(soundId, volume, volume, 1, 0, 1f);
+    long submitted = System.nanoTime();
+    LatencyTracer tracer = latencyTracer;
+    if (tracer != null) {
+      tracer.markAudioSubmitted(submitted);
+    }
+    metrics.played(keyIndex, streamId != 0, submitted);
+  }
+
+  /**
+   * 设置触摸到发声的延迟追踪器，null 为关闭
+   *
+   * @param latencyTracer 延迟追踪器
+   */
+  public void setLatencyTracer(LatencyTracer latencyTracer) {
+    this.latencyTracer = latencyTracer;
+  }
+
+  /**
+   * 获取音频引擎的统计快照，可以在任意线程调用
+   *
+   * @return 统计快照
+   */
+  public AudioMetrics getMetrics() {
+    return metrics.snapshot(System.nanoTime());
   }
 
   /**
@@ -332,12 +466,12 @@ public class AudioUtils implements LoadAudioMessage {
     if (loader != null && !loader.isShutdown()) {
       loader.shutdownNow();
     }
-    if (whiteKeyMusics != null) {
-      whiteKeyMusics.clear();
-    }
-    if (blackKeyMusics != null) {
-      blackKeyMusics.clear();
+    synchronized (sampleLock) {
+      Arrays.fill(keyMusics, 0);
+      pendingPlays.clear();
+      earlyLoads.clear();
     }
+    metrics.released();
   }
 
   @Override public void sendStartMessage() {
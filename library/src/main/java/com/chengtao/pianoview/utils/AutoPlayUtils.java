@@ -3,13 +3,18 @@ package com.chengtao.pianoview.utils;
 import android.text.TextUtils;
 import android.util.Log;
 import com.chengtao.pianoview.entity.AutoPlayEntity;
+import com.chengtao.pianoview.entity.AutoPlaySource;
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
 import com.chengtao.pianoview.entity.Piano;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,34 +26,92 @@ import java.util.List;
  * Modified and improved by GalCha on 2025-10-19.
  */
 
-@SuppressWarnings("unchecked") public class AutoPlayUtils {
+public class AutoPlayUtils {
   public static final Gson gson = new GsonBuilder().create();
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static volatile ScoreCache scoreCache;
+
+  /**
+   * 设置已编译乐谱的缓存，之后按输入流读取的简谱配置都经过缓存，同一首乐谱再次打开时不需要重新解析
+   *
+   * @param cache 缓存，为null时不使用缓存
+   */
+  public static void setScoreCache(ScoreCache cache) {
+    scoreCache = cache;
+  }
+
+  public static ScoreCache getScoreCache() {
+    return scoreCache;
+  }
 
   public static ArrayList<AutoPlayEntity> getAutoPlayEntityListByJsonString(
       String configJsonString) {
+    return convertToAutoPlayEntityList(getAutoPlayTimelineByJsonString(configJsonString));
+  }
+
+  public static ArrayList<AutoPlayEntity> getAutoPlayEntityListJsonStream(
+      InputStream configJsonStream) {
+    return convertToAutoPlayEntityList(getAutoPlayTimelineJsonStream(configJsonStream));
+  }
+
+  /**
+   * 流式解码自动播放 JSON 为紧凑的时间线，不创建实体对象
+   *
+   * @param configJsonString JSON 字符串
+   * @return 时间线，格式错误时返回null
+   */
+  public static AutoPlayTimeline getAutoPlayTimelineByJsonString(String configJsonString) {
     if (!TextUtils.isEmpty(configJsonString)) {
       try {
-        return gson.fromJson(configJsonString, new TypeToken<List<AutoPlayEntity>>() {
-        }.getType());
-      } catch (Exception e) {
-        Log.e("TAG", "AutoPlayUtils-->" + e.getMessage());
+        return AutoPlayJsonDecoder.decode(new StringReader(configJsonString));
+      } catch (ScoreParseException e) {
+        Log.e("TAG", "AutoPlayUtils-->" + e);
       }
     }
     return null;
   }
 
-  public static ArrayList<AutoPlayEntity> getAutoPlayEntityListJsonStream(
-      InputStream configJsonStream) {
+  /**
+   * 流式解码自动播放 JSON 为紧凑的时间线，不创建实体对象，读取完成后关闭输入流
+   *
+   * @param configJsonStream JSON 输入流(UTF-8)
+   * @return 时间线，格式错误时返回null
+   */
+  public static AutoPlayTimeline getAutoPlayTimelineJsonStream(InputStream configJsonStream) {
     if (configJsonStream != null) {
+      Reader reader = new BufferedReader(new InputStreamReader(configJsonStream, UTF_8));
       try {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(configJsonStream));
-        ArrayList<AutoPlayEntity> list =
-            gson.fromJson(reader, new TypeToken<ArrayList<AutoPlayEntity>>() {
-            }.getType());
-        reader.close();
-        return list;
-      } catch (Exception e) {
-        Log.e("TAG", "AutoPlayUtils-->" + e.getMessage());
+        return AutoPlayJsonDecoder.decode(reader);
+      } catch (ScoreParseException e) {
+        Log.e("TAG", "AutoPlayUtils-->" + e);
+      } finally {
+        try {
+          reader.close();
+        } catch (IOException ignored) {
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 转换标准 MIDI 文件(格式 0 和 1)为时间线，读取完成后关闭输入流
+   *
+   * @param midiInputStream MIDI 文件输入流
+   * @return 时间线，格式错误时返回null
+   */
+  public static AutoPlayTimeline getAutoPlayTimelineByMidiInputStream(
+      InputStream midiInputStream) {
+    if (midiInputStream != null) {
+      try {
+        return MidiConvertUtils.convertByInputStream(midiInputStream);
+      } catch (ScoreParseException e) {
+        Log.e("TAG", "AutoPlayUtils-->" + e);
+      } finally {
+        try {
+          midiInputStream.close();
+        } catch (IOException ignored) {
+        }
       }
     }
     return null;
@@ -57,21 +120,61 @@ import java.util.List;
   public static ArrayList<AutoPlayEntity> getAutoPlayEntityListByCustomConfigString(
       String customConfigString) {
     try {
-      Object[] result = PianoConvertUtils.convertByConfigString(customConfigString);
-      return convertToAutoPlayEntityList((List<PianoConvertUtils.PianoKey>) result[2]);
-    } catch (Throwable throwable) {
-      Log.e("TAG", throwable.getMessage());
+      return convertToAutoPlayEntityList(PianoConvertUtils.convertByConfigString(customConfigString));
+    } catch (ScoreParseException e) {
+      Log.e("TAG", "AutoPlayUtils-->" + e);
     }
     return null;
   }
 
   public static ArrayList<AutoPlayEntity> getAutoPlayEntityListByCustomConfigInputStream(
       InputStream customConfigInputStream) {
+    return convertToAutoPlayEntityList(
+        getAutoPlaySourceByCustomConfigInputStream(customConfigInputStream));
+  }
+
+  /**
+   * 转换简谱配置为音符序列，设置了缓存时优先从缓存读取
+   *
+   * @param customConfigInputStream 简谱配置输入流(UTF-8)，由调用者关闭
+   * @return 音符序列，格式错误时返回null
+   */
+  public static AutoPlaySource getAutoPlaySourceByCustomConfigInputStream(
+      InputStream customConfigInputStream) {
+    ScoreCache cache = scoreCache;
     try {
-      Object[] result = PianoConvertUtils.convertByInputStream(customConfigInputStream);
-      return convertToAutoPlayEntityList((List<PianoConvertUtils.PianoKey>) result[2]);
-    } catch (Throwable throwable) {
-      Log.e("TAG", throwable.getMessage());
+      if (cache != null) {
+        return cache.get(ScoreCache.SourceFormat.NOTATION, customConfigInputStream);
+      }
+      return PianoConvertUtils.convertByInputStream(customConfigInputStream).getTimeline();
+    } catch (ScoreParseException e) {
+      Log.e("TAG", "AutoPlayUtils-->" + e);
+    }
+    return null;
+  }
+
+  public static ArrayList<AutoPlayEntity> convertToAutoPlayEntityList(
+      PianoConvertUtils.Score score) {
+    return score != null ? convertToAutoPlayEntityList(score.getTimeline()) : null;
+  }
+
+  public static ArrayList<AutoPlayEntity> convertToAutoPlayEntityList(
+      AutoPlaySource timeline) {
+    if (timeline != null && timeline.size() > 0) {
+      ArrayList<AutoPlayEntity> list = new ArrayList<>(timeline.size());
+      for (int i = 0; i < timeline.size(); i++) {
+        AutoPlayEntity entity = new AutoPlayEntity();
+        if (timeline.getType(i) == AutoPlayTimeline.BLACK_KEY) {
+          entity.setType(Piano.PianoKeyType.BLACK);
+        } else if (timeline.getType(i) == AutoPlayTimeline.WHITE_KEY) {
+          entity.setType(Piano.PianoKeyType.WHITE);
+        }
+        entity.setCurrentBreakTime(timeline.getBreakTime(i));
+        entity.setGroup(timeline.getGroup(i));
+        entity.setPosition(timeline.getPosition(i));
+        list.add(entity);
+      }
+      return list;
     }
     return null;
   }
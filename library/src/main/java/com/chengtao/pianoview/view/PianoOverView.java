@@ -2,19 +2,24 @@ package com.chengtao.pianoview.view;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 import com.chengtao.pianoview.R;
+import com.chengtao.pianoview.utils.DrawMetrics;
+import com.chengtao.pianoview.utils.KeyboardLayout;
+import com.chengtao.pianoview.utils.PianoKeyIndex;
 import java.lang.ref.WeakReference;
-import java.util.List;
 
 /**
  * 钢琴键盘的缩略图(minimap)概览视图。
@@ -23,6 +28,13 @@ import java.util.List;
  * 当前可见的区域。可以拖动该高亮矩形(或点按)来滚动钢琴；当钢琴通过其他方式
  * (SeekBar、箭头、自动播放)滚动时，高亮区域也会同步更新。
  *
+ * <p>缩小的键盘只在键盘几何或视图尺寸变化时绘制一次到缓存位图中，滚动时每帧只绘制该位图和高亮矩形，
+ * 并且只重绘新旧高亮矩形覆盖的区域。
+ *
+ * <p>正在按下(包括自动播放)的琴键以单独的颜色实时显示，即使它们在钢琴的可见区域之外。
+ * 琴键状态来自 {@link PianoView.OnKeyStateListener}，只重绘状态变化的琴键，
+ * 且更新频率有上限(默认每秒 {@value #DEFAULT_ACTIVE_KEY_MAX_FPS} 次)，不会挤占钢琴本身的绘制。
+ *
  * <p>用法:
  * <pre>
  *   pianoOverView.attachTo(pianoView);
@@ -31,6 +43,8 @@ import java.util.List;
  * Created by GalCha.
  */
 public class PianoOverView extends View {
+  public static final int DEFAULT_ACTIVE_KEY_MAX_FPS = 30;
+
   private WeakReference<PianoView> pianoRef;
 
   // Cached scroll state pushed by the PianoView scroll listener
@@ -38,31 +52,92 @@ public class PianoOverView extends View {
   private int pianoWidth = 0;
   private int layoutWidth = 0;
 
-  // Cached key geometry (refreshed when the keyboard geometry changes)
-  private List<Rect> whiteKeyBounds;
-  private List<Rect> blackKeyBounds;
-  private int boundsForPianoWidth = -1;
+  // Read-only key geometry snapshot; replaced when its version changes
+  private KeyboardLayout keyboardLayout;
+  private int layoutVersion = 0;
   private int keyboardHeightPx = 0;
 
   private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
   private final RectF rectF = new RectF();
+  private final Rect dirtyRect = new Rect();
+
+  // Background and miniature keys, rendered once per geometry/size
+  private Bitmap keyboardBitmap;
+  private Canvas keyboardCanvas;
+  private boolean keyboardBitmapValid = false;
+
+  // Latest pressed-key bitset pushed by the PianoView key state feed, and the keys changed
+  // since the last (rate-capped) update
+  private long latestKeysLow = 0L;
+  private long latestKeysHigh = 0L;
+  private long changedKeysLow = 0L;
+  private long changedKeysHigh = 0L;
+  // Pressed state as drawn, and keys whose cell in the bitmap no longer matches it
+  private long pressedKeysLow = 0L;
+  private long pressedKeysHigh = 0L;
+  private long staleKeysLow = 0L;
+  private long staleKeysHigh = 0L;
+  // Rate cap for pressed-key redraws
+  private long activeKeyIntervalMs = 1000L / DEFAULT_ACTIVE_KEY_MAX_FPS;
+  private long lastActiveKeyUpdateMs = 0L;
+  private boolean activeKeyUpdatePending = false;
 
   private int backgroundColor = Color.parseColor("#1F000000");
   private int whiteKeyColor = Color.parseColor("#FFFFFF");
   private int blackKeyColor = Color.parseColor("#333333");
   private int highlightColor = Color.parseColor("#552196F3");
   private int highlightBorderColor = Color.parseColor("#2196F3");
+  private int activeKeyColor = Color.parseColor("#FF9800");
+  private final float highlightStrokeWidth;
+
+  // Optional onDraw cost counters; null (the default) disables collection
+  private DrawMetrics drawMetrics;
 
   private final PianoView.OnPianoScrollListener scrollListener =
       new PianoView.OnPianoScrollListener() {
         @Override public void onPianoScroll(int scrollX, int pianoWidth, int layoutWidth) {
+          // Skip redundant redraws when nothing visible changed
+          if (PianoOverView.this.scrollX == scrollX
+              && PianoOverView.this.pianoWidth == pianoWidth
+              && PianoOverView.this.layoutWidth == layoutWidth) {
+            return;
+          }
+          int oldScrollX = PianoOverView.this.scrollX;
           PianoOverView.this.scrollX = scrollX;
-          PianoOverView.this.pianoWidth = pianoWidth;
-          PianoOverView.this.layoutWidth = layoutWidth;
-          invalidate();
+          if (PianoOverView.this.pianoWidth != pianoWidth
+              || PianoOverView.this.layoutWidth != layoutWidth) {
+            PianoOverView.this.pianoWidth = pianoWidth;
+            PianoOverView.this.layoutWidth = layoutWidth;
+            invalidate();
+            return;
+          }
+          // Only the highlight moved
+          invalidateHighlight(oldScrollX, scrollX);
+        }
+      };
+
+  private final PianoView.OnKeyStateListener keyStateListener =
+      new PianoView.OnKeyStateListener() {
+        @Override public void onKeyStateChanged(long pressedLow, long pressedHigh, long changedLow,
+            long changedHigh) {
+          latestKeysLow = pressedLow;
+          latestKeysHigh = pressedHigh;
+          if ((changedLow | changedHigh) == 0L) {
+            return;
+          }
+          changedKeysLow |= changedLow;
+          changedKeysHigh |= changedHigh;
+          scheduleActiveKeyUpdate();
         }
       };
 
+  private final Choreographer.FrameCallback activeKeyUpdate = new Choreographer.FrameCallback() {
+    @Override public void doFrame(long frameTimeNanos) {
+      activeKeyUpdatePending = false;
+      updateActiveKeys();
+    }
+  };
+
   public PianoOverView(Context context) {
     this(context, null);
   }
@@ -73,6 +148,7 @@ public class PianoOverView extends View {
 
   public PianoOverView(Context context, AttributeSet attrs, int defStyleAttr) {
     super(context, attrs, defStyleAttr);
+    highlightStrokeWidth = Math.max(2f, dpToPx(1));
     if (attrs != null) {
       TypedArray a =
           context.obtainStyledAttributes(attrs, R.styleable.PianoOverView, defStyleAttr, 0);
@@ -85,6 +161,11 @@ public class PianoOverView extends View {
             a.getColor(R.styleable.PianoOverView_overviewHighlightColor, highlightColor);
         highlightBorderColor =
             a.getColor(R.styleable.PianoOverView_overviewHighlightBorderColor, highlightBorderColor);
+        activeKeyColor = a.getColor(R.styleable.PianoOverView_overviewActiveKeyColor, activeKeyColor);
+        int maxFps = a.getInt(R.styleable.PianoOverView_overviewActiveKeyMaxFps, 0);
+        if (maxFps > 0) {
+          activeKeyIntervalMs = 1000L / maxFps;
+        }
       } finally {
         a.recycle();
       }
@@ -97,16 +178,64 @@ public class PianoOverView extends View {
    * @param piano 要观察并控制的钢琴视图
    */
   public void attachTo(PianoView piano) {
+    PianoView previous = pianoRef != null ? pianoRef.get() : null;
+    if (previous != null && previous != piano) {
+      previous.removeOnPianoScrollListener(scrollListener);
+      previous.removeOnKeyStateListener(keyStateListener);
+    }
     this.pianoRef = new WeakReference<>(piano);
     // Force a fresh geometry fetch on next draw.
-    boundsForPianoWidth = -1;
+    layoutVersion = 0;
+    latestKeysLow = 0L;
+    latestKeysHigh = 0L;
+    changedKeysLow = 0L;
+    changedKeysHigh = 0L;
+    pressedKeysLow = 0L;
+    pressedKeysHigh = 0L;
     if (piano != null) {
-      // Registering immediately pushes the current scroll state to us.
+      // Registering immediately pushes the current scroll and key state to us.
       piano.addOnPianoScrollListener(scrollListener);
+      piano.addOnKeyStateListener(keyStateListener);
     }
     invalidate();
   }
 
+  /**
+   * 设置正在按下的琴键的更新频率上限，琴键状态变化再快，缩略图每秒也最多重绘这么多次
+   *
+   * @param maxFps 每秒最多更新次数，必须大于 0
+   */
+  public void setActiveKeyMaxFps(int maxFps) {
+    if (maxFps <= 0) {
+      throw new IllegalArgumentException("maxFps must be > 0: " + maxFps);
+    }
+    activeKeyIntervalMs = 1000L / maxFps;
+  }
+
+  /**
+   * 设置正在按下的琴键的颜色
+   *
+   * @param color 颜色值
+   */
+  public void setActiveKeyColor(int color) {
+    activeKeyColor = color;
+    keyboardBitmapValid = false;
+    invalidate();
+  }
+
+  /**
+   * 设置绘制开销统计(onDraw 次数和耗时、绘制的琴键数)，可以在运行时开启或关闭
+   *
+   * @param drawMetrics 统计对象，null 为关闭
+   */
+  public void setDrawMetrics(DrawMetrics drawMetrics) {
+    this.drawMetrics = drawMetrics;
+  }
+
+  public DrawMetrics getDrawMetrics() {
+    return drawMetrics;
+  }
+
   @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
     int width = resolveSize(dpToPx(240), widthMeasureSpec);
     int height = resolveSize(dpToPx(40), heightMeasureSpec);
@@ -115,47 +244,42 @@ public class PianoOverView extends View {
 
   @Override protected void onDraw(Canvas canvas) {
     super.onDraw(canvas);
+    DrawMetrics metrics = drawMetrics;
+    if (metrics == null) {
+      drawOverview(canvas);
+      return;
+    }
+    long drawStart = System.nanoTime();
+    int keysDrawn = drawOverview(canvas);
+    metrics.recordDraw(System.nanoTime() - drawStart, keysDrawn, 0);
+  }
+
+  /**
+   * @return 绘制的琴键数(只有重新生成键盘位图时不为 0)
+   */
+  private int drawOverview(Canvas canvas) {
+    int keysDrawn = 0;
     int width = getWidth() - getPaddingLeft() - getPaddingRight();
     int height = getHeight() - getPaddingTop() - getPaddingBottom();
     if (width <= 0 || height <= 0) {
-      return;
+      return keysDrawn;
     }
-    // Background strip
-    paint.setStyle(Paint.Style.FILL);
-    paint.setColor(backgroundColor);
-    canvas.drawRect(getPaddingLeft(), getPaddingTop(), getPaddingLeft() + width,
-        getPaddingTop() + height, paint);
-
     refreshGeometryIfNeeded();
-    if (pianoWidth <= 0 || keyboardHeightPx <= 0) {
-      return;
+    if (!keyboardBitmapValid || keyboardBitmap == null || keyboardBitmap.getWidth() != width
+        || keyboardBitmap.getHeight() != height) {
+      keysDrawn = renderKeyboard(width, height);
+    } else if ((staleKeysLow | staleKeysHigh) != 0L) {
+      keysDrawn = renderStaleKeys(width, height);
     }
-
-    float scaleX = (float) width / (float) pianoWidth;
-    float scaleY = (float) height / (float) keyboardHeightPx;
     int left = getPaddingLeft();
     int top = getPaddingTop();
-
-    // Miniature white keys
-    paint.setColor(whiteKeyColor);
-    if (whiteKeyBounds != null) {
-      for (Rect r : whiteKeyBounds) {
-        rectF.set(left + r.left * scaleX, top + r.top * scaleY, left + r.right * scaleX,
-            top + r.bottom * scaleY);
-        canvas.drawRect(rectF, paint);
-      }
-    }
-    // Miniature black keys
-    paint.setColor(blackKeyColor);
-    if (blackKeyBounds != null) {
-      for (Rect r : blackKeyBounds) {
-        rectF.set(left + r.left * scaleX, top + r.top * scaleY, left + r.right * scaleX,
-            top + r.bottom * scaleY);
-        canvas.drawRect(rectF, paint);
-      }
+    canvas.drawBitmap(keyboardBitmap, left, top, null);
+    if (pianoWidth <= 0 || keyboardHeightPx <= 0) {
+      return keysDrawn;
     }
 
     // Visible-window highlight
+    float scaleX = (float) width / (float) pianoWidth;
     int visibleWidth = layoutWidth > 0 ? layoutWidth : pianoWidth;
     float hl = left + scrollX * scaleX;
     float hr = left + (scrollX + visibleWidth) * scaleX;
@@ -168,10 +292,214 @@ public class PianoOverView extends View {
     paint.setColor(highlightColor);
     canvas.drawRect(rectF, paint);
     paint.setStyle(Paint.Style.STROKE);
-    paint.setStrokeWidth(Math.max(2f, dpToPx(1)));
+    paint.setStrokeWidth(highlightStrokeWidth);
     paint.setColor(highlightBorderColor);
     canvas.drawRect(rectF, paint);
     paint.setStyle(Paint.Style.FILL);
+    return keysDrawn;
+  }
+
+  /**
+   * 把背景和缩小的键盘绘制到缓存位图中
+   *
+   * @return 绘制的琴键数
+   */
+  private int renderKeyboard(int width, int height) {
+    int keysDrawn = 0;
+    if (keyboardBitmap == null || keyboardBitmap.getWidth() != width
+        || keyboardBitmap.getHeight() != height) {
+      releaseKeyboardBitmap();
+      keyboardBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      keyboardCanvas = new Canvas(keyboardBitmap);
+    } else {
+      keyboardBitmap.eraseColor(Color.TRANSPARENT);
+    }
+    keyboardBitmapValid = true;
+    staleKeysLow = 0L;
+    staleKeysHigh = 0L;
+    Canvas canvas = keyboardCanvas;
+    // Background strip
+    paint.setStyle(Paint.Style.FILL);
+    paint.setColor(backgroundColor);
+    canvas.drawRect(0, 0, width, height, paint);
+    if (pianoWidth <= 0 || keyboardHeightPx <= 0) {
+      return keysDrawn;
+    }
+
+    float scaleX = (float) width / (float) pianoWidth;
+    float scaleY = (float) height / (float) keyboardHeightPx;
+
+    // Miniature white keys, then black keys on top
+    keysDrawn += drawKeys(canvas, false, scaleX, scaleY);
+    keysDrawn += drawKeys(canvas, true, scaleX, scaleY);
+    return keysDrawn;
+  }
+
+  private int drawKeys(Canvas canvas, boolean black, float scaleX, float scaleY) {
+    KeyboardLayout layout = keyboardLayout;
+    if (layout == null) {
+      return 0;
+    }
+    int keysDrawn = 0;
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      if (layout.isBlack(keyIndex) == black) {
+        drawKey(canvas, layout, keyIndex, scaleX, scaleY);
+        keysDrawn++;
+      }
+    }
+    return keysDrawn;
+  }
+
+  private void drawKey(Canvas canvas, KeyboardLayout layout, int keyIndex, float scaleX,
+      float scaleY) {
+    if (isKeyPressed(keyIndex)) {
+      paint.setColor(activeKeyColor);
+    } else {
+      paint.setColor(layout.isBlack(keyIndex) ? blackKeyColor : whiteKeyColor);
+    }
+    rectF.set(layout.getLeft(keyIndex) * scaleX, layout.getTop(keyIndex) * scaleY,
+        layout.getRight(keyIndex) * scaleX, layout.getBottom(keyIndex) * scaleY);
+    canvas.drawRect(rectF, paint);
+  }
+
+  /**
+   * 只在位图中重绘状态变化的琴键。白键被重绘时会盖住两侧黑键的下半部分，因此两侧的黑键也要重绘
+   *
+   * @return 绘制的琴键数
+   */
+  private int renderStaleKeys(int width, int height) {
+    long low = staleKeysLow;
+    long high = staleKeysHigh;
+    staleKeysLow = 0L;
+    staleKeysHigh = 0L;
+    KeyboardLayout layout = keyboardLayout;
+    if (layout == null || pianoWidth <= 0 || keyboardHeightPx <= 0) {
+      return 0;
+    }
+    float scaleX = (float) width / (float) pianoWidth;
+    float scaleY = (float) height / (float) keyboardHeightPx;
+    Canvas canvas = keyboardCanvas;
+    paint.setStyle(Paint.Style.FILL);
+    int keysDrawn = 0;
+    // White keys first, then every black key that is stale or next to a stale white key
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      if (!layout.isBlack(keyIndex) && isBitSet(low, high, keyIndex)) {
+        drawKey(canvas, layout, keyIndex, scaleX, scaleY);
+        keysDrawn++;
+      }
+    }
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      if (layout.isBlack(keyIndex) && (isBitSet(low, high, keyIndex)
+          || isBitSet(low, high, keyIndex - 1) || isBitSet(low, high, keyIndex + 1))) {
+        drawKey(canvas, layout, keyIndex, scaleX, scaleY);
+        keysDrawn++;
+      }
+    }
+    return keysDrawn;
+  }
+
+  private boolean isKeyPressed(int keyIndex) {
+    return isBitSet(pressedKeysLow, pressedKeysHigh, keyIndex);
+  }
+
+  private static boolean isBitSet(long low, long high, int keyIndex) {
+    if (keyIndex < 0) {
+      return false;
+    }
+    return keyIndex < 64 ? (low & (1L << keyIndex)) != 0L
+        : keyIndex < 128 && (high & (1L << (keyIndex - 64))) != 0L;
+  }
+
+  private void releaseKeyboardBitmap() {
+    if (keyboardBitmap != null) {
+      keyboardBitmap.recycle();
+      keyboardBitmap = null;
+      keyboardCanvas = null;
+    }
+    keyboardBitmapValid = false;
+  }
+
+  /**
+   * 按更新频率上限安排重绘状态变化的琴键，上限内的多次变化合并为一次
+   */
+  private void scheduleActiveKeyUpdate() {
+    if (activeKeyUpdatePending) {
+      return;
+    }
+    long delay = lastActiveKeyUpdateMs + activeKeyIntervalMs - SystemClock.uptimeMillis();
+    if (delay <= 0) {
+      updateActiveKeys();
+    } else {
+      activeKeyUpdatePending = true;
+      Choreographer.getInstance().postFrameCallbackDelayed(activeKeyUpdate, delay);
+    }
+  }
+
+  /**
+   * 把累积的琴键状态变化交给绘制，并只重绘状态变化的琴键所在的区域
+   */
+  private void updateActiveKeys() {
+    lastActiveKeyUpdateMs = SystemClock.uptimeMillis();
+    pressedKeysLow = latestKeysLow;
+    pressedKeysHigh = latestKeysHigh;
+    staleKeysLow |= changedKeysLow;
+    staleKeysHigh |= changedKeysHigh;
+    changedKeysLow = 0L;
+    changedKeysHigh = 0L;
+    if ((staleKeysLow | staleKeysHigh) == 0L) {
+      return;
+    }
+    KeyboardLayout layout = keyboardLayout;
+    int width = getWidth() - getPaddingLeft() - getPaddingRight();
+    // The dirty rect is only a hint under hardware acceleration; skip the rect work there
+    if (isHardwareAccelerated() || layout == null || width <= 0 || pianoWidth <= 0) {
+      invalidate();
+      return;
+    }
+    int minLeft = Integer.MAX_VALUE;
+    int maxRight = Integer.MIN_VALUE;
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      if (isBitSet(staleKeysLow, staleKeysHigh, keyIndex)) {
+        // Neighbouring black keys are redrawn with a white key; they lie within one black key
+        // width of its edges
+        minLeft = Math.min(minLeft, layout.getLeft(keyIndex) - layout.getBlackKeyWidth());
+        maxRight = Math.max(maxRight, layout.getRight(keyIndex) + layout.getBlackKeyWidth());
+      }
+    }
+    float scaleX = (float) width / (float) pianoWidth;
+    int left = getPaddingLeft();
+    dirtyRect.set((int) (left + minLeft * scaleX) - 1, getPaddingTop(),
+        (int) Math.ceil(left + maxRight * scaleX) + 1, getHeight() - getPaddingBottom());
+    invalidateSoftware(dirtyRect);
+  }
+
+  /**
+   * 只重绘新旧高亮矩形覆盖的区域(两者合并为一个矩形，绘制时的脏区域本来也会合并)
+   */
+  private void invalidateHighlight(int oldScrollX, int newScrollX) {
+    int width = getWidth() - getPaddingLeft() - getPaddingRight();
+    // The dirty rect is only a hint under hardware acceleration; skip the rect work there
+    if (isHardwareAccelerated() || width <= 0 || pianoWidth <= 0) {
+      invalidate();
+      return;
+    }
+    float scaleX = (float) width / (float) pianoWidth;
+    int visibleWidth = layoutWidth > 0 ? layoutWidth : pianoWidth;
+    int left = getPaddingLeft();
+    // The border stroke straddles the highlight edges
+    int margin = (int) Math.ceil(highlightStrokeWidth);
+    dirtyRect.set((int) (left + Math.min(oldScrollX, newScrollX) * scaleX) - margin,
+        getPaddingTop() - margin,
+        (int) Math.ceil(left + (Math.max(oldScrollX, newScrollX) + visibleWidth) * scaleX)
+            + margin, getHeight() - getPaddingBottom() + margin);
+    invalidateSoftware(dirtyRect);
+  }
+
+  // invalidate(Rect) is deprecated since API 28 because hardware-accelerated views ignore the
+  // rect. Callers take the plain invalidate() path there; the rect still limits software redraws
+  @SuppressWarnings("deprecation")
+  private void invalidateSoftware(Rect dirty) {
+    invalidate(dirty);
   }
 
   private void refreshGeometryIfNeeded() {
@@ -188,19 +516,28 @@ public class PianoOverView extends View {
     if (currentLayoutWidth > 0) {
       layoutWidth = currentLayoutWidth;
     }
-    if (whiteKeyBounds == null || boundsForPianoWidth != pianoWidth) {
-      whiteKeyBounds = piano.getWhiteKeyDrawBounds();
-      blackKeyBounds = piano.getBlackKeyDrawBounds();
-      boundsForPianoWidth = pianoWidth;
-      keyboardHeightPx = 0;
-      if (whiteKeyBounds != null) {
-        for (Rect r : whiteKeyBounds) {
-          if (r.bottom > keyboardHeightPx) {
-            keyboardHeightPx = r.bottom;
-          }
-        }
-      }
+    // O(1) change check; the snapshot itself is read in place
+    KeyboardLayout layout = piano.getKeyboardLayout();
+    if (layout != null && layout.getVersion() != layoutVersion) {
+      keyboardLayout = layout;
+      layoutVersion = layout.getVersion();
+      keyboardHeightPx = layout.getWhiteKeyHeight();
+      keyboardBitmapValid = false;
+    }
+  }
+
+  @Override protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    releaseKeyboardBitmap();
+    if (activeKeyUpdatePending) {
+      activeKeyUpdatePending = false;
+      Choreographer.getInstance().removeFrameCallback(activeKeyUpdate);
     }
+    // The bitmap is rebuilt from the latest state after re-attaching
+    pressedKeysLow = latestKeysLow;
+    pressedKeysHigh = latestKeysHigh;
+    changedKeysLow = 0L;
+    changedKeysHigh = 0L;
   }
 
   @Override public boolean onTouchEvent(MotionEvent event) {
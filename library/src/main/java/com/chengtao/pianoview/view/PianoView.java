@@ -7,6 +7,7 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
@@ -15,19 +16,39 @@ import androidx.core.content.ContextCompat;
 import android.util.AttributeSet;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.View;
 import com.chengtao.pianoview.R;
 import com.chengtao.pianoview.entity.AutoPlayEntity;
+import com.chengtao.pianoview.entity.AutoPlaySource;
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
 import com.chengtao.pianoview.entity.Piano;
 import com.chengtao.pianoview.entity.PianoKey;
+import com.chengtao.pianoview.listener.OnAutoPlayNoteListener;
 import com.chengtao.pianoview.listener.OnLoadAudioListener;
 import com.chengtao.pianoview.listener.OnPianoAutoPlayListener;
 import com.chengtao.pianoview.listener.OnPianoListener;
+import com.chengtao.pianoview.listener.OnScoreParseListener;
 import com.chengtao.pianoview.utils.AudioUtils;
+import com.chengtao.pianoview.utils.AutoPlayScheduler;
+import com.chengtao.pianoview.utils.AutoPlayUtils;
+import com.chengtao.pianoview.utils.DrawMetrics;
+import com.chengtao.pianoview.utils.KeyboardLayout;
+import com.chengtao.pianoview.utils.LatencyTracer;
+import com.chengtao.pianoview.utils.PerformanceRecorder;
+import com.chengtao.pianoview.utils.PianoConvertUtils;
+import com.chengtao.pianoview.utils.PianoKeyIndex;
+import com.chengtao.pianoview.utils.ScoreBinaryUtils;
+import com.chengtao.pianoview.utils.ScoreParseException;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Created by ChengTao on 2016-11-25.
@@ -36,12 +57,28 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 public class PianoView extends View {
   private final static String TAG = "PianoView";
-  // Define piano keys
-  private Piano piano = null;
+  // Define piano keys. Volatile because the auto-play thread reads it while the main thread
+  // replaces it on layout; a Piano and its KeyboardLayout are fully built before publication
+  private volatile Piano piano = null;
   private ArrayList<PianoKey[]> whitePianoKeys;
   private ArrayList<PianoKey[]> blackPianoKeys;
-  // Pressed piano keys
-  private CopyOnWriteArrayList<PianoKey> pressedKeys = new CopyOnWriteArrayList<>();
+  // Pressed piano keys as a 128-bit set of key indices (main thread only)
+  private long pressedKeysLow = 0L;
+  private long pressedKeysHigh = 0L;
+  // Shared drawable states; Drawable keeps the array reference, so never mutate them
+  private static final int[] STATE_PRESSED = { android.R.attr.state_pressed };
+  private static final int[] STATE_RELEASED = { -android.R.attr.state_pressed };
+  // Pointer ids are 0..31; key index held by each pointer (-1 for none) and its last
+  // hit-tested position, in piano coordinates
+  private static final int MAX_POINTER_ID = 31;
+  private final int[] pointerKeys = new int[MAX_POINTER_ID + 1];
+  private final int[] lastTouchX = new int[MAX_POINTER_ID + 1];
+  private final int[] lastTouchY = new int[MAX_POINTER_ID + 1];
+  private final long[] lastTouchNanos = new long[MAX_POINTER_ID + 1];
+  private final boolean[] touchTracked = new boolean[MAX_POINTER_ID + 1];
+  // Largest step when interpolating a move, so a fast sweep cannot jump over a key
+  private int touchStepPx = 1;
+  private static final long NANOS_PER_MILLI = 1000000L;
   // Paint object
   private Paint paint;
   // Square used to display the note name
@@ -62,8 +99,8 @@ public class PianoView extends View {
   };
   // Cached parsed colors to avoid Color.parseColor in onDraw loop
   private int[] pianoColorsInt = null;
-  // Audio player utility
-  private AudioUtils utils = null;
+  // Audio player utility (read by noteOn from any thread)
+  private volatile AudioUtils utils = null;
   // Context
   private Context context;
   // Layout width
@@ -105,9 +142,20 @@ public class PianoView extends View {
   private OnPianoAutoPlayListener autoPlayListener;
   // Piano event listener
   private OnPianoListener pianoListener;
+  // Optional recorder for what the user plays (auto-play notes are not recorded)
+  private PerformanceRecorder performanceRecorder;
+  // Optional touch-to-sound latency tracing; null (the default) costs one null check
+  private LatencyTracer latencyTracer;
+  // Optional onDraw / rebuild cost counters; null (the default) disables collection
+  private DrawMetrics drawMetrics;
   // Scroll observers (e.g. the minimap overview, a SeekBar sync)
   private final CopyOnWriteArrayList<OnPianoScrollListener> scrollListeners =
       new CopyOnWriteArrayList<>();
+  // Pressed-key observers, fed once per frame with the bitset and the bits changed since
+  private final CopyOnWriteArrayList<OnKeyStateListener> keyStateListeners =
+      new CopyOnWriteArrayList<>();
+  private long notifiedKeysLow = 0L;
+  private long notifiedKeysHigh = 0L;
   // Scroll progress properties for the piano view
   private int progress = 0;
   // Whether keys can be pressed
@@ -118,6 +166,63 @@ public class PianoView extends View {
   private boolean isInitFinish = false;
   private int minRange = 0;
   private int maxRange = 0;
+  // Frame-synced (Choreographer) auto-scroll animation state
+  private Choreographer choreographer;
+  private boolean isScrollAnimating = false;
+  private int scrollAnimStartX = 0;
+  private int scrollAnimTargetX = 0;
+  private long scrollAnimStartNanos = -1;
+  // Duration of one eased auto-scroll glide
+  private static final long AUTO_SCROLL_DURATION_NANOS = 220000000L;
+  // How far ahead in the auto-play timeline the auto-scroll looks
+  private static final long AUTO_SCROLL_LOOKAHEAD_MS = 1500L;
+  private static final int AUTO_SCROLL_LOOKAHEAD_NOTES = 16;
+  // Scroll listener notifications are coalesced to at most one per frame
+  private boolean scrollNotifyPending = false;
+  private final Choreographer.FrameCallback scrollAnimCallback = new Choreographer.FrameCallback() {
+    @Override public void doFrame(long frameTimeNanos) {
+      stepScrollAnimation(frameTimeNanos);
+    }
+  };
+  private final Choreographer.FrameCallback scrollNotifyCallback =
+      new Choreographer.FrameCallback() {
+        @Override public void doFrame(long frameTimeNanos) {
+          flushScrollNotification();
+        }
+      };
+  // External note input: latest requested state per key index, written by noteOn/noteOff
+  // from any thread and applied to the keys on the next frame
+  private static final int NOTE_NONE = 0;
+  private static final int NOTE_ON = 1;
+  private static final int NOTE_OFF = 2;
+  // Pressed and released within one frame: show it pressed for one frame, then release
+  private static final int NOTE_TAP = 3;
+  private final AtomicIntegerArray pendingNotes = new AtomicIntegerArray(Piano.PIANO_NUMS);
+  private final AtomicBoolean noteFlushPending = new AtomicBoolean(false);
+  // Keys currently held by noteOn (main thread only); touch release leaves them pressed
+  private final boolean[] heldByNote = new boolean[Piano.PIANO_NUMS];
+  private final Choreographer.FrameCallback noteFlushCallback =
+      new Choreographer.FrameCallback() {
+        @Override public void doFrame(long frameTimeNanos) {
+          flushPendingNotes();
+        }
+      };
+  // Keys whose pressed state changed since the last frame (bit = key index, main thread only);
+  // flushed once per frame as a single invalidate covering all of them
+  private long dirtyKeysLow = 0L;
+  private long dirtyKeysHigh = 0L;
+  private boolean dirtyFlushPending = false;
+  private final Rect dirtyRect = new Rect();
+  // Invalidation counters: key state changes, invalidates issued, most keys in one frame
+  private long keyInvalidationCount = 0L;
+  private long frameInvalidationCount = 0L;
+  private int maxKeysInvalidatedPerFrame = 0;
+  private final Choreographer.FrameCallback dirtyFlushCallback =
+      new Choreographer.FrameCallback() {
+        @Override public void doFrame(long frameTimeNanos) {
+          flushDirtyKeys();
+        }
+      };
   //
   private int maxStream;
   // Auto-play Handler
@@ -151,6 +256,8 @@ public class PianoView extends View {
     paint.setStyle(Paint.Style.FILL);
     // Initialize the note-name square rect
     square = new RectF();
+    choreographer = Choreographer.getInstance();
+    Arrays.fill(pointerKeys, -1);
     // Pre-parse default colors to ints
     parsePianoColorsIfNeeded();
     // Read XML attributes (width mode / visible white keys)
@@ -275,19 +382,15 @@ public class PianoView extends View {
     if (!geometryChanged) {
       return;
     }
-    // Capture currently pressed keys so we can restore them after the rebuild
-    ArrayList<int[]> pressedIds = new ArrayList<>();
-    for (PianoKey key : pressedKeys) {
-      pressedIds.add(
-          new int[] { key.getType().getValue(), key.getGroup(), key.getPositionOfGroup() });
-    }
-    pressedKeys.clear();
-
+    DrawMetrics metrics = drawMetrics;
+    long rebuildStart = metrics != null ? System.nanoTime() : 0L;
     piano = new Piano(context, scaleX, scaleY);
     whitePianoKeys = piano.getWhitePianoKeys();
     blackPianoKeys = piano.getBlackPianoKeys();
     builtScaleX = scaleX;
     builtScaleY = scaleY;
+    // Half the narrowest (black) key width
+    touchStepPx = Math.max(1, blackPianoKeys.get(1)[0].getKeyDrawable().getBounds().width() / 2);
 
     // Load audio only once; it is keyed by voice/position and geometry-independent
     if (utils == null) {
@@ -296,6 +399,7 @@ public class PianoView extends View {
       } else {
         utils = AudioUtils.getInstance(getContext(), loadAudioListener);
       }
+      utils.setLatencyTracer(latencyTracer);
       try {
         utils.loadMusic(piano);
       } catch (Exception e) {
@@ -303,10 +407,9 @@ public class PianoView extends View {
       }
     }
 
-    // Restore pressed state onto the freshly built keys (without replaying audio)
-    if (!pressedIds.isEmpty()) {
-      restorePressedKeys(pressedIds);
-    }
+    // Restore pressed state onto the freshly built keys (without replaying audio);
+    // key indices are geometry-independent, so the pressed set and pointer table still apply
+    restorePressedKeys();
 
     // Re-apply the current scroll position against the new geometry
     minRange = 0;
@@ -317,7 +420,24 @@ public class PianoView extends View {
     invalidate();
     // The keyboard geometry (total width) may have changed; notify observers
     // (e.g. the minimap) so they can re-sync even if the scroll position is unchanged.
-    notifyScrollListeners();
+    scheduleScrollNotification();
+    if (metrics != null) {
+      metrics.recordRebuild(System.nanoTime() - rebuildStart);
+    }
+  }
+
+  private void scheduleScrollNotification() {
+    if (!scrollNotifyPending) {
+      scrollNotifyPending = true;
+      choreographer.postFrameCallback(scrollNotifyCallback);
+    }
+  }
+
+  private void flushScrollNotification() {
+    if (scrollNotifyPending) {
+      scrollNotifyPending = false;
+      notifyScrollListeners();
+    }
   }
 
   private void notifyScrollListeners() {
@@ -331,32 +451,56 @@ public class PianoView extends View {
     }
   }
 
-  private void restorePressedKeys(ArrayList<int[]> pressedIds) {
-    restorePressedKeysIn(whitePianoKeys, pressedIds);
-    restorePressedKeysIn(blackPianoKeys, pressedIds);
+  private void restorePressedKeys() {
+    for (int keyIndex = nextPressedKey(0); keyIndex >= 0;
+        keyIndex = nextPressedKey(keyIndex + 1)) {
+      PianoKey key = piano.getKey(keyIndex);
+      key.getKeyDrawable().setState(STATE_PRESSED);
+      key.setPressed(true);
+    }
+    for (int pointerId = 0; pointerId <= MAX_POINTER_ID; pointerId++) {
+      if (pointerKeys[pointerId] >= 0) {
+        piano.getKey(pointerKeys[pointerId]).setFingerID(pointerId);
+      }
+    }
   }
 
-  private void restorePressedKeysIn(ArrayList<PianoKey[]> keys, ArrayList<int[]> pressedIds) {
-    if (keys == null) {
-      return;
+  /**
+   * @param from 起始钢琴键编号
+   * @return 不小于 from 的第一个按下的钢琴键编号，没有时返回-1
+   */
+  private int nextPressedKey(int from) {
+    if (from < 64) {
+      long bits = pressedKeysLow & (-1L << from);
+      if (bits != 0L) {
+        return Long.numberOfTrailingZeros(bits);
+      }
+      from = 64;
     }
-    for (int i = 0; i < keys.size(); i++) {
-      for (PianoKey key : keys.get(i)) {
-        for (int[] id : pressedIds) {
-          if (key.getType().getValue() == id[0]
-              && key.getGroup() == id[1]
-              && key.getPositionOfGroup() == id[2]) {
-            key.getKeyDrawable().setState(new int[] { android.R.attr.state_pressed });
-            key.setPressed(true);
-            pressedKeys.add(key);
-            break;
-          }
-        }
+    if (from < 128) {
+      long bits = pressedKeysHigh & (-1L << (from - 64));
+      if (bits != 0L) {
+        return 64 + Long.numberOfTrailingZeros(bits);
       }
     }
+    return -1;
+  }
+
+  private void setKeyPressedBit(int keyIndex, boolean pressed) {
+    if (keyIndex < 64) {
+      long bit = 1L << keyIndex;
+      pressedKeysLow = pressed ? pressedKeysLow | bit : pressedKeysLow & ~bit;
+    } else {
+      long bit = 1L << (keyIndex - 64);
+      pressedKeysHigh = pressed ? pressedKeysHigh | bit : pressedKeysHigh & ~bit;
+    }
   }
 
   @Override protected void onDraw(Canvas canvas) {
+    DrawMetrics metrics = drawMetrics;
+    long drawStart = metrics != null ? System.nanoTime() : 0L;
+    int keysDrawn = 0;
+    int textsDrawn = 0;
     // Piano and audio initialized in onSizeChanged()/ensurePiano()
     // Rebuild if a runtime geometry change (e.g. width mode) re-measured scaleX/scaleY
     ensurePiano();
@@ -387,6 +531,8 @@ public class PianoView extends View {
               (int) ((square.bottom + square.top - fontMetrics.bottom - fontMetrics.top) / 2);
           paint.setTextAlign(Paint.Align.CENTER);
           canvas.drawText(key.getLetterName(), square.centerX(), baseline, paint);
+          keysDrawn++;
+          textsDrawn++;
         }
       }
     }
@@ -395,6 +541,7 @@ public class PianoView extends View {
       for (int i = 0; i < blackPianoKeys.size(); i++) {
         for (PianoKey key : blackPianoKeys.get(i)) {
           key.getKeyDrawable().draw(canvas);
+          keysDrawn++;
         }
       }
     }
@@ -402,11 +549,27 @@ public class PianoView extends View {
       isInitFinish = true;
       pianoListener.onPianoInitFinish();
     }
+    if (metrics != null) {
+      metrics.recordDraw(System.nanoTime() - drawStart, keysDrawn, textsDrawn);
+    }
   }
 
   @Override public boolean onTouchEvent(MotionEvent event) {
+    LatencyTracer tracer = latencyTracer;
+    if (tracer == null) {
+      return handleTouchEvent(event);
+    }
+    tracer.beginEvent(eventTimeNanos(event), System.nanoTime());
+    try {
+      return handleTouchEvent(event);
+    } finally {
+      tracer.endEvent();
+    }
+  }
+
+  private boolean handleTouchEvent(MotionEvent event) {
     int action = event.getActionMasked();
-    if (!canPress) {
+    if (!canPress || piano == null) {
       return false;
     }
     switch (action) {
@@ -418,11 +581,19 @@ public class PianoView extends View {
         break;
       //当手指在键盘上滑动的时候
       case MotionEvent.ACTION_MOVE:
-        for (int i = 0; i < event.getPointerCount(); i++) {
-          handleMove(i, event);
-        }
-        for (int i = 0; i < event.getPointerCount(); i++) {
-          handleDown(i, event);
+        // Walk the batched historical samples in time order, then the current position,
+        // so a fast sweep triggers every key it crosses
+        int historySize = event.getHistorySize();
+        int pointerCount = event.getPointerCount();
+        int scrollX = getScrollX();
+        for (int h = 0; h <= historySize; h++) {
+          long eventNanos =
+              h < historySize ? historicalEventTimeNanos(event, h) : eventTimeNanos(event);
+          for (int i = 0; i < pointerCount; i++) {
+            float x = h < historySize ? event.getHistoricalX(i, h) : event.getX(i);
+            float y = h < historySize ? event.getHistoricalY(i, h) : event.getY(i);
+            handleMove(event.getPointerId(i), (int) x + scrollX, (int) y, eventNanos);
+          }
         }
         break;
       //多点触控，当其他手指抬起的时候
@@ -440,6 +611,23 @@ public class PianoView extends View {
     return true;
   }
 
+  /**
+   * 事件时间，与 {@link System#nanoTime()} 同一时基(API 34 以下精确到毫秒)
+   */
+  private static long eventTimeNanos(MotionEvent event) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+      return event.getEventTimeNanos();
+    }
+    return event.getEventTime() * NANOS_PER_MILLI;
+  }
+
+  private static long historicalEventTimeNanos(MotionEvent event, int pos) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+      return event.getHistoricalEventTimeNanos(pos);
+    }
+    return event.getHistoricalEventTime(pos) * NANOS_PER_MILLI;
+  }
+
   /**
    * 处理按下事件
    *
@@ -447,41 +635,58 @@ public class PianoView extends View {
    * @param event 事件对象
    */
   private void handleDown(int which, MotionEvent event) {
+    int pointerId = event.getPointerId(which);
+    if (pointerId < 0 || pointerId > MAX_POINTER_ID) {
+      return;
+    }
     int x = (int) event.getX(which) + this.getScrollX();
     int y = (int) event.getY(which);
-    //检查白键
-    for (int i = 0; i < whitePianoKeys.size(); i++) {
-      for (PianoKey key : whitePianoKeys.get(i)) {
-        if (!key.isPressed() && key.contains(x, y)) {
-          handleWhiteKeyDown(which, event, key);
-        }
-      }
-    }
-    //检查黑键
-    for (int i = 0; i < blackPianoKeys.size(); i++) {
-      for (PianoKey key : blackPianoKeys.get(i)) {
-        if (!key.isPressed() && key.contains(x, y)) {
-          handleBlackKeyDown(which, event, key);
-        }
+    long eventNanos = eventTimeNanos(event);
+    lastTouchX[pointerId] = x;
+    lastTouchY[pointerId] = y;
+    lastTouchNanos[pointerId] = eventNanos;
+    touchTracked[pointerId] = true;
+    pressAt(pointerId, x, y, eventNanos);
+  }
+
+  /**
+   * 按下包含该点的钢琴键
+   *
+   * @param pointerId 触摸点ID
+   * @param x 钢琴坐标
+   * @param y 钢琴坐标
+   * @param eventNanos 事件时间(纳秒)
+   */
+  private void pressAt(int pointerId, int x, int y, long eventNanos) {
+    int keyIndex = piano.findKeyIndex(x, y);
+    if (keyIndex >= 0) {
+      PianoKey key = piano.getKey(keyIndex);
+      if (!key.isPressed()) {
+        handleKeyDown(key, pointerId, eventNanos);
       }
     }
   }
 
   /**
-   * 处理白键点击
+   * 处理钢琴键点击
    *
-   * @param which 那个触摸点
-   * @param event 事件
    * @param key 钢琴按键
+   * @param pointerId 触摸点ID，自动播放时为-1
+   * @param eventNanos 事件时间(纳秒)，用于录制
    */
-  private void handleWhiteKeyDown(int which, MotionEvent event, PianoKey key) {
-    key.getKeyDrawable().setState(new int[] { android.R.attr.state_pressed });
+  private void handleKeyDown(PianoKey key, int pointerId, long eventNanos) {
+    key.getKeyDrawable().setState(STATE_PRESSED);
     key.setPressed(true);
-    if (event != null) {
-      key.setFingerID(event.getPointerId(which));
+    if (pointerId != -1) {
+      if (latencyTracer != null) {
+        latencyTracer.markKeyResolved(System.nanoTime());
+      }
+      key.setFingerID(pointerId);
+      pointerKeys[pointerId] = key.getKeyIndex();
+      recordKey(key, true, eventNanos);
     }
-    pressedKeys.add(key);
-    invalidate(key.getKeyDrawable().getBounds());
+    setKeyPressedBit(key.getKeyIndex(), true);
+    markKeyDirty(key);
     utils.playMusic(key);
     if (pianoListener != null) {
       pianoListener.onPianoClick(key.getType(), key.getVoice(), key.getGroup(),
@@ -490,47 +695,79 @@ public class PianoView extends View {
   }
 
   /**
-   * 处理黑键点击
+   * 抬起钢琴键(不影响由 {@link #noteOn} 按住的键的显示)
    *
-   * @param which 那个触摸点
-   * @param event 事件
    * @param key 钢琴按键
+   * @param eventNanos 事件时间(纳秒)，用于录制
    */
-  private void handleBlackKeyDown(int which, MotionEvent event, PianoKey key) {
-    key.getKeyDrawable().setState(new int[] { android.R.attr.state_pressed });
-    key.setPressed(true);
-    if (event != null) {
-      key.setFingerID(event.getPointerId(which));
+  private void handleKeyUp(PianoKey key, long eventNanos) {
+    int fingerId = key.getFingerID();
+    if (fingerId != -1) {
+      // Only keys pressed by a finger are recorded; auto-played keys have no finger
+      recordKey(key, false, eventNanos);
+      key.resetFingerID();
+      if (fingerId <= MAX_POINTER_ID && pointerKeys[fingerId] == key.getKeyIndex()) {
+        pointerKeys[fingerId] = -1;
+      }
     }
-    pressedKeys.add(key);
-    invalidate(key.getKeyDrawable().getBounds());
-    utils.playMusic(key);
-    if (pianoListener != null) {
-      pianoListener.onPianoClick(key.getType(), key.getVoice(), key.getGroup(),
-          key.getPositionOfGroup());
+    if (heldByNote[key.getKeyIndex()]) {
+      return;
     }
+    key.getKeyDrawable().setState(STATE_RELEASED);
+    key.setPressed(false);
+    setKeyPressedBit(key.getKeyIndex(), false);
+    markKeyDirty(key);
   }
 
   /**
-   * 处理滑动
+   * 处理滑动。从该触摸点上一次的位置插值到新位置，步长不超过最窄琴键宽度的一半，
+   * 快速滑过的每个琴键都会依次发声
    *
-   * @param which 触摸点下标
-   * @param event 事件对象
+   * @param pointerId 触摸点ID
+   * @param x 钢琴坐标
+   * @param y 钢琴坐标
+   * @param eventNanos 采样时间(纳秒)
    */
-  private void handleMove(int which, MotionEvent event) {
-    int x = (int) event.getX(which) + this.getScrollX();
-    int y = (int) event.getY(which);
-    for (PianoKey key : pressedKeys) {
-      if (key.getFingerID() == event.getPointerId(which)) {
-        if (!key.contains(x, y)) {
-          key.getKeyDrawable().setState(new int[] { -android.R.attr.state_pressed });
-          invalidate(key.getKeyDrawable().getBounds());
-          key.setPressed(false);
-          key.resetFingerID();
-          pressedKeys.remove(key);
-        }
+  private void handleMove(int pointerId, int x, int y, long eventNanos) {
+    if (pointerId < 0 || pointerId > MAX_POINTER_ID) {
+      return;
+    }
+    if (!touchTracked[pointerId]) {
+      // No down seen for this pointer (e.g. pressing was disabled): nothing to interpolate from
+      lastTouchX[pointerId] = x;
+      lastTouchY[pointerId] = y;
+      lastTouchNanos[pointerId] = eventNanos;
+      touchTracked[pointerId] = true;
+    }
+    int fromX = lastTouchX[pointerId];
+    int fromY = lastTouchY[pointerId];
+    long fromNanos = lastTouchNanos[pointerId];
+    int dx = x - fromX;
+    int dy = y - fromY;
+    int distance = Math.max(Math.abs(dx), Math.abs(dy));
+    int steps = Math.max(1, (distance + touchStepPx - 1) / touchStepPx);
+    for (int k = 1; k <= steps; k++) {
+      moveTo(pointerId, fromX + dx * k / steps, fromY + dy * k / steps,
+          fromNanos + (eventNanos - fromNanos) * k / steps);
+    }
+    lastTouchX[pointerId] = x;
+    lastTouchY[pointerId] = y;
+    lastTouchNanos[pointerId] = eventNanos;
+  }
+
+  /**
+   * 触摸点移动到新位置。只有越过琴键边界时才抬起原来的键并按下新的键
+   */
+  private void moveTo(int pointerId, int x, int y, long eventNanos) {
+    int held = pointerKeys[pointerId];
+    if (held >= 0) {
+      PianoKey key = piano.getKey(held);
+      if (key.contains(x, y)) {
+        return;
       }
+      handleKeyUp(key, eventNanos);
     }
+    pressAt(pointerId, x, y, eventNanos);
   }
 
   /**
@@ -539,15 +776,13 @@ public class PianoView extends View {
    * @param pointerId 触摸点ID
    */
   private void handlePointerUp(int pointerId) {
-    for (PianoKey key : pressedKeys) {
-      if (key.getFingerID() == pointerId) {
-        key.setPressed(false);
-        key.resetFingerID();
-        key.getKeyDrawable().setState(new int[] { -android.R.attr.state_pressed });
-        invalidate(key.getKeyDrawable().getBounds());
-        pressedKeys.remove(key);
-        break;
-      }
+    if (pointerId < 0 || pointerId > MAX_POINTER_ID) {
+      return;
+    }
+    touchTracked[pointerId] = false;
+    int held = pointerKeys[pointerId];
+    if (held >= 0) {
+      handleKeyUp(piano.getKey(held), System.nanoTime());
     }
   }
 
@@ -555,18 +790,288 @@ public class PianoView extends View {
    * 处理最后一个手指抬起事件
    */
   private void handleUp() {
-    if (pressedKeys.size() > 0) {
-      for (PianoKey key : pressedKeys) {
-        key.getKeyDrawable().setState(new int[] { -android.R.attr.state_pressed });
-        key.setPressed(false);
-        invalidate(key.getKeyDrawable().getBounds());
+    Arrays.fill(touchTracked, false);
+    long now = System.nanoTime();
+    for (int keyIndex = nextPressedKey(0); keyIndex >= 0;
+        keyIndex = nextPressedKey(keyIndex + 1)) {
+      handleKeyUp(piano.getKey(keyIndex), now);
+    }
+    Arrays.fill(pointerKeys, -1);
+  }
+
+  /**
+   * 记录用户按下或抬起的按键(没有设置录制器或未在录制时直接返回)
+   *
+   * @param key 钢琴按键
+   * @param down 是否按下
+   * @param nanos 事件时间({@link System#nanoTime()} 时基)
+   */
+  private void recordKey(PianoKey key, boolean down, long nanos) {
+    PerformanceRecorder recorder = performanceRecorder;
+    if (recorder == null || !recorder.isRecording()) {
+      return;
+    }
+    if (down) {
+      recorder.recordKeyDown(key.getKeyIndex(), nanos);
+    } else {
+      recorder.recordKeyUp(key.getKeyIndex(), nanos);
+    }
+  }
+
+  /**
+   * 把 noteOn/noteOff 请求应用到琴键(每帧一次，在主线程)
+   */
+  private void flushPendingNotes() {
+    noteFlushPending.set(false);
+    if (piano == null) {
+      return;
+    }
+    boolean tapped = false;
+    for (int keyIndex = 0; keyIndex < Piano.PIANO_NUMS; keyIndex++) {
+      int state = pendingNotes.getAndSet(keyIndex, NOTE_NONE);
+      if (state == NOTE_NONE) {
+        continue;
+      }
+      PianoKey key = piano.getKey(keyIndex);
+      if (state == NOTE_OFF) {
+        if (heldByNote[keyIndex]) {
+          heldByNote[keyIndex] = false;
+          if (key.getFingerID() == -1) {
+            key.getKeyDrawable().setState(STATE_RELEASED);
+            key.setPressed(false);
+            setKeyPressedBit(keyIndex, false);
+            markKeyDirty(key);
+          }
+        }
+        continue;
+      }
+      if (!heldByNote[keyIndex]) {
+        heldByNote[keyIndex] = true;
+        if (!key.isPressed()) {
+          key.getKeyDrawable().setState(STATE_PRESSED);
+          key.setPressed(true);
+          setKeyPressedBit(keyIndex, true);
+          markKeyDirty(key);
+        }
+        if (pianoListener != null) {
+          pianoListener.onPianoClick(key.getType(), key.getVoice(), key.getGroup(),
+              key.getPositionOfGroup());
+        }
+      }
+      // A newer noteOn since this frame started takes precedence over the queued release
+      if (state == NOTE_TAP && pendingNotes.compareAndSet(keyIndex, NOTE_NONE, NOTE_OFF)) {
+        tapped = true;
+      }
+    }
+    if (tapped) {
+      scheduleNoteFlush();
+    }
+    // Already inside a frame: invalidate now instead of one frame later
+    if (dirtyFlushPending) {
+      choreographer.removeFrameCallback(dirtyFlushCallback);
+      flushDirtyKeys();
+    }
+  }
+
+  /**
+   * 标记琴键需要重绘，同一帧内的所有标记合并为一次 invalidate
+   *
+   * @param key 钢琴按键
+   */
+  private void markKeyDirty(PianoKey key) {
+    int keyIndex = key.getKeyIndex();
+    if (keyIndex < 64) {
+      dirtyKeysLow |= 1L << keyIndex;
+    } else {
+      dirtyKeysHigh |= 1L << (keyIndex - 64);
+    }
+    keyInvalidationCount++;
+    if (!dirtyFlushPending) {
+      dirtyFlushPending = true;
+      choreographer.postFrameCallback(dirtyFlushCallback);
+    }
+  }
+
+  // invalidate(Rect) is deprecated since API 28 because hardware-accelerated views ignore the
+  // rect. flushDirtyKeys takes the plain invalidate() path there; the rect still limits
+  // software redraws
+  @SuppressWarnings("deprecation")
+  private void invalidateSoftware(Rect dirty) {
+    invalidate(dirty);
+  }
+
+  private void flushDirtyKeys() {
+    dirtyFlushPending = false;
+    long low = dirtyKeysLow;
+    long high = dirtyKeysHigh;
+    dirtyKeysLow = 0L;
+    dirtyKeysHigh = 0L;
+    notifyKeyStateListeners();
+    if (piano == null || (low | high) == 0L) {
+      return;
+    }
+    int keys = Long.bitCount(low) + Long.bitCount(high);
+    // The dirty rect is only a hint under hardware acceleration; skip the rect work there
+    if (isHardwareAccelerated()) {
+      invalidate();
+    } else {
+      dirtyRect.setEmpty();
+      unionDirtyBounds(low, 0);
+      unionDirtyBounds(high, 64);
+      invalidateSoftware(dirtyRect);
+    }
+    frameInvalidationCount++;
+    if (keys > maxKeysInvalidatedPerFrame) {
+      maxKeysInvalidatedPerFrame = keys;
+    }
+  }
+
+  /**
+   * 把本帧按下状态的变化通知给琴键状态监听器(一帧内按下又抬起的琴键不通知)
+   */
+  private void notifyKeyStateListeners() {
+    long changedLow = pressedKeysLow ^ notifiedKeysLow;
+    long changedHigh = pressedKeysHigh ^ notifiedKeysHigh;
+    if ((changedLow | changedHigh) == 0L) {
+      return;
+    }
+    notifiedKeysLow = pressedKeysLow;
+    notifiedKeysHigh = pressedKeysHigh;
+    if (!keyStateListeners.isEmpty()) {
+      for (OnKeyStateListener listener : keyStateListeners) {
+        listener.onKeyStateChanged(pressedKeysLow, pressedKeysHigh, changedLow, changedHigh);
+      }
+    }
+  }
+
+  private void unionDirtyBounds(long bits, int offset) {
+    while (bits != 0L) {
+      PianoKey key = piano.getKey(offset + Long.numberOfTrailingZeros(bits));
+      if (key != null) {
+        dirtyRect.union(key.getKeyDrawable().getBounds());
       }
-      pressedKeys.clear();
+      bits &= bits - 1;
+    }
+  }
+
+  private void scheduleNoteFlush() {
+    if (noteFlushPending.compareAndSet(false, true)) {
+      choreographer.postFrameCallback(noteFlushCallback);
     }
   }
 
   //-----公共方法
 
+  /**
+   * 设置触摸到发声的延迟追踪器(默认关闭)。各阶段的 p50/p95/p99 通过
+   * {@link LatencyTracer#getHistogram} 获取
+   *
+   * @param latencyTracer 延迟追踪器，null 为关闭
+   */
+  public void setLatencyTracer(LatencyTracer latencyTracer) {
+    this.latencyTracer = latencyTracer;
+    if (utils != null) {
+      utils.setLatencyTracer(latencyTracer);
+    }
+  }
+
+  public LatencyTracer getLatencyTracer() {
+    return latencyTracer;
+  }
+
+  /**
+   * 设置绘制开销统计(onDraw 次数和耗时、绘制的琴键和文字数、键盘重建次数和耗时)，
+   * 可以在运行时开启或关闭
+   *
+   * @param drawMetrics 统计对象，null 为关闭
+   */
+  public void setDrawMetrics(DrawMetrics drawMetrics) {
+    this.drawMetrics = drawMetrics;
+  }
+
+  public DrawMetrics getDrawMetrics() {
+    return drawMetrics;
+  }
+
+  /**
+   * 获取琴键状态变化(按下或抬起)导致的重绘请求数
+   *
+   * @return 重绘请求数
+   */
+  public long getKeyInvalidationCount() {
+    return keyInvalidationCount;
+  }
+
+  /**
+   * 获取实际发出的 invalidate 次数，每帧最多一次
+   *
+   * @return invalidate 次数
+   */
+  public long getFrameInvalidationCount() {
+    return frameInvalidationCount;
+  }
+
+  /**
+   * 获取单帧内合并重绘的最多琴键数
+   *
+   * @return 单帧最多琴键数
+   */
+  public int getMaxKeysInvalidatedPerFrame() {
+    return maxKeysInvalidatedPerFrame;
+  }
+
+  /**
+   * 重置重绘计数
+   */
+  public void resetInvalidationCounters() {
+    keyInvalidationCount = 0L;
+    frameInvalidationCount = 0L;
+    maxKeysInvalidatedPerFrame = 0;
+  }
+
+  /**
+   * 按下钢琴键，供外部输入源(如 USB MIDI 键盘、网络课堂)使用，可以在任意线程调用。
+   * 声音立即提交给音频引擎而不经过主线程；琴键的按下状态合并到下一帧统一绘制。
+   *
+   * @param keyIndex 钢琴键编号(0~87，即 MIDI 音符号减 21，见 {@link PianoKeyIndex})
+   * @param velocity MIDI 力度(1~127)，0 等同于 {@link #noteOff}
+   */
+  public void noteOn(int keyIndex, int velocity) {
+    if (keyIndex < 0 || keyIndex >= Piano.PIANO_NUMS) {
+      return;
+    }
+    if (velocity <= 0) {
+      noteOff(keyIndex);
+      return;
+    }
+    AudioUtils audio = utils;
+    if (audio != null) {
+      audio.noteOn(keyIndex, velocity);
+    }
+    pendingNotes.set(keyIndex, NOTE_ON);
+    scheduleNoteFlush();
+  }
+
+  /**
+   * 抬起由 {@link #noteOn} 按下的钢琴键，可以在任意线程调用。
+   * 与触摸弹奏一致，采样会完整播放，这里只更新琴键的显示。
+   *
+   * @param keyIndex 钢琴键编号
+   */
+  public void noteOff(int keyIndex) {
+    if (keyIndex < 0 || keyIndex >= Piano.PIANO_NUMS) {
+      return;
+    }
+    while (true) {
+      int state = pendingNotes.get(keyIndex);
+      int next = state == NOTE_ON || state == NOTE_TAP ? NOTE_TAP : NOTE_OFF;
+      if (pendingNotes.compareAndSet(keyIndex, state, next)) {
+        break;
+      }
+    }
+    scheduleNoteFlush();
+  }
+
   /**
    * 自动播放
    *
@@ -587,61 +1092,54 @@ public class PianoView extends View {
         //播放
         try {
           if (autoPlayEntities != null) {
-            for (AutoPlayEntity entity : autoPlayEntities) {
+            AutoPlayScheduler scheduler = newAutoPlayScheduler();
+            for (AutoPlayEntity entity : autoPlayEntities.toArray(new AutoPlayEntity[0])) {
               if (entity != null) {
-                if (entity.getType() != null) {
-                  switch (entity.getType()) {
-                    case BLACK://黑键
-                      PianoKey blackKey = null;
-                      if (entity.getGroup() == 0) {
-                        if (entity.getPosition() == 0) {
-                          blackKey = blackPianoKeys.get(0)[0];
-                        }
-                      } else if (entity.getGroup() > 0 && entity.getGroup() <= 7) {
-                        if (entity.getPosition() >= 0 && entity.getPosition() <= 4) {
-                          blackKey = blackPianoKeys.get(entity.getGroup())[entity.getPosition()];
-                        }
-                      }
-                      if (blackKey != null) {
-                        Message msg = Message.obtain();
-                        msg.what = HANDLE_AUTO_PLAY_BLACK_DOWN;
-                        msg.obj = blackKey;
-                        autoPlayHandler.sendMessage(msg);
-                      }
-                      break;
-                    case WHITE://白键
-                      PianoKey whiteKey = null;
-                      if (entity.getGroup() == 0) {
-                        if (entity.getPosition() == 0) {
-                          whiteKey = whitePianoKeys.get(0)[0];
-                        } else if (entity.getPosition() == 1) {
-                          whiteKey = whitePianoKeys.get(0)[1];
-                        }
-                      } else if (entity.getGroup() >= 0 && entity.getGroup() <= 7) {
-                        if (entity.getPosition() >= 0 && entity.getPosition() <= 6) {
-                          whiteKey = whitePianoKeys.get(entity.getGroup())[entity.getPosition()];
-                        }
-                      } else if (entity.getGroup() == 8) {
-                        if (entity.getPosition() == 0) {
-                          whiteKey = whitePianoKeys.get(8)[0];
-                        }
-                      }
-                      if (whiteKey != null) {
-                        Message msg = Message.obtain();
-                        msg.what = HANDLE_AUTO_PLAY_WHITE_DOWN;
-                        msg.obj = whiteKey;
-                        autoPlayHandler.sendMessage(msg);
-                      }
-                      break;
-                    default:
-                      break;
-                  }
-                }
-                Thread.sleep(entity.getCurrentBreakTime() / 2);
-                autoPlayHandler.sendEmptyMessage(HANDLE_AUTO_PLAY_KEY_UP);
-                Thread.sleep(entity.getCurrentBreakTime() / 2);
+                scheduler.offer(entity.getType() == null ? AutoPlayTimeline.NULL_KEY
+                        : entity.getType().getValue(), entity.getGroup(), entity.getPosition(),
+                    entity.getCurrentBreakTime());
               }
             }
+            scheduler.drain();
+          }
+        } catch (InterruptedException e) {
+          e.printStackTrace();
+        }
+        //结束
+        if (autoPlayHandler != null) {
+          autoPlayHandler.sendEmptyMessage(HANDLE_AUTO_PLAY_END);
+        }
+      }
+    }.start();
+  }
+
+  /**
+   * 自动播放音符序列，如紧凑的时间线(见 {@link AutoPlayUtils#getAutoPlayTimelineJsonStream})
+   * 或内存映射的二进制乐谱(见 {@link ScoreBinaryUtils#map})
+   *
+   * @param timeline 自动播放音符序列
+   */
+  public void autoPlay(final AutoPlaySource timeline) {
+    if (isAutoPlaying) {
+      return;
+    }
+    isAutoPlaying = true;
+    setCanPress(false);
+    new Thread() {
+      @Override public void run() {
+        //开始
+        if (autoPlayHandler != null) {
+          autoPlayHandler.sendEmptyMessage(HANDLE_AUTO_PLAY_START);
+        }
+        //播放
+        try {
+          if (timeline != null) {
+            AutoPlayScheduler scheduler = newAutoPlayScheduler();
+            for (int i = 0; i < timeline.size(); i++) {
+              scheduler.offer(timeline.getType(i), timeline.getGroup(i), timeline.getPosition(i),
+                  timeline.getBreakTime(i));
+            }
+            scheduler.drain();
           }
         } catch (InterruptedException e) {
           e.printStackTrace();
@@ -654,6 +1152,104 @@ public class PianoView extends View {
     }.start();
   }
 
+  /**
+   * 边解析边自动播放简谱配置(格式同 {@link PianoConvertUtils})。
+   * 解析是流式的，第一个音符在读取完整个文件之前就开始播放，内存占用与乐谱长度无关。
+   * 播放结束后会关闭Reader。
+   *
+   * @param customConfigReader 简谱配置
+   */
+  public void autoPlay(final Reader customConfigReader) {
+    if (isAutoPlaying || customConfigReader == null) {
+      return;
+    }
+    isAutoPlaying = true;
+    setCanPress(false);
+    new Thread() {
+      @Override public void run() {
+        //开始
+        if (autoPlayHandler != null) {
+          autoPlayHandler.sendEmptyMessage(HANDLE_AUTO_PLAY_START);
+        }
+        //播放
+        final AutoPlayScheduler scheduler = newAutoPlayScheduler();
+        try {
+          PianoConvertUtils.convertByReader(customConfigReader, new OnScoreParseListener() {
+            @Override public void onScoreStart(String name) {
+            }
+
+            @Override
+            public boolean onScoreNote(int type, int group, int position, long frequency) {
+              try {
+                scheduler.offer(type, group, position, frequency);
+                return true;
+              } catch (InterruptedException e) {
+                return false;
+              }
+            }
+
+            @Override public void onScoreBarLine() {
+            }
+
+            @Override public void onScoreEnd() {
+              try {
+                scheduler.drain();
+              } catch (InterruptedException e) {
+                e.printStackTrace();
+              }
+            }
+          });
+        } catch (ScoreParseException e) {
+          // 乐谱有错时停止播放，已缓存在前瞻窗口中的音符不再播放
+          scheduler.clear();
+          Log.e(TAG, "autoPlay:" + e);
+        } finally {
+          try {
+            customConfigReader.close();
+          } catch (IOException ignored) {
+          }
+        }
+        //结束
+        if (autoPlayHandler != null) {
+          autoPlayHandler.sendEmptyMessage(HANDLE_AUTO_PLAY_END);
+        }
+      }
+    }.start();
+  }
+
+  /**
+   * 创建自动播放的调度器，只在自动播放线程中使用
+   */
+  private AutoPlayScheduler newAutoPlayScheduler() {
+    return new AutoPlayScheduler(AUTO_SCROLL_LOOKAHEAD_NOTES, AUTO_SCROLL_LOOKAHEAD_MS,
+        autoPlayNoteListener);
+  }
+
+  // Forwards scheduled auto-play notes from the auto-play thread to the main thread
+  private final OnAutoPlayNoteListener autoPlayNoteListener = new OnAutoPlayNoteListener() {
+    @Override
+    public void onAutoPlayNoteDown(int keyIndex, int lowestKeyIndex, int highestKeyIndex) {
+      Piano piano = PianoView.this.piano;
+      PianoKey key = piano == null ? null : piano.getKey(keyIndex);
+      if (key == null) {
+        return;
+      }
+      Message msg = Message.obtain();
+      msg.what = key.getType() == Piano.PianoKeyType.BLACK ? HANDLE_AUTO_PLAY_BLACK_DOWN
+          : HANDLE_AUTO_PLAY_WHITE_DOWN;
+      msg.obj = key;
+      // Horizontal span of the upcoming notes, used for predictive auto-scroll
+      KeyboardLayout layout = piano.getLayout();
+      msg.arg1 = layout.getLeft(lowestKeyIndex);
+      msg.arg2 = layout.getRight(highestKeyIndex);
+      autoPlayHandler.sendMessage(msg);
+    }
+
+    @Override public void onAutoPlayNoteUp() {
+      autoPlayHandler.sendEmptyMessage(HANDLE_AUTO_PLAY_KEY_UP);
+    }
+  };
+
   /**
    * 释放自动播放
    */
@@ -663,6 +1259,27 @@ public class PianoView extends View {
     }
   }
 
+  /**
+   * 按编号获取钢琴键
+   *
+   * @param keyIndex 钢琴键编号(0~87，即 MIDI 音符号减 21，见 {@link PianoKeyIndex})
+   * @return 钢琴键，钢琴尚未构建或编号超出范围时返回null
+   */
+  public PianoKey getKey(int keyIndex) {
+    return piano == null ? null : piano.getKey(keyIndex);
+  }
+
+  /**
+   * 钢琴键当前是否处于按下状态
+   *
+   * @param keyIndex 钢琴键编号
+   * @return 是否按下
+   */
+  public boolean isKeyPressed(int keyIndex) {
+    PianoKey key = getKey(keyIndex);
+    return key != null && key.isPressed();
+  }
+
   /**
    * 获取钢琴控件的总长度
    *
@@ -775,6 +1392,7 @@ public class PianoView extends View {
    * @param progress 移动百分比
    */
   public void scroll(int progress) {
+    cancelScrollAnimation();
     int scrollableWidth = getPianoWidth() - getLayoutWidth();
     if (scrollableWidth < 0) {
       scrollableWidth = 0;
@@ -804,6 +1422,79 @@ public class PianoView extends View {
    * @param pianoPixelX 目标可见区域左边缘在整个键盘中的像素位置
    */
   public void scrollToPixel(int pianoPixelX) {
+    cancelScrollAnimation();
+    applyScrollX(pianoPixelX);
+  }
+
+  /**
+   * 以缓动动画平滑滚动到指定的钢琴像素位置,动画与屏幕刷新({@link Choreographer})同步。
+   * 动画进行中再次调用会从当前位置重新瞄准新的目标。
+   *
+   * @param pianoPixelX 目标可见区域左边缘在整个键盘中的像素位置
+   */
+  public void smoothScrollToPixel(int pianoPixelX) {
+    int target = clampScrollX(pianoPixelX);
+    if (isScrollAnimating && target == scrollAnimTargetX) {
+      return;
+    }
+    if (!isScrollAnimating && target == getScrollX()) {
+      return;
+    }
+    scrollAnimStartX = getScrollX();
+    scrollAnimTargetX = target;
+    scrollAnimStartNanos = -1;
+    if (!isScrollAnimating) {
+      isScrollAnimating = true;
+      choreographer.postFrameCallback(scrollAnimCallback);
+    }
+  }
+
+  private void stepScrollAnimation(long frameTimeNanos) {
+    if (!isScrollAnimating) {
+      return;
+    }
+    if (scrollAnimStartNanos < 0) {
+      scrollAnimStartNanos = frameTimeNanos;
+    }
+    float t = (float) (frameTimeNanos - scrollAnimStartNanos) / AUTO_SCROLL_DURATION_NANOS;
+    if (t >= 1f) {
+      t = 1f;
+    }
+    // Cubic ease-out: fast start, gentle landing
+    float inv = 1f - t;
+    float eased = 1f - inv * inv * inv;
+    applyScrollX(scrollAnimStartX + Math.round((scrollAnimTargetX - scrollAnimStartX) * eased));
+    if (t < 1f) {
+      choreographer.postFrameCallback(scrollAnimCallback);
+    } else {
+      isScrollAnimating = false;
+    }
+    // Already inside a frame: deliver the scroll change now instead of one frame later
+    if (scrollNotifyPending) {
+      choreographer.removeFrameCallback(scrollNotifyCallback);
+      flushScrollNotification();
+    }
+  }
+
+  private void cancelScrollAnimation() {
+    if (isScrollAnimating) {
+      isScrollAnimating = false;
+      choreographer.removeFrameCallback(scrollAnimCallback);
+    }
+  }
+
+  private int clampScrollX(int pianoPixelX) {
+    int scrollableWidth = getPianoWidth() - getLayoutWidth();
+    if (scrollableWidth < 0) {
+      scrollableWidth = 0;
+    }
+    if (pianoPixelX < 0) {
+      return 0;
+    }
+    return Math.min(pianoPixelX, scrollableWidth);
+  }
+
+  private void applyScrollX(int pianoPixelX) {
     int scrollableWidth = getPianoWidth() - getLayoutWidth();
     if (scrollableWidth < 0) {
       scrollableWidth = 0;
@@ -855,23 +1546,56 @@ public class PianoView extends View {
 
   @Override protected void onScrollChanged(int l, int t, int oldl, int oldt) {
     super.onScrollChanged(l, t, oldl, oldt);
-    notifyScrollListeners();
+    scheduleScrollNotification();
+  }
+
+  @Override protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    cancelScrollAnimation();
+    if (noteFlushPending.getAndSet(false)) {
+      choreographer.removeFrameCallback(noteFlushCallback);
+    }
+    if (dirtyFlushPending) {
+      dirtyFlushPending = false;
+      dirtyKeysLow = 0L;
+      dirtyKeysHigh = 0L;
+      choreographer.removeFrameCallback(dirtyFlushCallback);
+    }
+    if (scrollNotifyPending) {
+      scrollNotifyPending = false;
+      choreographer.removeFrameCallback(scrollNotifyCallback);
+    }
+  }
+
+  /**
+   * 获取当前键盘几何的只读快照(整个键盘的像素坐标),供缩略图等观察者使用。
+   * 读取不复制、不分配；键盘重新布局后返回新的快照，比较 {@link KeyboardLayout#getVersion()}
+   * 即可判断几何是否变化。
+   *
+   * @return 键盘布局，尚未完成测量时为null
+   */
+  public KeyboardLayout getKeyboardLayout() {
+    return piano != null ? piano.getLayout() : null;
   }
 
   /**
-   * 获取白键当前的绘制边界(整个键盘的像素坐标),供缩略图等观察者使用。
+   * 获取白键当前的绘制边界(整个键盘的像素坐标)。
    *
    * @return 白键边界列表
+   * @deprecated 每次调用都复制全部边界，请使用 {@link #getKeyboardLayout()}
    */
+  @Deprecated
   public List<Rect> getWhiteKeyDrawBounds() {
     return collectDrawBounds(whitePianoKeys);
   }
 
   /**
-   * 获取黑键当前的绘制边界(整个键盘的像素坐标),供缩略图等观察者使用。
+   * 获取黑键当前的绘制边界(整个键盘的像素坐标)。
    *
    * @return 黑键边界列表
+   * @deprecated 每次调用都复制全部边界，请使用 {@link #getKeyboardLayout()}
    */
+  @Deprecated
   public List<Rect> getBlackKeyDrawBounds() {
     return collectDrawBounds(blackPianoKeys);
   }
@@ -890,6 +1614,44 @@ public class PianoView extends View {
     return bounds;
   }
 
+  /**
+   * 注册琴键状态监听器(例如缩略图显示正在弹奏的琴键)。按下状态每帧最多通知一次，
+   * 注册时立即推送当前状态。在主线程调用。
+   *
+   * @param listener 琴键状态监听器
+   */
+  public void addOnKeyStateListener(OnKeyStateListener listener) {
+    if (listener == null || keyStateListeners.contains(listener)) {
+      return;
+    }
+    keyStateListeners.add(listener);
+    listener.onKeyStateChanged(notifiedKeysLow, notifiedKeysHigh, notifiedKeysLow,
+        notifiedKeysHigh);
+  }
+
+  /**
+   * 移除已注册的琴键状态监听器。
+   *
+   * @param listener 琴键状态监听器
+   */
+  public void removeOnKeyStateListener(OnKeyStateListener listener) {
+    keyStateListeners.remove(listener);
+  }
+
+  /**
+   * 琴键状态监听接口。按下的琴键以 128 位的位集表示，第 i 位对应钢琴键编号 i
+   * (见 {@link PianoKeyIndex})，low 为编号 0~63，high 为编号 64~87。
+   */
+  public interface OnKeyStateListener {
+    /**
+     * @param pressedLow 当前按下的琴键(编号 0~63)
+     * @param pressedHigh 当前按下的琴键(编号 64~87)
+     * @param changedLow 与上一次通知相比状态变化的琴键(编号 0~63)
+     * @param changedHigh 与上一次通知相比状态变化的琴键(编号 64~87)
+     */
+    void onKeyStateChanged(long pressedLow, long pressedHigh, long changedLow, long changedHigh);
+  }
+
   /**
    * 滚动监听接口。每当可见区域发生变化时回调。
    */
@@ -931,6 +1693,19 @@ public class PianoView extends View {
     this.loadAudioListener = loadAudioListener;
   }
 
+  /**
+   * 设置演奏录制器，用户按下和抬起的按键会被记录(自动播放的音符不记录)
+   *
+   * @param recorder 录制器，为null时不录制
+   */
+  public void setPerformanceRecorder(PerformanceRecorder recorder) {
+    this.performanceRecorder = recorder;
+  }
+
+  public PerformanceRecorder getPerformanceRecorder() {
+    return performanceRecorder;
+  }
+
   /**
    * 设置自动播放接口
    *
@@ -978,8 +1753,8 @@ public class PianoView extends View {
         if (msg.obj != null) {
           try {
             PianoKey key = (PianoKey) msg.obj;
-            autoScroll(key);
-            handleBlackKeyDown(-1, null, key);
+            autoScroll(key, msg.arg1, msg.arg2);
+            handleKeyDown(key, -1, 0L);
           } catch (Exception e) {
             Log.e("TAG", "黑键对象有问题:" + e.getMessage());
           }
@@ -989,8 +1764,8 @@ public class PianoView extends View {
         if (msg.obj != null) {
           try {
             PianoKey key = (PianoKey) msg.obj;
-            autoScroll(key);
-            handleWhiteKeyDown(-1, null, key);
+            autoScroll(key, msg.arg1, msg.arg2);
+            handleKeyDown(key, -1, 0L);
           } catch (Exception e) {
             Log.e("TAG", "白键对象有问题:" + e.getMessage());
           }
@@ -1015,34 +1790,38 @@ public class PianoView extends View {
   }
 
   /**
-   * 自动滚动
+   * 自动滚动。预先考虑接下来将要播放的音符范围，尽量让整个乐句保持可见，
+   * 并以平滑动画滚动，而不是跳到整数百分比位置。
    *
    * @param key 　钢琴键
+   * @param spanLeft 当前及后续音符的最左像素位置
+   * @param spanRight 当前及后续音符的最右像素位置
    */
-  private void autoScroll(PianoKey key) {
+  private void autoScroll(PianoKey key, int spanLeft, int spanRight) {
     if (isAutoPlaying) {//正在自动播放
-      if (key != null) {
-        Rect[] areas = key.getAreaOfKey();
-        if (areas != null && areas.length > 0 && areas[0] != null) {
-          int left = areas[0].left, right = key.getAreaOfKey()[0].right;
-          for (int i = 1; i < areas.length; i++) {
-            if (areas[i] != null) {
-              if (areas[i].left < left) {
-                left = areas[i].left;
-              }
-              if (areas[i].right > right) {
-                right = areas[i].right;
-              }
-            }
-          }
-          if (left < minRange || right > maxRange) {//不在当前可见区域的范围之类
-            int pianoWidth = getPianoWidth();
-            if (pianoWidth > 0) {
-              int progress = (int) ((float) left * 100 / (float) pianoWidth);
-              scroll(progress);
-            }
-          }
+      if (key != null && key.getKeyDrawable() != null) {
+        Rect bounds = key.getKeyDrawable().getBounds();
+        int left = bounds.left, right = bounds.right;
+        int width = getLayoutWidth();
+        // Judge visibility against where the view is heading, not where it is mid-glide
+        int viewLeft = isScrollAnimating ? scrollAnimTargetX : getScrollX();
+        int viewRight = viewLeft + width;
+        boolean keyVisible = left >= viewLeft && right <= viewRight;
+        boolean spanFits = spanRight - spanLeft <= width;
+        if (keyVisible && (!spanFits || (spanLeft >= viewLeft && spanRight <= viewRight))) {
+          return;
+        }
+        int target;
+        if (spanFits) {
+          // Bring the whole upcoming phrase into view with the smallest move
+          target = spanLeft < viewLeft ? spanLeft : spanRight - width;
+        } else if (spanRight > right) {
+          // The phrase heads right: lead with the current key at the left edge
+          target = left;
+        } else {
+          target = right - width;
         }
+        smoothScrollToPixel(target);
       }
     }
   }
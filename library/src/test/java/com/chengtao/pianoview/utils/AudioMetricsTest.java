@@ -0,0 +1,82 @@
+package com.chengtao.pianoview.utils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 音频统计测试：加载进度和耗时、常驻内存、发声数估算，以及 WAV 头部读取。
+ */
+public class AudioMetricsTest {
+  private static final long MS = 1000000L;
+
+  @Test public void tracksLoading() {
+    AudioMetrics.Recorder recorder = new AudioMetrics.Recorder(4);
+    recorder.loadStarted(3, 1000 * MS);
+    recorder.sampleInfo(0, 4000, 500 * MS);
+    recorder.loadRequested(0, 1000 * MS);
+    recorder.loadRequested(1, 1001 * MS);
+    recorder.loadRequested(2, 1002 * MS);
+    recorder.loadCompleted(0, true, 1010 * MS);
+    AudioMetrics loading = recorder.snapshot(1020 * MS);
+    assertFalse(loading.isLoadFinished());
+    assertEquals(20 * MS, loading.getLoadTimeNanos());
+    assertEquals(4000, loading.getResidentBytes());
+    recorder.loadCompleted(1, false, 1030 * MS);
+    // 加载完成后才得到格式信息
+    recorder.sampleInfo(2, 6000, 0);
+    recorder.loadCompleted(2, true, 1040 * MS);
+    AudioMetrics loaded = recorder.snapshot(2000 * MS);
+    assertTrue(loaded.isLoadFinished());
+    assertEquals(40 * MS, loaded.getLoadTimeNanos());
+    assertEquals(2, loaded.getSamplesLoaded());
+    assertEquals(1, loaded.getLoadFailures());
+    assertEquals(10000, loaded.getResidentBytes());
+    assertTrue(loaded.getLoadMaxNanos() == 38 * MS);
+
+    recorder.released();
+    assertEquals(0, recorder.snapshot(3000 * MS).getResidentBytes());
+  }
+
+  @Test public void estimatesVoices() {
+    AudioMetrics.Recorder recorder = new AudioMetrics.Recorder(2);
+    recorder.sampleInfo(0, 0, 100 * MS);
+    recorder.played(0, true, 0);
+    recorder.played(0, true, 10 * MS);
+    AudioMetrics two = recorder.snapshot(20 * MS);
+    assertEquals(2, two.getActiveVoices());
+    // 第三个音符超出最大发声数，截断最早的一个
+    recorder.played(0, true, 30 * MS);
+    recorder.played(0, false, 30 * MS);
+    // 加载失败时丢弃两个等待中的音符
+    recorder.notLoadedDropped(2);
+    AudioMetrics full = recorder.snapshot(30 * MS);
+    assertEquals(2, full.getActiveVoices());
+    assertEquals(2, full.getPeakVoices());
+    assertEquals(3, full.getNotesPlayed());
+    assertEquals(1, full.getVoiceCapDrops());
+    assertEquals(1, full.getBackendErrors());
+    assertEquals(2, full.getNotLoadedDrops());
+    assertEquals(1, recorder.snapshot(120 * MS).getActiveVoices());
+    assertEquals(0, recorder.snapshot(200 * MS).getActiveVoices());
+    // 时长未知时按默认时长估算
+    recorder.played(1, true, 200 * MS);
+    assertEquals(1, recorder.snapshot(
+        200 * MS + AudioMetrics.Recorder.DEFAULT_VOICE_NANOS - 1).getActiveVoices());
+  }
+
+  @Test public void readsWavInfoWithoutData() throws Exception {
+    ByteBuffer wav = ByteBuffer.allocate(WavUtils.WAV_HEADER_SIZE + 4 * 22050);
+    WavUtils.writeHeader(wav, 22050, 2, 22050);
+    WavUtils.Info info = WavUtils.readInfo(new ByteArrayInputStream(wav.array()));
+    assertEquals(22050, info.getSampleRate());
+    assertEquals(2, info.getChannels());
+    assertEquals(22050, info.getFrameCount());
+    assertEquals(88200, info.getPcmBytes());
+    assertEquals(1000 * MS, info.getDurationNanos());
+  }
+}
@@ -0,0 +1,86 @@
+package com.chengtao.pianoview.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * 只计数、不真正绘制的 Canvas，用于统计每次 onDraw 发出的绘制调用数
+ */
+final class CountingCanvas extends Canvas {
+  private int rects;
+  private int roundRects;
+  private int texts;
+  private int bitmaps;
+  private int paths;
+
+  CountingCanvas(int width, int height) {
+    super(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+  }
+
+  @Override public void drawRect(RectF rect, Paint paint) {
+    rects++;
+  }
+
+  @Override public void drawRect(Rect r, Paint paint) {
+    rects++;
+  }
+
+  @Override public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+    rects++;
+  }
+
+  @Override public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+    roundRects++;
+  }
+
+  @Override public void drawText(String text, float x, float y, Paint paint) {
+    texts++;
+  }
+
+  @Override public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+    bitmaps++;
+  }
+
+  @Override public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+    bitmaps++;
+  }
+
+  @Override public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+    bitmaps++;
+  }
+
+  @Override public void drawPath(Path path, Paint paint) {
+    paths++;
+  }
+
+  int getRects() {
+    return rects;
+  }
+
+  int getRoundRects() {
+    return roundRects;
+  }
+
+  int getTexts() {
+    return texts;
+  }
+
+  /**
+   * @return 所有绘制调用数
+   */
+  int getOps() {
+    return rects + roundRects + texts + bitmaps + paths;
+  }
+
+  void reset() {
+    rects = 0;
+    roundRects = 0;
+    texts = 0;
+    bitmaps = 0;
+    paths = 0;
+  }
+}
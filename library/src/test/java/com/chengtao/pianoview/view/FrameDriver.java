@@ -0,0 +1,126 @@
+package com.chengtao.pianoview.view;
+
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.View;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * 在 Robolectric 的主线程上逐个分发触摸事件，每个事件之后推进一帧(执行 Choreographer 回调)，
+ * 并统计被测视图处理事件时在当前线程上分配的字节数。
+ *
+ * <p>Robolectric 的 Looper 和 Choreographer 本身也会分配，因此先把每个事件的副本分发给一个探测视图，
+ * 它像 PianoView 一样读取全部触摸点坐标(包括历史采样)并请求一帧，探测视图的事件和帧的分配量作为基线扣除。
+ */
+final class FrameDriver {
+  /**
+   * 每个事件(包括其后一帧)允许分配的字节数。Robolectric 的 shadow 和类的懒加载带来的分配与运行环境有关，
+   * 扣除基线后仍有几十到两百字节的波动，所以预算约为测量值的十倍，只用于发现每个事件复制琴键数组、
+   * 创建位图之类的回归。绘制和统计路径不分配内存由 core 中的 DrawMetricsTest 和 LatencyTracerTest 保证。
+   */
+  static final long MAX_BYTES_PER_EVENT = 2048;
+  private static final Duration FRAME = Duration.ofMillis(16);
+
+  private final com.sun.management.ThreadMXBean threads;
+  private final View probe;
+  private long allocatedBytes;
+  private int events;
+
+  FrameDriver(View root, int width, int height) {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    // 部分 JVM 不支持统计线程分配量，此时跳过分配预算检查
+    threads = bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled()
+        ? (com.sun.management.ThreadMXBean) bean : null;
+    probe = new ProbeView(root);
+    root.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+        View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+    root.layout(0, 0, width, height);
+    frame();
+  }
+
+  /**
+   * 分发一个事件并推进一帧，之后回收该事件
+   */
+  void dispatch(View target, MotionEvent event) {
+    MotionEvent copy = MotionEvent.obtain(event);
+    long before = allocated();
+    probe.dispatchTouchEvent(copy);
+    frame();
+    long baseline = allocated() - before;
+    copy.recycle();
+
+    before = allocated();
+    target.dispatchTouchEvent(event);
+    frame();
+    allocatedBytes += Math.max(0, allocated() - before - baseline);
+    events++;
+    event.recycle();
+  }
+
+  void frame() {
+    shadowOf(Looper.getMainLooper()).idleFor(FRAME);
+  }
+
+  /**
+   * @return 是否能统计线程分配的字节数
+   */
+  boolean canMeasureAllocations() {
+    return threads != null;
+  }
+
+  /**
+   * @return 扣除基线后平均每个事件分配的字节数
+   */
+  long getAllocatedBytesPerEvent() {
+    return events == 0 ? 0 : allocatedBytes / events;
+  }
+
+  int getEvents() {
+    return events;
+  }
+
+  void reset() {
+    allocatedBytes = 0;
+    events = 0;
+  }
+
+  private long allocated() {
+    return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+  }
+
+  /**
+   * 按 PianoView 的方式读取事件并请求一帧的探测视图
+   */
+  private static final class ProbeView extends View {
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+      @Override public void doFrame(long frameTimeNanos) {
+      }
+    };
+    private float sink;
+
+    ProbeView(View root) {
+      super(root.getContext());
+    }
+
+    @Override public boolean onTouchEvent(MotionEvent event) {
+      sink += event.getActionMasked() + event.getActionIndex() + event.getEventTime();
+      int historySize = event.getHistorySize();
+      for (int h = 0; h <= historySize; h++) {
+        for (int i = 0; i < event.getPointerCount(); i++) {
+          sink += event.getPointerId(i);
+          sink += h < historySize ? event.getHistoricalX(i, h) + event.getHistoricalY(i, h)
+              + event.getHistoricalEventTime(h) : event.getX(i) + event.getY(i);
+        }
+      }
+      Choreographer.getInstance().postFrameCallback(frameCallback);
+      return true;
+    }
+  }
+}
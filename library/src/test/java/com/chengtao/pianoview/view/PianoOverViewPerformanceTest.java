@@ -0,0 +1,204 @@
+package com.chengtao.pianoview.view;
+
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.widget.FrameLayout;
+import com.chengtao.pianoview.utils.DrawMetrics;
+import com.chengtao.pianoview.utils.KeyboardLayout;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 缩略图拖动的回归测试：在 PianoOverView 上从左拖到右，钢琴经 {@link PianoView#scrollToPixel}
+ * 跟随滚动，检查滚动通知按帧合并、每次绘制的调用数和每个事件分配的字节数。
+ * 缩小的键盘缓存在位图中，拖动时不应重新绘制琴键；正在按下的琴键按频率上限更新，每次只重绘变化的琴键。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class PianoOverViewPerformanceTest {
+  private static final int WIDTH = 1080;
+  private static final int PIANO_HEIGHT = 400;
+  private static final int OVERVIEW_HEIGHT = 80;
+  private static final int DRAG_MOVES = 60;
+  // 键盘位图 + 高亮区域的填充和边框
+  private static final int OPS_PER_DRAW = 1 + 2;
+
+  private PianoView pianoView;
+  private PianoOverView overView;
+  private FrameDriver driver;
+  private TouchEvents touch;
+  private CountingCanvas canvas;
+  private DrawMetrics drawMetrics;
+  private int scrollNotifications;
+  private int drawnNotifications;
+  private int maxOpsPerDraw;
+
+  @Before public void setUp() {
+    FrameLayout root = new FrameLayout(RuntimeEnvironment.getApplication());
+    pianoView = new PianoView(RuntimeEnvironment.getApplication());
+    overView = new PianoOverView(RuntimeEnvironment.getApplication());
+    root.addView(pianoView, new FrameLayout.LayoutParams(WIDTH, PIANO_HEIGHT));
+    root.addView(overView, new FrameLayout.LayoutParams(WIDTH, OVERVIEW_HEIGHT));
+    drawMetrics = new DrawMetrics();
+    overView.setDrawMetrics(drawMetrics);
+    driver = new FrameDriver(root, WIDTH, PIANO_HEIGHT);
+    overView.attachTo(pianoView);
+    pianoView.addOnPianoScrollListener(new PianoView.OnPianoScrollListener() {
+      @Override public void onPianoScroll(int scrollX, int pianoWidth, int layoutWidth) {
+        scrollNotifications++;
+      }
+    });
+    canvas = new CountingCanvas(WIDTH, OVERVIEW_HEIGHT);
+    touch = new TouchEvents();
+    driver.frame();
+    drawIfNotified();
+  }
+
+  @Test public void dragAcrossKeyboard() {
+    dragToRight();
+    dragToRight();
+    resetCounters();
+    dragToRight();
+    int maxScroll = pianoView.getPianoWidth() - pianoView.getLayoutWidth();
+    assertEquals(maxScroll, pianoView.getScrollX());
+
+    int events = driver.getEvents();
+    DrawMetrics.Snapshot draws = drawMetrics.getSnapshot();
+    String report = "drag: events=" + events + ", scrollNotifications=" + scrollNotifications
+        + ", draws=" + draws.getDrawCount() + ", opsPerDraw=" + maxOpsPerDraw
+        + ", bytesPerEvent=" + driver.getAllocatedBytesPerEvent();
+    // 滚动通知按帧合并，每个事件最多一次
+    assertTrue(report, scrollNotifications <= events);
+    assertTrue(report, scrollNotifications >= DRAG_MOVES / 2);
+    assertTrue(report, draws.getDrawCount() >= scrollNotifications);
+    assertEquals(report, 0, draws.getKeysDrawn());
+    assertEquals(report, OPS_PER_DRAW, maxOpsPerDraw);
+    if (driver.canMeasureAllocations()) {
+      assertTrue(report, driver.getAllocatedBytesPerEvent() <= FrameDriver.MAX_BYTES_PER_EVENT);
+    }
+  }
+
+  @Test public void rendersKeyboardOnlyWhenSizeChanges() {
+    drawMetrics.reset();
+    overView.draw(canvas);
+    overView.draw(canvas);
+    assertEquals(0, drawMetrics.getSnapshot().getKeysDrawn());
+    overView.layout(0, 0, WIDTH, OVERVIEW_HEIGHT * 2);
+    overView.draw(canvas);
+    overView.draw(canvas);
+    assertEquals(88, drawMetrics.getSnapshot().getKeysDrawn());
+  }
+
+  @Test public void activeKeysFollowPianoAtCappedRate() {
+    overView.setActiveKeyMaxFps(10);
+    final long[] pressed = new long[2];
+    final int[] notifications = new int[1];
+    pianoView.addOnKeyStateListener(new PianoView.OnKeyStateListener() {
+      @Override public void onKeyStateChanged(long pressedLow, long pressedHigh, long changedLow,
+          long changedHigh) {
+        pressed[0] = pressedLow;
+        pressed[1] = pressedHigh;
+        notifications[0]++;
+      }
+    });
+    notifications[0] = 0;
+    overView.draw(canvas);
+    drawMetrics.reset();
+    KeyboardLayout layout = pianoView.getKeyboardLayout();
+    float y = layout.getWhiteKeyHeight() - 10;
+    float step = layout.getWhiteKeyWidth();
+    long start = SystemClock.uptimeMillis();
+    int updates = 0;
+
+    for (int i = 0; i < 10; i++) {
+      int key = layout.getWhiteKeyIndex(i * 2);
+      float x = (layout.getLeft(key) + layout.getRight(key)) / 2f - pianoView.getScrollX();
+      updates += pianoEvent(touch.down(i, x, y));
+    }
+    assertEquals(10, Long.bitCount(pressed[0]) + Long.bitCount(pressed[1]));
+    for (int m = 0; m < 30; m++) {
+      updates += pianoEvent(touch.moveAll(m % 2 == 0 ? step : -step, 0));
+    }
+    for (int i = 9; i >= 0; i--) {
+      updates += pianoEvent(touch.up(i));
+    }
+    long elapsed = SystemClock.uptimeMillis() - start;
+    String report = "activeKeys: events=" + driver.getEvents() + ", notifications="
+        + notifications[0] + ", updates=" + updates + ", elapsedMs=" + elapsed
+        + ", keysDrawn=" + drawMetrics.getSnapshot().getKeysDrawn();
+    assertEquals(report, 0L, pressed[0] | pressed[1]);
+    // 琴键状态每帧最多通知一次，缩略图每 100ms 最多更新一次
+    assertTrue(report, notifications[0] <= driver.getEvents());
+    assertTrue(report, updates >= 2);
+    assertTrue(report, updates <= elapsed / 100 + 1);
+    // 每次更新只重绘变化的白键和两侧的黑键
+    assertTrue(report, drawMetrics.getSnapshot().getKeysDrawn() <= updates * 10 * 3);
+
+    // 最后的变化在下一个更新周期内补上，之后不再重绘
+    for (int f = 0; f < 8; f++) {
+      driver.frame();
+    }
+    long keysDrawn = drawMetrics.getSnapshot().getKeysDrawn();
+    overView.draw(canvas);
+    assertTrue(report, drawMetrics.getSnapshot().getKeysDrawn() > keysDrawn);
+    keysDrawn = drawMetrics.getSnapshot().getKeysDrawn();
+    overView.draw(canvas);
+    assertEquals(keysDrawn, drawMetrics.getSnapshot().getKeysDrawn());
+  }
+
+  /**
+   * 把事件分发给钢琴，然后像每帧都绘制一样绘制缩略图
+   *
+   * @return 缩略图是否重绘了琴键(1 或 0)
+   */
+  private int pianoEvent(MotionEvent event) {
+    driver.dispatch(pianoView, event);
+    long keysDrawn = drawMetrics.getSnapshot().getKeysDrawn();
+    overView.draw(canvas);
+    return drawMetrics.getSnapshot().getKeysDrawn() > keysDrawn ? 1 : 0;
+  }
+
+  /**
+   * 从左边缘拖到右边缘
+   */
+  private void dragToRight() {
+    dispatch(touch.down(0, 0, OVERVIEW_HEIGHT / 2f));
+    for (int m = 1; m <= DRAG_MOVES; m++) {
+      dispatch(touch.move(0, (float) WIDTH * m / DRAG_MOVES, OVERVIEW_HEIGHT / 2f));
+    }
+    dispatch(touch.up(0));
+  }
+
+  private void dispatch(MotionEvent event) {
+    driver.dispatch(overView, event);
+    drawIfNotified();
+  }
+
+  /**
+   * 钢琴滚动后缩略图会请求重绘，此时绘制一帧
+   */
+  private void drawIfNotified() {
+    if (scrollNotifications == drawnNotifications && drawMetrics.getSnapshot().getDrawCount() > 0) {
+      return;
+    }
+    drawnNotifications = scrollNotifications;
+    canvas.reset();
+    overView.draw(canvas);
+    maxOpsPerDraw = Math.max(maxOpsPerDraw, canvas.getOps());
+  }
+
+  private void resetCounters() {
+    driver.reset();
+    drawMetrics.reset();
+    scrollNotifications = 0;
+    drawnNotifications = 0;
+    maxOpsPerDraw = 0;
+  }
+}
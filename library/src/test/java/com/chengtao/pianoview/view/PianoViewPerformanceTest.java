@@ -0,0 +1,211 @@
+package com.chengtao.pianoview.view;
+
+import android.graphics.Rect;
+import android.widget.FrameLayout;
+import android.view.MotionEvent;
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.chengtao.pianoview.entity.Piano;
+import com.chengtao.pianoview.listener.OnPianoListener;
+import com.chengtao.pianoview.utils.DrawMetrics;
+import com.chengtao.pianoview.utils.PianoKeyIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PianoView 触摸和绘制的回归测试：用合成的多点触控事件流(和弦、快速滑奏、十指同时滑动)驱动视图，
+ * 统计每个事件的帧数、分配的字节数和回调次数，以及每次 onDraw 的绘制调用数，超出预算时失败。
+ * 每个场景先完整运行一次预热，第二次的结果才计入预算。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 35)
+public class PianoViewPerformanceTest {
+  private static final int WIDTH = 1400;
+  private static final int HEIGHT = 400;
+  // 每个事件最多请求一帧重绘
+  private static final double MAX_FRAMES_PER_EVENT = 1.0;
+  // 每次 onDraw 最多: 88 个琴键 + 52 个音名底框 + 52 个音名，键的 Drawable 各允许一次额外调用
+  private static final int MAX_OPS_PER_DRAW = 88 * 2 + 52 * 2;
+
+  private PianoView pianoView;
+  private FrameDriver driver;
+  private TouchEvents touch;
+  private CountingCanvas canvas;
+  private DrawMetrics drawMetrics;
+  private int clicks;
+  private long drawnFrames;
+  private int maxOpsPerDraw;
+
+  @Before public void setUp() {
+    FrameLayout root = new FrameLayout(RuntimeEnvironment.getApplication());
+    pianoView = new PianoView(RuntimeEnvironment.getApplication());
+    root.addView(pianoView, new FrameLayout.LayoutParams(WIDTH, HEIGHT));
+    pianoView.setPianoListener(new OnPianoListener() {
+      @Override public void onPianoInitFinish() {
+      }
+
+      @Override public void onPianoClick(Piano.PianoKeyType type, Piano.PianoVoice voice,
+          int group, int positionOfGroup) {
+        clicks++;
+      }
+    });
+    drawMetrics = new DrawMetrics();
+    pianoView.setDrawMetrics(drawMetrics);
+    driver = new FrameDriver(root, WIDTH, HEIGHT);
+    canvas = new CountingCanvas(WIDTH, HEIGHT);
+    touch = new TouchEvents();
+    drawIfInvalidated();
+  }
+
+  @Test public void chord() {
+    int[] keys = { 3, 7, 10, 15, 19 };
+    playChord(keys);
+    resetCounters();
+    playChord(keys);
+    assertEquals(keys.length, clicks);
+    assertBudgets("chord");
+  }
+
+  @Test public void glissando() {
+    glissando(16);
+    resetCounters();
+    glissando(16);
+    // 一次 ACTION_MOVE 滑过 15 个白键，每个键都发声
+    assertEquals(16, clicks);
+    assertBudgets("glissando");
+  }
+
+  @Test public void tenFingerStress() {
+    tenFingers(40);
+    resetCounters();
+    tenFingers(40);
+    // 每次滑动十个手指都换到相邻的白键
+    assertEquals(10 + 40 * 10, clicks);
+    assertBudgets("tenFingers");
+  }
+
+  private void playChord(int[] keys) {
+    for (int i = 0; i < keys.length; i++) {
+      dispatch(touch.down(i, centerX(keys[i]), whiteKeyY()));
+    }
+    for (int key : keys) {
+      assertTrue(pianoView.isKeyPressed(key));
+    }
+    for (int i = keys.length - 1; i >= 0; i--) {
+      dispatch(touch.up(i));
+    }
+    assertNothingPressed();
+  }
+
+  private void glissando(int whiteKeys) {
+    dispatch(touch.down(0, centerX(whiteKey(0)), whiteKeyY()));
+    // 只有 4 个采样，依靠插值补上中间的琴键
+    dispatch(touch.sweep(0, centerX(whiteKey(whiteKeys - 1)), whiteKeyY(), 4));
+    assertTrue(pianoView.isKeyPressed(whiteKey(whiteKeys - 1)));
+    dispatch(touch.up(0));
+    assertNothingPressed();
+  }
+
+  private void tenFingers(int moves) {
+    for (int i = 0; i < 10; i++) {
+      dispatch(touch.down(i, centerX(whiteKey(i * 2)), whiteKeyY()));
+    }
+    float step = whiteKeyWidth();
+    for (int m = 0; m < moves; m++) {
+      dispatch(touch.moveAll(m % 2 == 0 ? step : -step, 0));
+    }
+    for (int i = 9; i >= 0; i--) {
+      dispatch(touch.up(i));
+    }
+    assertNothingPressed();
+  }
+
+  private void dispatch(MotionEvent event) {
+    driver.dispatch(pianoView, event);
+    drawIfInvalidated();
+  }
+
+  /**
+   * 视图请求了重绘时绘制一帧，和真实的渲染一样每帧最多绘制一次
+   */
+  private void drawIfInvalidated() {
+    long frames = pianoView.getFrameInvalidationCount();
+    if (frames == drawnFrames && drawMetrics.getSnapshot().getDrawCount() > 0) {
+      return;
+    }
+    drawnFrames = frames;
+    canvas.reset();
+    pianoView.draw(canvas);
+    maxOpsPerDraw = Math.max(maxOpsPerDraw, canvas.getOps());
+  }
+
+  private void resetCounters() {
+    driver.reset();
+    drawMetrics.reset();
+    pianoView.resetInvalidationCounters();
+    drawnFrames = 0;
+    clicks = 0;
+    maxOpsPerDraw = 0;
+  }
+
+  private void assertBudgets(String scenario) {
+    int events = driver.getEvents();
+    long frames = pianoView.getFrameInvalidationCount();
+    DrawMetrics.Snapshot draws = drawMetrics.getSnapshot();
+    String report = scenario + ": events=" + events + ", frames=" + frames + ", draws="
+        + draws.getDrawCount() + ", opsPerDraw=" + maxOpsPerDraw + ", bytesPerEvent="
+        + driver.getAllocatedBytesPerEvent() + ", clicks=" + clicks;
+    assertTrue(report, frames <= events * MAX_FRAMES_PER_EVENT);
+    assertTrue(report, draws.getDrawCount() > 0);
+    assertEquals(report, 88 * draws.getDrawCount(), draws.getKeysDrawn());
+    assertEquals(report, 52 * draws.getDrawCount(), draws.getTextsDrawn());
+    assertTrue(report, maxOpsPerDraw <= MAX_OPS_PER_DRAW);
+    assertTrue(report, clicks <= events * 10);
+    if (driver.canMeasureAllocations()) {
+      assertTrue(report, driver.getAllocatedBytesPerEvent() <= FrameDriver.MAX_BYTES_PER_EVENT);
+    }
+  }
+
+  private void assertNothingPressed() {
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      assertFalse("key " + keyIndex, pianoView.isKeyPressed(keyIndex));
+    }
+  }
+
+  /**
+   * @param ordinal 白键从左到右的序号
+   * @return 钢琴键编号
+   */
+  private static int whiteKey(int ordinal) {
+    int whites = -1;
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      if (PianoKeyIndex.getType(keyIndex) == AutoPlayTimeline.WHITE_KEY && ++whites == ordinal) {
+        return keyIndex;
+      }
+    }
+    throw new IllegalArgumentException("ordinal " + ordinal);
+  }
+
+  private float centerX(int keyIndex) {
+    Rect bounds = pianoView.getKey(keyIndex).getKeyDrawable().getBounds();
+    return bounds.exactCenterX() - pianoView.getScrollX();
+  }
+
+  private float whiteKeyWidth() {
+    return pianoView.getKey(whiteKey(0)).getKeyDrawable().getBounds().width();
+  }
+
+  /**
+   * @return 黑键下方、只属于白键区域的纵坐标
+   */
+  private float whiteKeyY() {
+    return pianoView.getKey(whiteKey(0)).getKeyDrawable().getBounds().bottom - 10;
+  }
+}
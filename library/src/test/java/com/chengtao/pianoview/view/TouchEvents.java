@@ -0,0 +1,139 @@
+package com.chengtao.pianoview.view;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * 合成多点触控事件流。记录当前按下的触摸点，每个事件的时间前进一帧的一半
+ */
+final class TouchEvents {
+  private static final long EVENT_INTERVAL_MS = 8;
+  private static final int MAX_POINTERS = 10;
+
+  private final int[] ids = new int[MAX_POINTERS];
+  private final float[] xs = new float[MAX_POINTERS];
+  private final float[] ys = new float[MAX_POINTERS];
+  private int count;
+  private long downTime;
+  private long time = 1000;
+
+  /**
+   * 按下一个触摸点，第一个为 ACTION_DOWN，其余为 ACTION_POINTER_DOWN
+   */
+  MotionEvent down(int id, float x, float y) {
+    time += EVENT_INTERVAL_MS;
+    if (count == 0) {
+      downTime = time;
+    }
+    ids[count] = id;
+    xs[count] = x;
+    ys[count] = y;
+    count++;
+    int index = count - 1;
+    int action = count == 1 ? MotionEvent.ACTION_DOWN
+        : MotionEvent.ACTION_POINTER_DOWN | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+    return obtain(action);
+  }
+
+  /**
+   * 移动一个触摸点
+   */
+  MotionEvent move(int id, float x, float y) {
+    return sweep(id, x, y, 1);
+  }
+
+  /**
+   * 在一个 ACTION_MOVE 中把触摸点匀速移动到目标位置，中间位置作为历史采样
+   *
+   * @param samples 采样数(包括最后的当前位置)
+   */
+  MotionEvent sweep(int id, float x, float y, int samples) {
+    int index = indexOf(id);
+    float fromX = xs[index];
+    float fromY = ys[index];
+    long start = time;
+    time += EVENT_INTERVAL_MS;
+    MotionEvent event = null;
+    for (int s = 1; s <= samples; s++) {
+      xs[index] = fromX + (x - fromX) * s / samples;
+      ys[index] = fromY + (y - fromY) * s / samples;
+      long sampleTime = start + EVENT_INTERVAL_MS * s / samples;
+      if (event == null) {
+        event = obtain(MotionEvent.ACTION_MOVE, sampleTime);
+      } else {
+        event.addBatch(sampleTime, coords(), 0);
+      }
+    }
+    return event;
+  }
+
+  /**
+   * 在一个 ACTION_MOVE 中同时移动所有触摸点
+   */
+  MotionEvent moveAll(float dx, float dy) {
+    time += EVENT_INTERVAL_MS;
+    for (int i = 0; i < count; i++) {
+      xs[i] += dx;
+      ys[i] += dy;
+    }
+    return obtain(MotionEvent.ACTION_MOVE);
+  }
+
+  /**
+   * 抬起一个触摸点，最后一个为 ACTION_UP，其余为 ACTION_POINTER_UP
+   */
+  MotionEvent up(int id) {
+    time += EVENT_INTERVAL_MS;
+    int index = indexOf(id);
+    int action = count == 1 ? MotionEvent.ACTION_UP
+        : MotionEvent.ACTION_POINTER_UP | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+    MotionEvent event = obtain(action);
+    count--;
+    for (int i = index; i < count; i++) {
+      ids[i] = ids[i + 1];
+      xs[i] = xs[i + 1];
+      ys[i] = ys[i + 1];
+    }
+    return event;
+  }
+
+  int getPointerCount() {
+    return count;
+  }
+
+  private int indexOf(int id) {
+    for (int i = 0; i < count; i++) {
+      if (ids[i] == id) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("pointer " + id + " is not down");
+  }
+
+  private MotionEvent obtain(int action) {
+    return obtain(action, time);
+  }
+
+  private MotionEvent obtain(int action, long eventTime) {
+    MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[count];
+    for (int i = 0; i < count; i++) {
+      properties[i] = new MotionEvent.PointerProperties();
+      properties[i].id = ids[i];
+      properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+    }
+    return MotionEvent.obtain(downTime, eventTime, action, count, properties, coords(), 0, 0, 1f,
+        1f, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+  }
+
+  private MotionEvent.PointerCoords[] coords() {
+    MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[count];
+    for (int i = 0; i < count; i++) {
+      coords[i] = new MotionEvent.PointerCoords();
+      coords[i].x = xs[i];
+      coords[i].y = ys[i];
+      coords[i].pressure = 1f;
+      coords[i].size = 1f;
+    }
+    return coords;
+  }
+}
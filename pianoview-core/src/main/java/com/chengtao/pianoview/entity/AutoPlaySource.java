@@ -0,0 +1,29 @@
+package com.chengtao.pianoview.entity;
+
+/**
+ * 可按序号随机读取的自动播放音符序列。{@link AutoPlayTimeline} 把音符保存在数组中，
+ * 二进制乐谱则直接从内存映射的文件中读取。按键类型为 {@link AutoPlayTimeline} 中的
+ * BLACK_KEY、WHITE_KEY 或 NULL_KEY。
+ */
+public interface AutoPlaySource {
+  /**
+   * @return 音符数
+   */
+  int size();
+
+  /**
+   * @param index 音符序号
+   * @return 按键类型
+   */
+  int getType(int index);
+
+  int getGroup(int index);
+
+  int getPosition(int index);
+
+  /**
+   * @param index 音符序号
+   * @return 该音符与下一个音符的间隔时间
+   */
+  long getBreakTime(int index);
+}
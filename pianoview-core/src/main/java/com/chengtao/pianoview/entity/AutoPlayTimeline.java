@@ -0,0 +1,146 @@
+package com.chengtao.pianoview.entity;
+
+import java.util.Arrays;
+
+/**
+ * 紧凑的自动播放时间线，创建后不可修改。
+ *
+ * <p>与 {@code List<AutoPlayEntity>} 表示相同的内容，但每个音符只占用几个基本类型数组中的一个位置
+ * (约20字节)，不创建任何对象，适合很长的乐谱。按键类型与 {@code Piano.PianoKeyType#getValue()} 一致，
+ * 休止符为 {@link #NULL_KEY}。
+ */
+public final class AutoPlayTimeline implements AutoPlaySource {
+  public static final int BLACK_KEY = 0;
+  public static final int WHITE_KEY = 1;
+  public static final int NULL_KEY = -1;
+
+  private final int size;
+  private final int[] types;
+  private final int[] groups;
+  private final int[] positions;
+  private final long[] breakTimes;
+
+  private AutoPlayTimeline(int size, int[] types, int[] groups, int[] positions,
+      long[] breakTimes) {
+    this.size = size;
+    this.types = types;
+    this.groups = groups;
+    this.positions = positions;
+    this.breakTimes = breakTimes;
+  }
+
+  /**
+   * @return 音符数
+   */
+  @Override public int size() {
+    return size;
+  }
+
+  /**
+   * @param index 音符序号
+   * @return 按键类型(BLACK_KEY、WHITE_KEY 或 NULL_KEY)
+   */
+  @Override public int getType(int index) {
+    checkIndex(index);
+    return types[index];
+  }
+
+  @Override public int getGroup(int index) {
+    checkIndex(index);
+    return groups[index];
+  }
+
+  @Override public int getPosition(int index) {
+    checkIndex(index);
+    return positions[index];
+  }
+
+  /**
+   * @param index 音符序号
+   * @return 该音符与下一个音符的间隔时间
+   */
+  @Override public long getBreakTime(int index) {
+    checkIndex(index);
+    return breakTimes[index];
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+    }
+  }
+
+  @Override public String toString() {
+    return "AutoPlayTimeline{size=" + size + '}';
+  }
+
+  /**
+   * 逐个添加音符来创建时间线，容量按需加倍
+   */
+  public static final class Builder {
+    private int size = 0;
+    private int[] types;
+    private int[] groups;
+    private int[] positions;
+    private long[] breakTimes;
+
+    public Builder() {
+      this(64);
+    }
+
+    /**
+     * @param capacity 预计的音符数
+     */
+    public Builder(int capacity) {
+      if (capacity < 1) {
+        capacity = 1;
+      }
+      types = new int[capacity];
+      groups = new int[capacity];
+      positions = new int[capacity];
+      breakTimes = new long[capacity];
+    }
+
+    /**
+     * 添加一个音符
+     *
+     * @param type 按键类型(BLACK_KEY、WHITE_KEY 或 NULL_KEY)
+     * @param group 组数
+     * @param position 组内位置
+     * @param breakTime 与下一个音符的间隔时间
+     * @return this
+     */
+    public Builder add(int type, int group, int position, long breakTime) {
+      if (size == types.length) {
+        int capacity = size * 2;
+        types = Arrays.copyOf(types, capacity);
+        groups = Arrays.copyOf(groups, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        breakTimes = Arrays.copyOf(breakTimes, capacity);
+      }
+      types[size] = type;
+      groups[size] = group;
+      positions[size] = position;
+      breakTimes[size] = breakTime;
+      size++;
+      return this;
+    }
+
+    /**
+     * @return 已添加的音符数
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * 创建时间线，数组被裁剪到实际大小。之后可以继续添加，不会影响已创建的时间线。
+     *
+     * @return 时间线
+     */
+    public AutoPlayTimeline build() {
+      return new AutoPlayTimeline(size, Arrays.copyOf(types, size), Arrays.copyOf(groups, size),
+          Arrays.copyOf(positions, size), Arrays.copyOf(breakTimes, size));
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package com.chengtao.pianoview.listener;
+
+/**
+ * 自动播放调度接口，由 {@code AutoPlayScheduler} 在自动播放线程上按音符的时间回调。
+ */
+public interface OnAutoPlayNoteListener {
+  /**
+   * 按下一个音符
+   *
+   * @param keyIndex 钢琴键编号
+   * @param lowestKeyIndex 当前及前瞻范围内后续音符的最低钢琴键编号，用于预测性的自动滚动
+   * @param highestKeyIndex 当前及前瞻范围内后续音符的最高钢琴键编号
+   */
+  void onAutoPlayNoteDown(int keyIndex, int lowestKeyIndex, int highestKeyIndex);
+
+  /**
+   * 松开音符(休止符同样回调)
+   */
+  void onAutoPlayNoteUp();
+}
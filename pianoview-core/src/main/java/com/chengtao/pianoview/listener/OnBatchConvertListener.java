@@ -0,0 +1,26 @@
+package com.chengtao.pianoview.listener;
+
+import com.chengtao.pianoview.utils.ScoreBatchConverter;
+import java.util.List;
+
+/**
+ * 批量转换进度接口。回调在转换线程中执行，需要更新界面时请自行切换到主线程。
+ */
+public interface OnBatchConvertListener {
+  /**
+   * 一个文件转换完成(成功或失败)
+   *
+   * @param result 转换结果
+   * @param completed 已完成的文件数
+   * @param total 文件总数
+   */
+  void onScoreConverted(ScoreBatchConverter.Result result, int completed, int total);
+
+  /**
+   * 批量转换结束
+   *
+   * @param results 所有文件的结果，顺序与输入一致
+   * @param cancelled 是否被取消(被取消时未转换的文件结果为 {@link ScoreBatchConverter.Result#isCancelled()})
+   */
+  void onBatchFinished(List<ScoreBatchConverter.Result> results, boolean cancelled);
+}
@@ -0,0 +1,35 @@
+package com.chengtao.pianoview.listener;
+
+/**
+ * 简谱流式解析接口。解析器每读到一个音符就立即回调，不会缓存整个乐谱，
+ * 因此可以在文件读取完毕之前就开始播放。
+ */
+public interface OnScoreParseListener {
+  /**
+   * 头部解析完成
+   *
+   * @param name 乐曲名称
+   */
+  void onScoreStart(String name);
+
+  /**
+   * 解析到一个音符
+   *
+   * @param type 钢琴键类型({@code PianoConvertUtils.PianoKey} 中的 BLACK_KEY、WHITE_KEY 或 NULL_KEY)
+   * @param group 组数
+   * @param position 组内位置
+   * @param frequency 该音符与下一个音符的间隔时间
+   * @return 是否继续解析，返回false时停止解析
+   */
+  boolean onScoreNote(int type, int group, int position, long frequency);
+
+  /**
+   * 小节线
+   */
+  void onScoreBarLine();
+
+  /**
+   * 解析完成(被中途停止时不会回调)
+   */
+  void onScoreEnd();
+}
@@ -0,0 +1,158 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * 自动播放 JSON 的流式解码器。
+ *
+ * <p>用 {@link JsonReader} 逐个读取数组中的实体，直接写入 {@link AutoPlayTimeline}，
+ * 不经过反射绑定，也不创建 {@code AutoPlayEntity} 对象，内存占用只与音符数成正比(约20字节/音符)。
+ * 格式与 {@code AutoPlayEntity} 的 Gson 序列化结果一致:
+ * <pre>
+ *   [{"type":1,"group":4,"position":0,"break":500}, ...]
+ * </pre>
+ * type 可以是 0/1、"0"/"1" 或 "BLACK"/"WHITE"，缺省或为 null 时为休止符；未知字段被忽略，
+ * 数组中的 null 被跳过。格式错误的实体会被拒绝，错误中带有行号、列号和 JSON 路径(如 $[12].group)。
+ */
+public final class AutoPlayJsonDecoder {
+  // 解码器版本，解码结果发生变化时加一(用于使已编译乐谱的缓存失效)
+  public static final int PARSER_VERSION = 1;
+  public static final String AUTO_PLAY_JSON_WRONG = "auto play json wrong";
+
+  private AutoPlayJsonDecoder() {
+  }
+
+  /**
+   * 解码自动播放 JSON，Reader 由调用者关闭
+   *
+   * @param reader JSON 来源
+   * @return 自动播放时间线
+   * @throws ScoreParseException JSON 格式错误或读取失败
+   */
+  public static AutoPlayTimeline decode(Reader reader) throws ScoreParseException {
+    if (reader == null) {
+      throw new ScoreParseException(PianoConvertUtils.Error.READ_FILE_EXCEPTION);
+    }
+    JsonReader in = new JsonReader(reader);
+    AutoPlayTimeline.Builder builder = new AutoPlayTimeline.Builder();
+    try {
+      in.beginArray();
+      while (in.hasNext()) {
+        if (in.peek() == JsonToken.NULL) {
+          in.nextNull();
+        } else {
+          readEntity(in, builder);
+        }
+      }
+      in.endArray();
+      if (in.peek() != JsonToken.END_DOCUMENT) {
+        throw error(in, "document was not fully consumed");
+      }
+    } catch (IOException | IllegalStateException | NumberFormatException e) {
+      // MalformedJsonException、类型不符以及数字格式错误
+      String detail = String.valueOf(e.getMessage());
+      int locationIndex = detail.indexOf(" at line ");
+      if (locationIndex >= 0) {
+        detail = detail.substring(0, locationIndex);
+      }
+      throw error(in, detail);
+    }
+    return builder.build();
+  }
+
+  private static void readEntity(JsonReader in, AutoPlayTimeline.Builder builder)
+      throws IOException, ScoreParseException {
+    int type = AutoPlayTimeline.NULL_KEY;
+    int group = 0;
+    int position = 0;
+    long breakTime = 0;
+    in.beginObject();
+    while (in.hasNext()) {
+      String field = in.nextName();
+      switch (field) {
+        case "type":
+          type = readType(in);
+          break;
+        case "group":
+          group = in.nextInt();
+          if (group < 0) {
+            throw error(in, "negative group " + group);
+          }
+          break;
+        case "position":
+          position = in.nextInt();
+          if (position < 0) {
+            throw error(in, "negative position " + position);
+          }
+          break;
+        case "break":
+          breakTime = in.nextLong();
+          if (breakTime < 0) {
+            throw error(in, "negative break " + breakTime);
+          }
+          break;
+        default:
+          in.skipValue();
+          break;
+      }
+    }
+    in.endObject();
+    builder.add(type, group, position, breakTime);
+  }
+
+  private static int readType(JsonReader in) throws IOException, ScoreParseException {
+    JsonToken token = in.peek();
+    if (token == JsonToken.NULL) {
+      in.nextNull();
+      return AutoPlayTimeline.NULL_KEY;
+    }
+    if (token == JsonToken.NUMBER) {
+      // 常见情况，不创建字符串
+      int type = in.nextInt();
+      if (type == AutoPlayTimeline.BLACK_KEY || type == AutoPlayTimeline.WHITE_KEY) {
+        return type;
+      }
+      throw error(in, "unknown key type " + type);
+    }
+    if (token != JsonToken.STRING) {
+      throw error(in, "key type must be 0 or 1 but was " + token);
+    }
+    String type = in.nextString();
+    if (type.equals("0") || type.equals("BLACK")) {
+      return AutoPlayTimeline.BLACK_KEY;
+    } else if (type.equals("1") || type.equals("WHITE")) {
+      return AutoPlayTimeline.WHITE_KEY;
+    }
+    throw error(in, "unknown key type " + type);
+  }
+
+  private static ScoreParseException error(JsonReader in, String detail) {
+    // JsonReader 不公开行号和列号，只能从 toString() 中取得，形如
+    // "JsonReader at line 5 column 14 path $[0].type"
+    String location = in.toString();
+    int line = -1;
+    int column = -1;
+    int lineIndex = location.indexOf(" at line ");
+    int columnIndex = location.indexOf(" column ", lineIndex + 1);
+    if (lineIndex >= 0 && columnIndex >= 0) {
+      line = readInt(location, lineIndex + " at line ".length());
+      column = readInt(location, columnIndex + " column ".length());
+    }
+    return new ScoreParseException(AUTO_PLAY_JSON_WRONG + ":" + in.getPath() + ":" + detail, line,
+        column);
+  }
+
+  private static int readInt(String value, int start) {
+    int result = 0;
+    int i = start;
+    while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+      result = result * 10 + (value.charAt(i) - '0');
+      i++;
+    }
+    return i == start ? -1 : result;
+  }
+}
@@ -0,0 +1,113 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.chengtao.pianoview.listener.OnAutoPlayNoteListener;
+
+/**
+ * 自动播放的时间线调度，纯 Java 实现。每个音符在间隔时间的前一半按下、后一半松开，
+ * 并缓存接下来的若干个音符作为前瞻窗口，按下时把窗口内音符的键位范围一起交给回调，
+ * 以便预先考虑后续乐句。列表播放和流式播放共用，只在一个线程中使用。
+ */
+public class AutoPlayScheduler {
+  private final OnAutoPlayNoteListener listener;
+  private final long lookaheadMs;
+  private final int[] keys;
+  private final long[] breakTimes;
+  private int head = 0;
+  private int count = 0;
+
+  /**
+   * @param lookaheadNotes 前瞻窗口的音符数
+   * @param lookaheadMs 前瞻的最长时间
+   * @param listener 回调
+   */
+  public AutoPlayScheduler(int lookaheadNotes, long lookaheadMs,
+      OnAutoPlayNoteListener listener) {
+    this.listener = listener;
+    this.lookaheadMs = lookaheadMs;
+    keys = new int[lookaheadNotes + 1];
+    breakTimes = new long[lookaheadNotes + 1];
+  }
+
+  /**
+   * 加入一个音符，窗口已满时先播放最早的音符
+   *
+   * @param type 钢琴键类型({@link AutoPlayTimeline} 中的 BLACK_KEY、WHITE_KEY 或 NULL_KEY)
+   * @param group 组数
+   * @param position 组内位置
+   * @param breakTime 与下一个音符的间隔时间
+   */
+  public void offer(int type, int group, int position, long breakTime)
+      throws InterruptedException {
+    offer(type == AutoPlayTimeline.NULL_KEY ? -1 : PianoKeyIndex.indexOf(type, group, position),
+        breakTime);
+  }
+
+  /**
+   * 加入一个音符，窗口已满时先播放最早的音符
+   *
+   * @param keyIndex 钢琴键编号，休止符或不存在的键为-1
+   * @param breakTime 与下一个音符的间隔时间
+   */
+  public void offer(int keyIndex, long breakTime) throws InterruptedException {
+    if (count == keys.length) {
+      playNext();
+    }
+    int tail = (head + count) % keys.length;
+    keys[tail] = keyIndex;
+    breakTimes[tail] = breakTime;
+    count++;
+  }
+
+  /**
+   * 播放窗口中剩余的所有音符
+   */
+  public void drain() throws InterruptedException {
+    while (count > 0) {
+      playNext();
+    }
+  }
+
+  /**
+   * 丢弃窗口中尚未播放的音符，如乐谱解析出错时停止播放
+   */
+  public void clear() {
+    head = 0;
+    count = 0;
+  }
+
+  /**
+   * 等待，测试中可以替换为虚拟时钟
+   *
+   * @param millis 毫秒
+   */
+  protected void sleep(long millis) throws InterruptedException {
+    Thread.sleep(millis);
+  }
+
+  private void playNext() throws InterruptedException {
+    int keyIndex = keys[head];
+    long breakTime = breakTimes[head];
+    head = (head + 1) % keys.length;
+    count--;
+    if (keyIndex >= 0) {
+      // 键位从左到右按编号排列，编号范围即水平范围
+      int lowest = keyIndex;
+      int highest = keyIndex;
+      long lookahead = breakTime;
+      for (int i = 0; i < count && lookahead <= lookaheadMs; i++) {
+        int index = (head + i) % keys.length;
+        int next = keys[index];
+        if (next >= 0) {
+          lowest = Math.min(lowest, next);
+          highest = Math.max(highest, next);
+        }
+        lookahead += breakTimes[index];
+      }
+      listener.onAutoPlayNoteDown(keyIndex, lowest, highest);
+    }
+    sleep(breakTime / 2);
+    listener.onAutoPlayNoteUp();
+    sleep(breakTime / 2);
+  }
+}
@@ -0,0 +1,178 @@
+package com.chengtao.pianoview.utils;
+
+/**
+ * 视图绘制开销统计：onDraw 次数、绘制的琴键和文字数、每次 onDraw 的耗时，以及键盘重建的次数和耗时。
+ *
+ * <p>由视图在主线程写入，记录时不分配对象；统计系统可以在任意线程通过 {@link #getSnapshot(Snapshot)}
+ * 轮询(传入复用的快照对象则同样不分配)。把视图的统计对象设为 null 即可在运行时关闭统计。
+ */
+public final class DrawMetrics {
+  private volatile long drawCount;
+  private volatile long keysDrawn;
+  private volatile long textsDrawn;
+  private volatile long drawNanos;
+  private volatile long lastDrawNanos;
+  private volatile long rebuildCount;
+  private volatile long rebuildNanos;
+  private volatile long lastRebuildNanos;
+  // 每次 onDraw 的耗时分布
+  private final LatencyHistogram drawHistogram = new LatencyHistogram();
+
+  /**
+   * 记录一次 onDraw(只由绘制线程调用)
+   *
+   * @param nanos 耗时(纳秒)
+   * @param keys 绘制的琴键数
+   * @param texts 绘制的文字数
+   */
+  public void recordDraw(long nanos, int keys, int texts) {
+    drawCount = drawCount + 1;
+    keysDrawn = keysDrawn + keys;
+    textsDrawn = textsDrawn + texts;
+    drawNanos = drawNanos + nanos;
+    lastDrawNanos = nanos;
+    drawHistogram.record(nanos);
+  }
+
+  /**
+   * 记录一次键盘重建(只由绘制线程调用)
+   *
+   * @param nanos 耗时(纳秒)
+   */
+  public void recordRebuild(long nanos) {
+    rebuildCount = rebuildCount + 1;
+    rebuildNanos = rebuildNanos + nanos;
+    lastRebuildNanos = nanos;
+  }
+
+  /**
+   * @return onDraw 耗时分布
+   */
+  public LatencyHistogram getDrawHistogram() {
+    return drawHistogram;
+  }
+
+  public Snapshot getSnapshot() {
+    return getSnapshot(new Snapshot());
+  }
+
+  /**
+   * 把当前统计写入快照
+   *
+   * @param out 复用的快照对象
+   * @return out
+   */
+  public Snapshot getSnapshot(Snapshot out) {
+    out.drawCount = drawCount;
+    out.keysDrawn = keysDrawn;
+    out.textsDrawn = textsDrawn;
+    out.drawNanos = drawNanos;
+    out.lastDrawNanos = lastDrawNanos;
+    out.drawP50Nanos = drawHistogram.getP50();
+    out.drawP95Nanos = drawHistogram.getP95();
+    out.drawP99Nanos = drawHistogram.getP99();
+    out.maxDrawNanos = drawHistogram.getMax();
+    out.rebuildCount = rebuildCount;
+    out.rebuildNanos = rebuildNanos;
+    out.lastRebuildNanos = lastRebuildNanos;
+    return out;
+  }
+
+  /**
+   * 清空统计，应在绘制线程调用
+   */
+  public void reset() {
+    drawCount = 0;
+    keysDrawn = 0;
+    textsDrawn = 0;
+    drawNanos = 0;
+    lastDrawNanos = 0;
+    rebuildCount = 0;
+    rebuildNanos = 0;
+    lastRebuildNanos = 0;
+    drawHistogram.reset();
+  }
+
+  /**
+   * 统计快照，时间单位均为纳秒
+   */
+  public static final class Snapshot {
+    private long drawCount;
+    private long keysDrawn;
+    private long textsDrawn;
+    private long drawNanos;
+    private long lastDrawNanos;
+    private long drawP50Nanos;
+    private long drawP95Nanos;
+    private long drawP99Nanos;
+    private long maxDrawNanos;
+    private long rebuildCount;
+    private long rebuildNanos;
+    private long lastRebuildNanos;
+
+    public long getDrawCount() {
+      return drawCount;
+    }
+
+    public long getKeysDrawn() {
+      return keysDrawn;
+    }
+
+    public long getTextsDrawn() {
+      return textsDrawn;
+    }
+
+    /**
+     * @return onDraw 总耗时
+     */
+    public long getDrawNanos() {
+      return drawNanos;
+    }
+
+    public long getLastDrawNanos() {
+      return lastDrawNanos;
+    }
+
+    public long getAverageDrawNanos() {
+      return drawCount == 0 ? 0 : drawNanos / drawCount;
+    }
+
+    public long getDrawP50Nanos() {
+      return drawP50Nanos;
+    }
+
+    public long getDrawP95Nanos() {
+      return drawP95Nanos;
+    }
+
+    public long getDrawP99Nanos() {
+      return drawP99Nanos;
+    }
+
+    public long getMaxDrawNanos() {
+      return maxDrawNanos;
+    }
+
+    public long getRebuildCount() {
+      return rebuildCount;
+    }
+
+    /**
+     * @return 键盘重建总耗时
+     */
+    public long getRebuildNanos() {
+      return rebuildNanos;
+    }
+
+    public long getLastRebuildNanos() {
+      return lastRebuildNanos;
+    }
+
+    @Override public String toString() {
+      return "DrawMetrics [draws=" + drawCount + ", keys=" + keysDrawn + ", texts=" + textsDrawn
+          + ", avg=" + getAverageDrawNanos() / 1000 + "us, p95=" + drawP95Nanos / 1000
+          + "us, max=" + maxDrawNanos / 1000 + "us, rebuilds=" + rebuildCount + ", rebuildTime="
+          + rebuildNanos / 1000 + "us]";
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 88 键键盘的几何布局，按钢琴键编号(见 {@link PianoKeyIndex})计算每个键的位置并按坐标查找键，
+ * 纯 Java 实现，不依赖 Android 的 Rect 或 Drawable。
+ *
+ * <p>52 个白键等宽排列，白键 i(从左到右)占 [i * 白键宽度, (i + 1) * 白键宽度)；
+ * 黑键以相邻两个白键的分界为中心，覆盖在白键的上部。所有键的上边界都为 0。
+ *
+ * <p>布局创建后不再改变，可以作为键盘几何的只读快照在任意线程读取：各键的边界存放在一个扁平的 int 数组中，
+ * 读取时不复制、不分配。每个布局有唯一的版本号，键盘重新布局时生成新的布局，
+ * 观察者(例如缩略图)只需比较版本号就能判断几何是否变化。
+ */
+public final class KeyboardLayout {
+  //白键数目
+  public static final int WHITE_KEY_COUNT = 52;
+  //边界在每个键的数据中的偏移，见 getEdge
+  public static final int LEFT = 0;
+  public static final int TOP = 1;
+  public static final int RIGHT = 2;
+  public static final int BOTTOM = 3;
+  private static final int EDGE_COUNT = 4;
+  //版本号从 1 开始，0 表示没有布局
+  private static final AtomicInteger lastVersion = new AtomicInteger();
+
+  private final int version;
+
+  private final int whiteKeyWidth;
+  private final int whiteKeyHeight;
+  private final int blackKeyWidth;
+  private final int blackKeyHeight;
+  //按钢琴键编号存放的边界，每个键依次为左、上、右、下
+  private final int[] edges = new int[PianoKeyIndex.KEY_COUNT * EDGE_COUNT];
+  private final boolean[] black = new boolean[PianoKeyIndex.KEY_COUNT];
+  //白键从左到右的编号
+  private final int[] whiteKeyIndices = new int[WHITE_KEY_COUNT];
+
+  /**
+   * @param whiteKeyWidth 白键宽度
+   * @param whiteKeyHeight 白键高度
+   * @param blackKeyWidth 黑键宽度
+   * @param blackKeyHeight 黑键高度
+   */
+  public KeyboardLayout(int whiteKeyWidth, int whiteKeyHeight, int blackKeyWidth,
+      int blackKeyHeight) {
+    this.whiteKeyWidth = whiteKeyWidth;
+    this.whiteKeyHeight = whiteKeyHeight;
+    this.blackKeyWidth = blackKeyWidth;
+    this.blackKeyHeight = blackKeyHeight;
+    version = lastVersion.incrementAndGet();
+    int ordinal = 0;
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      int offset = keyIndex * EDGE_COUNT;
+      if (PianoKeyIndex.getType(keyIndex) == AutoPlayTimeline.BLACK_KEY) {
+        // 黑键位于前一个白键和后一个白键的分界处
+        int boundary = ordinal * whiteKeyWidth;
+        black[keyIndex] = true;
+        edges[offset + LEFT] = boundary - blackKeyWidth / 2;
+        edges[offset + RIGHT] = boundary + blackKeyWidth / 2;
+        edges[offset + BOTTOM] = blackKeyHeight;
+      } else {
+        whiteKeyIndices[ordinal] = keyIndex;
+        edges[offset + LEFT] = ordinal * whiteKeyWidth;
+        edges[offset + RIGHT] = (ordinal + 1) * whiteKeyWidth;
+        edges[offset + BOTTOM] = whiteKeyHeight;
+        ordinal++;
+      }
+    }
+  }
+
+  /**
+   * @return 版本号，每个布局唯一且按创建顺序递增
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  public int getWhiteKeyWidth() {
+    return whiteKeyWidth;
+  }
+
+  public int getWhiteKeyHeight() {
+    return whiteKeyHeight;
+  }
+
+  public int getBlackKeyWidth() {
+    return blackKeyWidth;
+  }
+
+  public int getBlackKeyHeight() {
+    return blackKeyHeight;
+  }
+
+  /**
+   * @return 键盘总宽度
+   */
+  public int getWidth() {
+    return WHITE_KEY_COUNT * whiteKeyWidth;
+  }
+
+  public boolean isBlack(int keyIndex) {
+    return black[keyIndex];
+  }
+
+  /**
+   * @param keyIndex 钢琴键编号
+   * @param edge {@link #LEFT}、{@link #TOP}、{@link #RIGHT} 或 {@link #BOTTOM}
+   * @return 该键的边界(整个键盘的像素坐标)
+   */
+  public int getEdge(int keyIndex, int edge) {
+    return edges[keyIndex * EDGE_COUNT + edge];
+  }
+
+  public int getLeft(int keyIndex) {
+    return edges[keyIndex * EDGE_COUNT + LEFT];
+  }
+
+  public int getTop(int keyIndex) {
+    return edges[keyIndex * EDGE_COUNT + TOP];
+  }
+
+  public int getRight(int keyIndex) {
+    return edges[keyIndex * EDGE_COUNT + RIGHT];
+  }
+
+  public int getBottom(int keyIndex) {
+    return edges[keyIndex * EDGE_COUNT + BOTTOM];
+  }
+
+  /**
+   * @param ordinal 白键从左到右的序号(0~51)
+   * @return 钢琴键编号
+   */
+  public int getWhiteKeyIndex(int ordinal) {
+    return whiteKeyIndices[ordinal];
+  }
+
+  /**
+   * 按坐标查找钢琴键。由横坐标直接算出所在白键，只需检查该白键两侧的黑键，与键的数目无关
+   *
+   * @param x 横坐标(整个键盘的像素坐标)
+   * @param y 纵坐标
+   * @return 钢琴键编号，不在任何键上时返回-1
+   */
+  public int findKeyIndex(int x, int y) {
+    if (x < 0 || y < 0 || whiteKeyWidth <= 0) {
+      return -1;
+    }
+    int ordinal = x / whiteKeyWidth;
+    if (ordinal >= WHITE_KEY_COUNT) {
+      return -1;
+    }
+    int white = whiteKeyIndices[ordinal];
+    // 黑键覆盖在白键上，先检查黑键
+    if (y < blackKeyHeight) {
+      if (white > 0 && black[white - 1] && x < getRight(white - 1)) {
+        return white - 1;
+      }
+      if (white < PianoKeyIndex.KEY_COUNT - 1 && black[white + 1] && x >= getLeft(white + 1)) {
+        return white + 1;
+      }
+    }
+    return y < whiteKeyHeight ? white : -1;
+  }
+}
@@ -0,0 +1,135 @@
+package com.chengtao.pianoview.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 延迟直方图(纳秒)，分桶方式与 HdrHistogram 相同：小于 64 的值每个值一个桶，
+ * 之后每个 2 的幂区间分为 32 个桶，相对误差不超过约 3%。
+ *
+ * <p>记录和查询都不分配对象，计数使用原子数组，多个线程可以无锁地同时记录。
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+  // 可区分的最大值约为 2^40 纳秒(约 18 分钟)，更大的值计入最后一个桶
+  private static final int MAX_VALUE_BITS = 40;
+  private static final int BUCKET_COUNT =
+      SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalValue = new AtomicLong();
+  private final AtomicLong maxValue = new AtomicLong();
+
+  /**
+   * 记录一个值，负数按 0 计
+   *
+   * @param value 延迟(纳秒)
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts.incrementAndGet(bucketOf(value));
+    totalCount.incrementAndGet();
+    totalValue.addAndGet(value);
+    long max = maxValue.get();
+    while (value > max && !maxValue.compareAndSet(max, value)) {
+      max = maxValue.get();
+    }
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  /**
+   * @return 最大值(纳秒)，没有记录时为 0
+   */
+  public long getMax() {
+    return maxValue.get();
+  }
+
+  /**
+   * @return 平均值(纳秒)，没有记录时为 0
+   */
+  public double getMean() {
+    long count = totalCount.get();
+    return count == 0 ? 0 : (double) totalValue.get() / count;
+  }
+
+  /**
+   * 获取百分位数，返回所在桶的上界(与 HdrHistogram 的 highestEquivalentValue 一致)
+   *
+   * @param percentile 百分位(0~100)，如 50、95、99
+   * @return 延迟(纳秒)，没有记录时为 0
+   */
+  public long getValueAtPercentile(double percentile) {
+    long count = totalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    double clamped = Math.min(Math.max(percentile, 0), 100);
+    long target = Math.max(1, (long) Math.ceil(clamped / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(highestValueOf(i), maxValue.get());
+      }
+    }
+    return maxValue.get();
+  }
+
+  public long getP50() {
+    return getValueAtPercentile(50);
+  }
+
+  public long getP95() {
+    return getValueAtPercentile(95);
+  }
+
+  public long getP99() {
+    return getValueAtPercentile(99);
+  }
+
+  /**
+   * 清空记录。与并发的 {@link #record} 同时调用时，个别记录可能只被部分清除
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalCount.set(0);
+    totalValue.set(0);
+    maxValue.set(0);
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // value >> shift 落在 [32, 64) 区间
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+    int bucket =
+        SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT
+            + (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+    return Math.min(bucket, BUCKET_COUNT - 1);
+  }
+
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+    long sub = (bucket - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  @Override public String toString() {
+    return "LatencyHistogram [count=" + getCount() + ", p50=" + getP50() + "ns, p95="
+        + getP95() + "ns, p99=" + getP99() + "ns, max=" + getMax() + "ns]";
+  }
+}
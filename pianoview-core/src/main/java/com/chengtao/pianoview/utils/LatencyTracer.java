@@ -0,0 +1,122 @@
+package com.chengtao.pianoview.utils;
+
+/**
+ * 触摸到发声的延迟追踪。按阶段记录时间戳，并把相邻阶段的间隔计入 {@link LatencyHistogram}：
+ * <ol>
+ * <li>{@link Segment#DISPATCH}: 事件产生(MotionEvent 事件时间)到 onTouchEvent 开始处理</li>
+ * <li>{@link Segment#KEY_RESOLUTION}: onTouchEvent 开始到找到琴键</li>
+ * <li>{@link Segment#KEY_TO_AUDIO}: 找到琴键到进入 {@code AudioUtils#playMusic}</li>
+ * <li>{@link Segment#AUDIO_SUBMIT}: 进入 playMusic 到提交给 SoundPool</li>
+ * <li>{@link Segment#TOTAL}: 事件产生到提交给 SoundPool</li>
+ * </ol>
+ *
+ * <p>追踪是可选的：没有设置追踪器时各处只多一次判空。一次触摸事件的时间戳只在处理该事件的线程
+ * (主线程)上记录；其他线程的播放(如 noteOn)不计入。记录不分配对象。
+ * 时间均为 {@link System#nanoTime()} 时基。
+ */
+public final class LatencyTracer {
+  /**
+   * 延迟的分段
+   */
+  public enum Segment {
+    DISPATCH, KEY_RESOLUTION, KEY_TO_AUDIO, AUDIO_SUBMIT, TOTAL
+  }
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Segment.values().length];
+  // 正在处理的触摸事件，只由 traceThread 读写
+  private Thread traceThread;
+  private long eventNanos;
+  private long touchNanos;
+  private long keyNanos;
+  private long audioNanos;
+
+  public LatencyTracer() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * 开始处理一个触摸事件
+   *
+   * @param eventNanos 事件产生的时间
+   * @param touchNanos 开始处理的时间
+   */
+  public void beginEvent(long eventNanos, long touchNanos) {
+    this.traceThread = Thread.currentThread();
+    this.eventNanos = eventNanos;
+    this.touchNanos = touchNanos;
+    this.keyNanos = 0;
+    this.audioNanos = 0;
+  }
+
+  /**
+   * 触摸事件处理结束，之后的播放不再计入
+   */
+  public void endEvent() {
+    traceThread = null;
+  }
+
+  /**
+   * 找到了被按下的琴键。同一事件按下多个琴键时，每个琴键分别计时
+   */
+  public void markKeyResolved(long nanos) {
+    if (traceThread == Thread.currentThread()) {
+      keyNanos = nanos;
+      audioNanos = 0;
+    }
+  }
+
+  /**
+   * 进入音频播放
+   */
+  public void markAudioStart(long nanos) {
+    if (traceThread == Thread.currentThread() && keyNanos != 0) {
+      audioNanos = nanos;
+    }
+  }
+
+  /**
+   * 音频提交给后端，完成一次追踪
+   */
+  public void markAudioSubmitted(long nanos) {
+    if (traceThread != Thread.currentThread() || audioNanos == 0) {
+      return;
+    }
+    histograms[Segment.DISPATCH.ordinal()].record(touchNanos - eventNanos);
+    histograms[Segment.KEY_RESOLUTION.ordinal()].record(keyNanos - touchNanos);
+    histograms[Segment.KEY_TO_AUDIO.ordinal()].record(audioNanos - keyNanos);
+    histograms[Segment.AUDIO_SUBMIT.ordinal()].record(nanos - audioNanos);
+    histograms[Segment.TOTAL.ordinal()].record(nanos - eventNanos);
+    keyNanos = 0;
+    audioNanos = 0;
+  }
+
+  /**
+   * @param segment 分段
+   * @return 该分段的延迟直方图
+   */
+  public LatencyHistogram getHistogram(Segment segment) {
+    return histograms[segment.ordinal()];
+  }
+
+  public void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder("LatencyTracer [");
+    for (Segment segment : Segment.values()) {
+      LatencyHistogram histogram = histograms[segment.ordinal()];
+      sb.append(segment.name().toLowerCase())
+          .append(": p50=").append(histogram.getP50() / 1000)
+          .append("us p95=").append(histogram.getP95() / 1000)
+          .append("us p99=").append(histogram.getP99() / 1000)
+          .append("us; ");
+    }
+    sb.append("count=").append(histograms[Segment.TOTAL.ordinal()].getCount()).append(']');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,438 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * 标准 MIDI 文件(SMF，格式 0 和 1)转换为自动播放时间线。
+ *
+ * <p>各音轨按顺序流式读取，只保留音符开始事件(每个音符占一个 long)和速度事件，
+ * 读完后按时间把所有音轨合并(k 路归并)，再按速度表把 tick 换算为毫秒。
+ * 支持 running status、速度变化以及 SMPTE 时间格式。MIDI 音符 21~108 映射到钢琴的 88 个键
+ * (见 {@link PianoKeyIndex})，超出范围的音符以及打击乐通道(通道 10)的音符被忽略。
+ * 时间线中每个音符的间隔时间为它与下一个音符开始时间的差，同时开始的音符(和弦)间隔为 0，
+ * 最后一个音符的间隔一直延续到最长音轨的结尾。
+ */
+public class MidiConvertUtils {
+  // 解析器版本，解析结果发生变化时加一(用于使已编译乐谱的缓存失效)
+  public static final int PARSER_VERSION = 1;
+  private static final int MTHD = 0x4D546864;
+  private static final int MTRK = 0x4D54726B;
+  // 默认速度: 每个四分音符 500000 微秒(120 BPM)
+  private static final int DEFAULT_TEMPO = 500000;
+  private static final int PERCUSSION_CHANNEL = 9;
+  private static final int READ_BUFFER_SIZE = 8192;
+
+  public static final class Error {
+    public static final String FILE_NOT_EXIT = PianoConvertUtils.Error.FILE_NOT_EXIT;
+    public static final String READ_FILE_EXCEPTION = PianoConvertUtils.Error.READ_FILE_EXCEPTION;
+    public static final String NOT_MIDI_FILE = "not a midi file";
+    public static final String MIDI_FORMAT_NOT_SUPPORTED = "midi format not in [0,1]";
+    public static final String MIDI_FILE_WRONG = "midi file wrong";
+  }
+
+  public static AutoPlayTimeline convertByFilePath(String midiFilePath)
+      throws ScoreParseException {
+    File file = new File(midiFilePath);
+    if (file.exists()) {
+      FileInputStream fis;
+      try {
+        fis = new FileInputStream(file);
+      } catch (FileNotFoundException e) {
+        throw new ScoreParseException(Error.FILE_NOT_EXIT);
+      }
+      try {
+        return convertByInputStream(fis);
+      } finally {
+        try {
+          fis.close();
+        } catch (IOException ignored) {
+        }
+      }
+    } else {
+      throw new ScoreParseException(Error.FILE_NOT_EXIT);
+    }
+  }
+
+  /**
+   * 转换 MIDI 文件，输入流由调用者关闭
+   *
+   * @param is MIDI 文件输入流
+   * @return 自动播放时间线
+   * @throws ScoreParseException 读取失败或文件格式错误
+   */
+  public static AutoPlayTimeline convertByInputStream(InputStream is)
+      throws ScoreParseException {
+    if (is == null) {
+      throw new ScoreParseException(Error.READ_FILE_EXCEPTION);
+    }
+    MidiInput in = new MidiInput(is);
+    if (in.readInt() != MTHD) {
+      throw new ScoreParseException(Error.NOT_MIDI_FILE);
+    }
+    long headerLength = in.readInt() & 0xFFFFFFFFL;
+    if (headerLength < 6) {
+      throw in.error("header too short");
+    }
+    int format = in.readShort();
+    int trackCount = in.readShort();
+    int division = in.readShort();
+    in.skip(headerLength - 6);
+    if (format > 1) {
+      throw new ScoreParseException(Error.MIDI_FORMAT_NOT_SUPPORTED);
+    }
+    if (format == 0 && trackCount != 1) {
+      throw in.error("format 0 must have one track");
+    }
+    TickConverter converter = new TickConverter(division);
+    TrackNotes[] tracks = new TrackNotes[trackCount];
+    int read = 0;
+    while (read < trackCount) {
+      int chunkType = in.readInt();
+      long length = in.readInt() & 0xFFFFFFFFL;
+      if (chunkType == MTRK) {
+        tracks[read++] = readTrack(in, length, converter);
+      } else {
+        // 未知的块按规范跳过
+        in.skip(length);
+      }
+    }
+    return merge(tracks, converter);
+  }
+
+  /**
+   * 读取一个音轨，只保留音符开始事件和速度事件
+   */
+  private static TrackNotes readTrack(MidiInput in, long length, TickConverter converter)
+      throws ScoreParseException {
+    long end = in.offset + length;
+    TrackNotes notes = new TrackNotes();
+    long tick = 0;
+    int status = 0;
+    while (in.offset < end) {
+      tick += in.readVarLen();
+      int b = in.readUnsignedByte();
+      if (b == 0xFF) {
+        // 元事件
+        int type = in.readUnsignedByte();
+        long metaLength = in.readVarLen();
+        if (type == 0x51 && metaLength == 3) {
+          int tempo = (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8)
+              | in.readUnsignedByte();
+          converter.addTempo(tick, tempo);
+        } else if (type == 0x2F) {
+          // 音轨结束，忽略块中剩余的字节
+          in.skip(metaLength);
+          break;
+        } else {
+          in.skip(metaLength);
+        }
+        status = 0;
+        continue;
+      }
+      if (b == 0xF0 || b == 0xF7) {
+        // 系统独占事件
+        in.skip(in.readVarLen());
+        status = 0;
+        continue;
+      }
+      int data1;
+      if (b < 0x80) {
+        // running status: 沿用上一个通道事件的状态字节
+        if (status == 0) {
+          throw in.error("running status without status byte");
+        }
+        data1 = b;
+      } else if (b < 0xF0) {
+        status = b;
+        data1 = in.readUnsignedByte();
+      } else {
+        throw in.error("unexpected status " + b);
+      }
+      int command = status & 0xF0;
+      if (command == 0xC0 || command == 0xD0) {
+        // 只有一个数据字节
+        continue;
+      }
+      int data2 = in.readUnsignedByte();
+      if ((data1 | data2) >= 0x80) {
+        throw in.error("data byte out of range");
+      }
+      // 力度为 0 的 note on 等同于 note off
+      if (command == 0x90 && data2 > 0 && (status & 0x0F) != PERCUSSION_CHANNEL) {
+        int index = PianoKeyIndex.fromMidiNote(data1);
+        if (index >= 0) {
+          notes.add(tick, index);
+        }
+      }
+    }
+    if (in.offset > end) {
+      throw in.error("track longer than its chunk");
+    }
+    in.skip(end - in.offset);
+    notes.endTick = tick;
+    return notes;
+  }
+
+  /**
+   * 按 tick 归并各音轨(同一时刻按音轨顺序)，并换算为毫秒间隔
+   */
+  private static AutoPlayTimeline merge(TrackNotes[] tracks, TickConverter converter) {
+    int total = 0;
+    long endTick = 0;
+    for (TrackNotes track : tracks) {
+      total += track.size;
+      endTick = Math.max(endTick, track.endTick);
+    }
+    AutoPlayTimeline.Builder builder = new AutoPlayTimeline.Builder(total);
+    // 以各音轨的下一个音符为键的最小堆
+    int[] heap = new int[tracks.length];
+    int[] cursors = new int[tracks.length];
+    int heapSize = 0;
+    for (int i = 0; i < tracks.length; i++) {
+      if (tracks[i].size > 0) {
+        heap[heapSize] = i;
+        siftUp(heap, heapSize++, tracks, cursors);
+      }
+    }
+    int previousIndex = -1;
+    long previousMillis = 0;
+    while (heapSize > 0) {
+      int trackIndex = heap[0];
+      TrackNotes track = tracks[trackIndex];
+      long event = track.events[cursors[trackIndex]++];
+      if (cursors[trackIndex] == track.size) {
+        heap[0] = heap[--heapSize];
+      }
+      siftDown(heap, 0, heapSize, tracks, cursors);
+      long millis = converter.toMillis(TrackNotes.tickOf(event));
+      if (previousIndex >= 0) {
+        add(builder, previousIndex, millis - previousMillis);
+      }
+      previousIndex = TrackNotes.indexOf(event);
+      previousMillis = millis;
+    }
+    if (previousIndex >= 0) {
+      add(builder, previousIndex, Math.max(0, converter.toMillis(endTick) - previousMillis));
+    }
+    return builder.build();
+  }
+
+  private static void add(AutoPlayTimeline.Builder builder, int index, long breakTime) {
+    builder.add(PianoKeyIndex.getType(index), PianoKeyIndex.getGroup(index),
+        PianoKeyIndex.getPosition(index), breakTime);
+  }
+
+  private static boolean before(int a, int b, TrackNotes[] tracks, int[] cursors) {
+    long tickA = TrackNotes.tickOf(tracks[a].events[cursors[a]]);
+    long tickB = TrackNotes.tickOf(tracks[b].events[cursors[b]]);
+    return tickA < tickB || (tickA == tickB && a < b);
+  }
+
+  private static void siftUp(int[] heap, int i, TrackNotes[] tracks, int[] cursors) {
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (!before(heap[i], heap[parent], tracks, cursors)) {
+        return;
+      }
+      int tmp = heap[i];
+      heap[i] = heap[parent];
+      heap[parent] = tmp;
+      i = parent;
+    }
+  }
+
+  private static void siftDown(int[] heap, int i, int size, TrackNotes[] tracks, int[] cursors) {
+    while (true) {
+      int left = i * 2 + 1;
+      if (left >= size) {
+        return;
+      }
+      int child = left + 1 < size && before(heap[left + 1], heap[left], tracks, cursors)
+          ? left + 1 : left;
+      if (!before(heap[child], heap[i], tracks, cursors)) {
+        return;
+      }
+      int tmp = heap[i];
+      heap[i] = heap[child];
+      heap[child] = tmp;
+      i = child;
+    }
+  }
+
+  /**
+   * 一个音轨的音符开始事件，每个事件为 (tick << 7) | 钢琴键编号
+   */
+  private static final class TrackNotes {
+    private long[] events = new long[256];
+    private int size = 0;
+    private long endTick = 0;
+
+    void add(long tick, int index) {
+      if (size == events.length) {
+        events = Arrays.copyOf(events, size * 2);
+      }
+      events[size++] = (tick << 7) | index;
+    }
+
+    static long tickOf(long event) {
+      return event >>> 7;
+    }
+
+    static int indexOf(long event) {
+      return (int) (event & 0x7F);
+    }
+  }
+
+  /**
+   * 速度表，把 tick 换算为毫秒。换算时 tick 必须单调不减
+   */
+  private static final class TickConverter {
+    private final int ticksPerQuarter;
+    private final double microsPerSmpteTick;
+    // 按 tick 排序的速度变化(同一 tick 保持文件中的顺序)
+    private long[] tempoTicks = new long[16];
+    private int[] tempos = new int[16];
+    private int tempoCount = 0;
+    // 换算游标: 当前速度段的起点
+    private int segment = -1;
+    private long segmentTick = 0;
+    private double segmentMicros = 0;
+    private int segmentTempo = DEFAULT_TEMPO;
+
+    TickConverter(int division) throws ScoreParseException {
+      if ((division & 0x8000) == 0) {
+        if (division == 0) {
+          throw new ScoreParseException(Error.MIDI_FILE_WRONG + ":division is 0");
+        }
+        ticksPerQuarter = division;
+        microsPerSmpteTick = 0;
+      } else {
+        // SMPTE: 高字节为负的帧率，低字节为每帧 tick 数
+        int frames = -(byte) (division >> 8);
+        int ticksPerFrame = division & 0xFF;
+        if (ticksPerFrame == 0 || frames <= 0) {
+          throw new ScoreParseException(Error.MIDI_FILE_WRONG + ":bad smpte division");
+        }
+        double framesPerSecond = frames == 29 ? 29.97 : frames;
+        ticksPerQuarter = 0;
+        microsPerSmpteTick = 1000000.0 / (framesPerSecond * ticksPerFrame);
+      }
+    }
+
+    void addTempo(long tick, int tempo) {
+      if (tempoCount == tempoTicks.length) {
+        tempoTicks = Arrays.copyOf(tempoTicks, tempoCount * 2);
+        tempos = Arrays.copyOf(tempos, tempoCount * 2);
+      }
+      // 插入排序，速度事件很少且通常已经有序
+      int i = tempoCount++;
+      while (i > 0 && tempoTicks[i - 1] > tick) {
+        tempoTicks[i] = tempoTicks[i - 1];
+        tempos[i] = tempos[i - 1];
+        i--;
+      }
+      tempoTicks[i] = tick;
+      tempos[i] = tempo;
+    }
+
+    long toMillis(long tick) {
+      if (ticksPerQuarter == 0) {
+        return Math.round(tick * microsPerSmpteTick / 1000.0);
+      }
+      while (segment + 1 < tempoCount && tempoTicks[segment + 1] <= tick) {
+        segment++;
+        segmentMicros += micros(tempoTicks[segment] - segmentTick, segmentTempo);
+        segmentTick = tempoTicks[segment];
+        segmentTempo = tempos[segment];
+      }
+      return Math.round((segmentMicros + micros(tick - segmentTick, segmentTempo)) / 1000.0);
+    }
+
+    private double micros(long ticks, int tempo) {
+      return (double) ticks * tempo / ticksPerQuarter;
+    }
+  }
+
+  /**
+   * 带缓冲的大端字节读取，记录当前偏移量用于错误信息
+   */
+  private static final class MidiInput {
+    private final InputStream is;
+    private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private long offset = 0;
+
+    MidiInput(InputStream is) {
+      this.is = is;
+    }
+
+    int readUnsignedByte() throws ScoreParseException {
+      if (position == limit) {
+        fill();
+      }
+      offset++;
+      return buffer[position++] & 0xFF;
+    }
+
+    int readShort() throws ScoreParseException {
+      return (readUnsignedByte() << 8) | readUnsignedByte();
+    }
+
+    int readInt() throws ScoreParseException {
+      return (readUnsignedByte() << 24) | (readUnsignedByte() << 16) | (readUnsignedByte() << 8)
+          | readUnsignedByte();
+    }
+
+    /**
+     * 变长数值，最多 4 个字节
+     */
+    long readVarLen() throws ScoreParseException {
+      long value = 0;
+      for (int i = 0; i < 4; i++) {
+        int b = readUnsignedByte();
+        value = (value << 7) | (b & 0x7F);
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw error("variable length quantity too long");
+    }
+
+    void skip(long count) throws ScoreParseException {
+      while (count > 0) {
+        if (position == limit) {
+          fill();
+        }
+        int step = (int) Math.min(count, limit - position);
+        position += step;
+        offset += step;
+        count -= step;
+      }
+    }
+
+    private void fill() throws ScoreParseException {
+      int read;
+      try {
+        read = is.read(buffer);
+      } catch (IOException e) {
+        throw new ScoreParseException(Error.READ_FILE_EXCEPTION);
+      }
+      if (read <= 0) {
+        throw error("unexpected end of file");
+      }
+      position = 0;
+      limit = read;
+    }
+
+    ScoreParseException error(String detail) {
+      return new ScoreParseException(Error.MIDI_FILE_WRONG + ":" + detail + " at byte " + offset);
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.listener.OnScoreParseListener;
+
+/**
+ * 简谱音符的单趟字符分词器。
+ *
+ * <p>逐个字符喂入音符部分的配置(头部 "{...}" 之后的内容)，在遇到 ',' 或 '|' 时结束一个音符，
+ * 并直接回调 {@link OnScoreParseListener#onScoreNote}。不使用正则、split 或装箱集合，
+ * 小节内的升降记号状态用两个 int 位掩码保存。支持的音符格式(空白字符被忽略):
+ * <pre>
+ *   [HO|LO]? [H|M|L]? [0-7] (*(0.25|0.5|2|4|6|8))?
+ * </pre>
+ * 其中 HO(高八度)只允许 0.25、0.5、2、4 的倍数，与旧的正则规则保持一致。
+ */
+final class NotationTokenizer {
+  // 升高时仍为白键之外的数字(1,2,4,5,6)
+  private static final int HIGH_BLACK_MASK = (1 << 1) | (1 << 2) | (1 << 4) | (1 << 5) | (1 << 6);
+  // 降低时仍为白键之外的数字(2,3,4,5,7)
+  private static final int LOW_BLACK_MASK = (1 << 2) | (1 << 3) | (1 << 4) | (1 << 5) | (1 << 7);
+
+  // 分词状态
+  private static final int STATE_START = 0;
+  private static final int STATE_H = 1;
+  private static final int STATE_L = 2;
+  private static final int STATE_OCTAVE = 3;
+  private static final int STATE_ACCIDENTAL = 4;
+  private static final int STATE_NUMBER = 5;
+  private static final int STATE_STAR = 6;
+  private static final int STATE_ZERO = 7;
+  private static final int STATE_ZERO_DOT = 8;
+  private static final int STATE_ZERO_DOT_TWO = 9;
+  private static final int STATE_TIMES_END = 10;
+  private static final int STATE_WRONG = 11;
+
+  // 八度
+  private static final int OCTAVE_NONE = 0;
+  private static final int OCTAVE_HIGH = 1;
+  private static final int OCTAVE_LOW = 2;
+
+  // 倍数(用分子/分母表示，避免浮点运算)
+  private static final int TIMES_QUARTER = -4;
+  private static final int TIMES_HALF = -2;
+
+  private final int doGroup;
+  private final int doPosition;
+  private final long frequency;
+  private final OnScoreParseListener listener;
+  // 当前音符的原始文本，只用于错误信息，复用以避免分配
+  private final StringBuilder tokenText = new StringBuilder(8);
+  // 当前音符第一个字符的位置，只用于错误信息
+  private int tokenLine;
+  private int tokenColumn;
+
+  private int state = STATE_START;
+  private int octave = OCTAVE_NONE;
+  private char accidental = 0;
+  private int number = -1;
+  private int times = 1;
+  // 本小节的升降记号(按数字位)
+  private int highMask = 0;
+  private int lowMask = 0;
+  // 监听器是否要求停止
+  private boolean stopped = false;
+
+  NotationTokenizer(int doGroup, int doPosition, long frequency, OnScoreParseListener listener) {
+    this.doGroup = doGroup;
+    this.doPosition = doPosition;
+    this.frequency = frequency;
+    this.listener = listener;
+  }
+
+  /**
+   * 喂入一个字符
+   *
+   * @param c 字符
+   * @param line 字符所在行号
+   * @param column 字符所在列号
+   * @return 是否继续解析
+   * @throws ScoreParseException 音符格式错误
+   */
+  boolean feed(char c, int line, int column) throws ScoreParseException {
+    if (c == ',') {
+      endToken();
+      return !stopped;
+    }
+    if (c == '|') {
+      endToken();
+      highMask = 0;
+      lowMask = 0;
+      if (!stopped) {
+        listener.onScoreBarLine();
+      }
+      return !stopped;
+    }
+    if (Character.isWhitespace(c)) {
+      return true;
+    }
+    if (tokenText.length() == 0) {
+      tokenLine = line;
+      tokenColumn = column;
+    }
+    tokenText.append(c);
+    state = next(c);
+    return true;
+  }
+
+  /**
+   * 结束输入，处理最后一个音符
+   *
+   * @return 是否解析完成(未被监听器停止)
+   * @throws ScoreParseException 音符格式错误
+   */
+  boolean finish() throws ScoreParseException {
+    endToken();
+    return !stopped;
+  }
+
+  private int next(char c) {
+    switch (state) {
+      case STATE_START:
+        if (c == 'H') {
+          return STATE_H;
+        } else if (c == 'L') {
+          return STATE_L;
+        } else if (c == 'M') {
+          accidental = c;
+          return STATE_ACCIDENTAL;
+        }
+        return number(c);
+      case STATE_H:
+      case STATE_L:
+        if (c == 'O') {
+          octave = state == STATE_H ? OCTAVE_HIGH : OCTAVE_LOW;
+          return STATE_OCTAVE;
+        }
+        accidental = state == STATE_H ? 'H' : 'L';
+        return number(c);
+      case STATE_OCTAVE:
+        if (c == 'H' || c == 'M' || c == 'L') {
+          accidental = c;
+          return STATE_ACCIDENTAL;
+        }
+        return number(c);
+      case STATE_ACCIDENTAL:
+        return number(c);
+      case STATE_NUMBER:
+        return c == '*' ? STATE_STAR : STATE_WRONG;
+      case STATE_STAR:
+        switch (c) {
+          case '0':
+            return STATE_ZERO;
+          case '2':
+          case '4':
+            times = c - '0';
+            return STATE_TIMES_END;
+          case '6':
+          case '8':
+            // 高八度不支持 6、8 倍
+            if (octave == OCTAVE_HIGH) {
+              return STATE_WRONG;
+            }
+            times = c - '0';
+            return STATE_TIMES_END;
+          default:
+            return STATE_WRONG;
+        }
+      case STATE_ZERO:
+        return c == '.' ? STATE_ZERO_DOT : STATE_WRONG;
+      case STATE_ZERO_DOT:
+        if (c == '2') {
+          return STATE_ZERO_DOT_TWO;
+        } else if (c == '5') {
+          times = TIMES_HALF;
+          return STATE_TIMES_END;
+        }
+        return STATE_WRONG;
+      case STATE_ZERO_DOT_TWO:
+        if (c == '5') {
+          times = TIMES_QUARTER;
+          return STATE_TIMES_END;
+        }
+        return STATE_WRONG;
+      default:
+        return STATE_WRONG;
+    }
+  }
+
+  private int number(char c) {
+    if (c >= '0' && c <= '7') {
+      number = c - '0';
+      return STATE_NUMBER;
+    }
+    return STATE_WRONG;
+  }
+
+  private void endToken() throws ScoreParseException {
+    int endState = state;
+    if (endState == STATE_START) {
+      return;
+    }
+    if (endState != STATE_NUMBER && endState != STATE_TIMES_END) {
+      throw new ScoreParseException(PianoConvertUtils.Error.MUSIC_NOTE_CONFIG_WRONG + ":" + tokenText,
+          tokenLine, tokenColumn);
+    }
+    if (accidental != 0) {
+      int bit = 1 << number;
+      switch (accidental) {
+        case 'H':
+          highMask |= bit;
+          lowMask &= ~bit;
+          break;
+        case 'L':
+          lowMask |= bit;
+          highMask &= ~bit;
+          break;
+        default:
+          highMask &= ~bit;
+          lowMask &= ~bit;
+          break;
+      }
+    }
+    long keyFrequency;
+    if (times == TIMES_QUARTER) {
+      keyFrequency = frequency / 4;
+    } else if (times == TIMES_HALF) {
+      keyFrequency = frequency / 2;
+    } else {
+      keyFrequency = frequency * times;
+    }
+    emitKey(keyFrequency);
+    state = STATE_START;
+    octave = OCTAVE_NONE;
+    accidental = 0;
+    number = -1;
+    times = 1;
+    tokenText.setLength(0);
+  }
+
+  /**
+   * 计算钢琴键并回调
+   *
+   * @param keyFrequency 该音符的频率
+   */
+  private void emitKey(long keyFrequency) {
+    int type;
+    int group = 0;
+    int position = 0;
+    if (number == 0) {
+      type = PianoConvertUtils.PianoKey.NULL_KEY;
+    } else {
+      int bit = 1 << number;
+      group = doGroup;
+      position = doPosition + number - 1;
+      if (position > 6) {
+        group++;
+        position -= 7;
+      }
+      if (octave == OCTAVE_HIGH) {
+        group++;
+      } else if (octave == OCTAVE_LOW) {
+        group--;
+      }
+      if ((highMask & bit) != 0) {
+        if ((HIGH_BLACK_MASK & bit) == 0) {// 还是白建
+          position++;
+          if (position > 6) {
+            group++;
+            position -= 7;
+          }
+          type = PianoConvertUtils.PianoKey.WHITE_KEY;
+        } else {// 黑键
+          if (position > 1) {
+            position--;
+          }
+          type = PianoConvertUtils.PianoKey.BLACK_KEY;
+        }
+      } else if ((lowMask & bit) != 0) {
+        if ((LOW_BLACK_MASK & bit) == 0) {// 还是白建
+          position--;
+          if (position < 0) {
+            group--;
+            if (group != 0) {
+              position += 7;
+            } else {
+              position += 2;
+            }
+          }
+          type = PianoConvertUtils.PianoKey.WHITE_KEY;
+        } else {// 黑键
+          if (position <= 2) {
+            position--;
+          } else {
+            position -= 2;
+          }
+          type = PianoConvertUtils.PianoKey.BLACK_KEY;
+        }
+      } else {
+        type = PianoConvertUtils.PianoKey.WHITE_KEY;
+      }
+    }
+    if (!listener.onScoreNote(type, group, position, keyFrequency)) {
+      stopped = true;
+    }
+  }
+}
@@ -0,0 +1,281 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlaySource;
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * 离线渲染：把自动播放时间线和采样库混音为 PCM 并写成 WAV，速度只受 CPU 限制。
+ * 纯 Java 实现，不依赖 SoundPool，可以在 JVM 测试和后台任务中使用。
+ *
+ * <p>与 {@code AudioUtils} 的实时播放一致：每个音符完整播放其采样，同时发声的音符数超过
+ * {@link #setMaxVoices} 时最早的音符被截断；叠加后超出范围的采样被削波。
+ * 混音按块进行，音符在混音过程中从时间线依次读取，每块只处理与其重叠的音符，
+ * 内存占用只有固定大小的混音缓冲和正在发声的音符，与乐曲长度无关。
+ */
+public final class OfflineRenderer {
+  // 与 AudioUtils 的 SoundPool 最大音频数一致
+  public static final int DEFAULT_MAX_VOICES = 11;
+  private static final int BLOCK_FRAMES = 4096;
+
+  public static final class Error {
+    public static final String SAMPLE_BANK_EMPTY = "sample bank is empty";
+  }
+
+  private final SampleBank bank;
+  private int maxVoices = DEFAULT_MAX_VOICES;
+  private float gain = 1f;
+
+  public OfflineRenderer(SampleBank bank) {
+    this.bank = bank;
+  }
+
+  /**
+   * @param maxVoices 最大同时发声数
+   */
+  public OfflineRenderer setMaxVoices(int maxVoices) {
+    if (maxVoices < 1) {
+      throw new IllegalArgumentException("maxVoices: " + maxVoices);
+    }
+    this.maxVoices = maxVoices;
+    return this;
+  }
+
+  /**
+   * @param gain 输出增益，默认 1
+   */
+  public OfflineRenderer setGain(float gain) {
+    this.gain = gain;
+    return this;
+  }
+
+  /**
+   * 渲染结果
+   */
+  public static final class Result {
+    private final long frameCount;
+    private final int sampleRate;
+    private final long renderNanos;
+
+    private Result(long frameCount, int sampleRate, long renderNanos) {
+      this.frameCount = frameCount;
+      this.sampleRate = sampleRate;
+      this.renderNanos = renderNanos;
+    }
+
+    public long getFrameCount() {
+      return frameCount;
+    }
+
+    /**
+     * @return 音频时长(毫秒)
+     */
+    public long getAudioDurationMs() {
+      return frameCount * 1000L / sampleRate;
+    }
+
+    /**
+     * @return 渲染耗时(纳秒)，包括写入
+     */
+    public long getRenderNanos() {
+      return renderNanos;
+    }
+
+    /**
+     * @return 渲染速度相对实时播放的倍数
+     */
+    public double getSpeed() {
+      return renderNanos == 0 ? 0 : frameCount * 1e9 / sampleRate / renderNanos;
+    }
+
+    @Override public String toString() {
+      return "Result [audio=" + getAudioDurationMs() + "ms, render=" + renderNanos / 1000000
+          + "ms, speed=" + String.format("%.1f", getSpeed()) + "x]";
+    }
+  }
+
+  /**
+   * 渲染到 WAV 文件
+   *
+   * @param source 自动播放时间线
+   * @param wav 目标文件
+   * @return 渲染结果
+   * @throws IOException 写入失败或采样库为空
+   */
+  public Result render(AutoPlaySource source, File wav) throws IOException {
+    FileOutputStream fos = new FileOutputStream(wav);
+    try {
+      FileChannel channel = fos.getChannel();
+      return render(source, channel);
+    } finally {
+      fos.close();
+    }
+  }
+
+  /**
+   * 渲染为 WAV 写入通道，通道由调用者关闭
+   *
+   * @param source 自动播放时间线
+   * @param out 目标通道
+   * @return 渲染结果
+   * @throws IOException 写入失败或采样库为空
+   */
+  public Result render(AutoPlaySource source, WritableByteChannel out) throws IOException {
+    long startNanos = System.nanoTime();
+    int sampleRate = bank.getSampleRate();
+    int channels = bank.getChannels();
+    if (sampleRate == 0) {
+      throw new IOException(Error.SAMPLE_BANK_EMPTY);
+    }
+    // WAV 头需要总帧数，先扫描一遍时间线，不保存音符
+    int size = source.size();
+    long timeMs = 0;
+    long totalFrames = 0;
+    for (int i = 0; i < size; i++) {
+      WavUtils.Pcm pcm = pcmAt(source, i);
+      if (pcm != null) {
+        totalFrames = Math.max(totalFrames, timeMs * sampleRate / 1000 + pcm.getFrameCount());
+      }
+      timeMs += source.getBreakTime(i);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_FRAMES * channels * 2)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    WavUtils.writeHeader(buffer, sampleRate, channels, totalFrames);
+    buffer.flip();
+    writeFully(out, buffer);
+
+    int[] mix = new int[BLOCK_FRAMES * channels];
+    // 正在发声的音符: 采样、起始帧、结束帧(被截断时提前)
+    short[][] voiceSamples = new short[maxVoices * 2][];
+    long[] voiceStarts = new long[voiceSamples.length];
+    long[] voiceEnds = new long[voiceSamples.length];
+    int voiceCount = 0;
+    // 下一个要读取的音符及其开始时间
+    int next = 0;
+    timeMs = 0;
+    for (long blockStart = 0; blockStart < totalFrames; blockStart += BLOCK_FRAMES) {
+      long blockEnd = Math.min(blockStart + BLOCK_FRAMES, totalFrames);
+      // 加入在本块内开始的音符
+      while (next < size) {
+        long start = timeMs * sampleRate / 1000;
+        if (start >= blockEnd) {
+          break;
+        }
+        WavUtils.Pcm pcm = pcmAt(source, next);
+        if (pcm != null) {
+          stealIfFull(voiceStarts, voiceEnds, voiceCount, start);
+          if (voiceCount == voiceSamples.length) {
+            // 被截断的音符在本块内仍需混音，只能扩容
+            int capacity = voiceCount * 2;
+            voiceSamples = Arrays.copyOf(voiceSamples, capacity);
+            voiceStarts = Arrays.copyOf(voiceStarts, capacity);
+            voiceEnds = Arrays.copyOf(voiceEnds, capacity);
+          }
+          voiceSamples[voiceCount] = pcm.getSamples();
+          voiceStarts[voiceCount] = start;
+          voiceEnds[voiceCount] = start + pcm.getFrameCount();
+          voiceCount++;
+        }
+        timeMs += source.getBreakTime(next);
+        next++;
+      }
+      int blockFrames = (int) (blockEnd - blockStart);
+      Arrays.fill(mix, 0, blockFrames * channels, 0);
+      for (int v = 0; v < voiceCount; v++) {
+        long from = Math.max(blockStart, voiceStarts[v]);
+        long to = Math.min(blockEnd, voiceEnds[v]);
+        if (from >= to) {
+          continue;
+        }
+        short[] sample = voiceSamples[v];
+        int mixIndex = (int) (from - blockStart) * channels;
+        int sampleIndex = (int) (from - voiceStarts[v]) * channels;
+        int count = (int) (to - from) * channels;
+        for (int k = 0; k < count; k++) {
+          mix[mixIndex + k] += sample[sampleIndex + k];
+        }
+      }
+      buffer.clear();
+      int samples = blockFrames * channels;
+      for (int k = 0; k < samples; k++) {
+        int value = gain == 1f ? mix[k] : (int) (mix[k] * gain);
+        if (value > Short.MAX_VALUE) {
+          value = Short.MAX_VALUE;
+        } else if (value < Short.MIN_VALUE) {
+          value = Short.MIN_VALUE;
+        }
+        buffer.putShort((short) value);
+      }
+      buffer.flip();
+      writeFully(out, buffer);
+      voiceCount = compact(voiceSamples, voiceStarts, voiceEnds, voiceCount, blockEnd);
+    }
+    return new Result(totalFrames, sampleRate, System.nanoTime() - startNanos);
+  }
+
+  /**
+   * 在 start 时刻仍在发声的音符达到上限时，截断其中最早开始的一个
+   */
+  private void stealIfFull(long[] voiceStarts, long[] voiceEnds, int voiceCount, long start) {
+    int sounding = 0;
+    int oldest = -1;
+    for (int v = 0; v < voiceCount; v++) {
+      if (voiceEnds[v] > start) {
+        sounding++;
+        if (oldest < 0 || voiceStarts[v] < voiceStarts[oldest]) {
+          oldest = v;
+        }
+      }
+    }
+    if (sounding >= maxVoices) {
+      voiceEnds[oldest] = start;
+    }
+  }
+
+  /**
+   * 移除在 frame 之前已经结束的音符
+   *
+   * @return 剩余的音符数
+   */
+  private static int compact(short[][] voiceSamples, long[] voiceStarts, long[] voiceEnds,
+      int voiceCount, long frame) {
+    int kept = 0;
+    for (int v = 0; v < voiceCount; v++) {
+      if (voiceEnds[v] > frame) {
+        voiceSamples[kept] = voiceSamples[v];
+        voiceStarts[kept] = voiceStarts[v];
+        voiceEnds[kept] = voiceEnds[v];
+        kept++;
+      }
+    }
+    // 不再引用已结束音符的采样
+    Arrays.fill(voiceSamples, kept, voiceCount, null);
+    return kept;
+  }
+
+  /**
+   * @return 第 i 个音符的采样，休止符和缺少采样的键为null
+   */
+  private WavUtils.Pcm pcmAt(AutoPlaySource source, int i) {
+    int type = source.getType(i);
+    if (type == AutoPlayTimeline.NULL_KEY) {
+      return null;
+    }
+    int keyIndex = PianoKeyIndex.indexOf(type, source.getGroup(i), source.getPosition(i));
+    return keyIndex >= 0 ? bank.get(keyIndex) : null;
+  }
+
+  private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,313 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * 演奏录制器，记录按键按下和抬起的事件及纳秒时间戳。
+ *
+ * <p>事件写入预先分配的基本类型环形缓冲区(每个事件 9 字节)，记录时不分配任何对象；
+ * 缓冲区写满后覆盖最早的事件。录制由单个线程(通常是主线程)写入，
+ * 导出请在 {@link #stop()} 之后或在同一线程中进行。
+ *
+ * <p>可以导出为自动播放时间线、自动播放 JSON 或标准 MIDI 文件(格式 0)。
+ */
+public final class PerformanceRecorder {
+  public static final int DEFAULT_CAPACITY = 8192;
+  // MIDI 导出: 每四分音符 480 tick，速度 120 BPM
+  private static final int MIDI_DIVISION = 480;
+  private static final int MIDI_TEMPO = 500000;
+  private static final int MIDI_VELOCITY = 100;
+  private static final long NANOS_PER_MILLI = 1000000L;
+  // 事件字节: 最高位为按下标志，低 7 位为钢琴键编号
+  private static final int DOWN_FLAG = 0x80;
+  private static final int KEY_MASK = 0x7F;
+
+  private final long[] times;
+  private final byte[] events;
+  private final int mask;
+  // 总共写入的事件数，超过容量时取模得到槽位
+  private long count = 0;
+  private long startNanos = 0;
+  private volatile boolean recording = false;
+
+  public PerformanceRecorder() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity 缓冲区能保存的事件数，向上取整为 2 的幂
+   */
+  public PerformanceRecorder(int capacity) {
+    if (capacity < 1 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    times = new long[size];
+    events = new byte[size];
+    mask = size - 1;
+  }
+
+  /**
+   * 清空之前的录制并开始录制，时间从现在开始计算
+   */
+  public void start() {
+    start(System.nanoTime());
+  }
+
+  /**
+   * 清空之前的录制并开始录制
+   *
+   * @param startNanos 录制的起点({@link System#nanoTime()} 时基)
+   */
+  public void start(long startNanos) {
+    this.count = 0;
+    this.startNanos = startNanos;
+    recording = true;
+  }
+
+  public void stop() {
+    recording = false;
+  }
+
+  public boolean isRecording() {
+    return recording;
+  }
+
+  /**
+   * 记录按键按下，未在录制时忽略
+   *
+   * @param keyIndex 钢琴键编号(见 {@link PianoKeyIndex})
+   * @param timeNanos 事件时间({@link System#nanoTime()} 时基)
+   */
+  public void recordKeyDown(int keyIndex, long timeNanos) {
+    record(keyIndex | DOWN_FLAG, keyIndex, timeNanos);
+  }
+
+  /**
+   * 记录按键抬起，未在录制时忽略
+   *
+   * @param keyIndex 钢琴键编号(见 {@link PianoKeyIndex})
+   * @param timeNanos 事件时间({@link System#nanoTime()} 时基)
+   */
+  public void recordKeyUp(int keyIndex, long timeNanos) {
+    record(keyIndex, keyIndex, timeNanos);
+  }
+
+  private void record(int event, int keyIndex, long timeNanos) {
+    if (!recording || keyIndex < 0 || keyIndex >= PianoKeyIndex.KEY_COUNT) {
+      return;
+    }
+    int slot = (int) (count & mask);
+    times[slot] = timeNanos - startNanos;
+    events[slot] = (byte) event;
+    count++;
+  }
+
+  /**
+   * @return 缓冲区中保存的事件数
+   */
+  public int size() {
+    return (int) Math.min(count, times.length);
+  }
+
+  /**
+   * @return 因缓冲区写满而被覆盖的事件数
+   */
+  public long getOverwrittenCount() {
+    return Math.max(0, count - times.length);
+  }
+
+  /**
+   * @param index 事件序号(0 为缓冲区中最早的事件)
+   * @return 事件相对于录制起点的时间(纳秒)
+   */
+  public long getTime(int index) {
+    return times[slot(index)];
+  }
+
+  public int getKeyIndex(int index) {
+    return events[slot(index)] & KEY_MASK;
+  }
+
+  public boolean isKeyDown(int index) {
+    return (events[slot(index)] & DOWN_FLAG) != 0;
+  }
+
+  private int slot(int index) {
+    int size = size();
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+    }
+    return (int) ((count - size + index) & mask);
+  }
+
+  /**
+   * 转换为自动播放时间线。每个按下事件为一个音符，间隔时间为到下一个按下事件的毫秒数
+   * (按绝对时间取整，不会累积误差)；最后一个音符的间隔为其按住的时间。开始录制到第一个音符之间的空白不保留。
+   *
+   * @return 时间线
+   */
+  public AutoPlayTimeline toTimeline() {
+    int size = size();
+    AutoPlayTimeline.Builder builder = new AutoPlayTimeline.Builder(Math.max(1, size / 2));
+    int previous = -1;
+    for (int i = 0; i < size; i++) {
+      if (isKeyDown(i)) {
+        if (previous >= 0) {
+          addNote(builder, previous, toMillis(getTime(i)) - toMillis(getTime(previous)));
+        }
+        previous = i;
+      }
+    }
+    if (previous >= 0) {
+      addNote(builder, previous, toMillis(releaseTime(previous)) - toMillis(getTime(previous)));
+    }
+    return builder.build();
+  }
+
+  private void addNote(AutoPlayTimeline.Builder builder, int event, long breakTime) {
+    int keyIndex = getKeyIndex(event);
+    builder.add(PianoKeyIndex.getType(keyIndex), PianoKeyIndex.getGroup(keyIndex),
+        PianoKeyIndex.getPosition(keyIndex), breakTime);
+  }
+
+  // 按下事件对应的抬起时间，没有抬起时为最后一个事件的时间
+  private long releaseTime(int down) {
+    int size = size();
+    int keyIndex = getKeyIndex(down);
+    for (int i = down + 1; i < size; i++) {
+      if (getKeyIndex(i) == keyIndex) {
+        return getTime(i);
+      }
+    }
+    return getTime(size - 1);
+  }
+
+  /**
+   * 导出为自动播放 JSON(与 {@code AutoPlayEntity} 的 Gson 序列化格式一致)
+   *
+   * @param writer 输出，由调用者关闭
+   * @throws IOException 写入失败
+   */
+  public void writeJson(Writer writer) throws IOException {
+    AutoPlayTimeline timeline = toTimeline();
+    JsonWriter out = new JsonWriter(writer);
+    out.beginArray();
+    for (int i = 0; i < timeline.size(); i++) {
+      out.beginObject();
+      out.name("type").value(timeline.getType(i) == AutoPlayTimeline.BLACK_KEY ? "BLACK" : "WHITE");
+      out.name("group").value(timeline.getGroup(i));
+      out.name("position").value(timeline.getPosition(i));
+      out.name("break").value(timeline.getBreakTime(i));
+      out.endObject();
+    }
+    out.endArray();
+    out.flush();
+  }
+
+  /**
+   * 导出为标准 MIDI 文件(格式 0，单音轨，通道 0)。保留每个音符实际按住的时间，
+   * 录制结束时仍按住的键在最后一个事件处抬起
+   *
+   * @param out 输出流，由调用者关闭
+   * @throws IOException 写入失败
+   */
+  public void writeMidi(OutputStream out) throws IOException {
+    ByteArrayOutputStream track = new ByteArrayOutputStream();
+    writeVarLen(track, 0);
+    track.write(0xFF);
+    track.write(0x51);
+    track.write(3);
+    track.write(MIDI_TEMPO >> 16);
+    track.write((MIDI_TEMPO >> 8) & 0xFF);
+    track.write(MIDI_TEMPO & 0xFF);
+    boolean[] down = new boolean[PianoKeyIndex.KEY_COUNT];
+    long lastTick = -1;
+    int size = size();
+    for (int i = 0; i < size; i++) {
+      int keyIndex = getKeyIndex(i);
+      boolean isDown = isKeyDown(i);
+      if (isDown == down[keyIndex]) {
+        // 重复按下或没有对应按下的抬起(最早的事件可能已被覆盖)
+        continue;
+      }
+      down[keyIndex] = isDown;
+      long tick = toTick(getTime(i));
+      lastTick = writeNote(track, lastTick, tick, keyIndex, isDown);
+    }
+    long endTick = size > 0 ? toTick(getTime(size - 1)) : 0;
+    for (int keyIndex = 0; keyIndex < down.length; keyIndex++) {
+      if (down[keyIndex]) {
+        lastTick = writeNote(track, lastTick, endTick, keyIndex, false);
+      }
+    }
+    writeVarLen(track, 0);
+    track.write(0xFF);
+    track.write(0x2F);
+    track.write(0);
+
+    byte[] data = track.toByteArray();
+    writeInt(out, 0x4D546864);
+    writeInt(out, 6);
+    writeShort(out, 0);
+    writeShort(out, 1);
+    writeShort(out, MIDI_DIVISION);
+    writeInt(out, 0x4D54726B);
+    writeInt(out, data.length);
+    out.write(data);
+    out.flush();
+  }
+
+  private static long writeNote(ByteArrayOutputStream track, long lastTick, long tick,
+      int keyIndex, boolean down) {
+    // 第一个音符之前的空白不保留，与 toTimeline() 一致
+    writeVarLen(track, lastTick < 0 ? 0 : (int) Math.min(tick - lastTick, 0x0FFFFFFF));
+    track.write(down ? 0x90 : 0x80);
+    track.write(PianoKeyIndex.toMidiNote(keyIndex));
+    track.write(down ? MIDI_VELOCITY : 0);
+    return tick;
+  }
+
+  private static long toMillis(long nanos) {
+    return (nanos + NANOS_PER_MILLI / 2) / NANOS_PER_MILLI;
+  }
+
+  private static long toTick(long nanos) {
+    // tick = nanos / (tempo * 1000 / division)，四舍五入
+    long nanosPerQuarter = MIDI_TEMPO * 1000L;
+    return (nanos * MIDI_DIVISION + nanosPerQuarter / 2) / nanosPerQuarter;
+  }
+
+  private static void writeVarLen(ByteArrayOutputStream out, int value) {
+    int buffer = value & 0x7F;
+    while ((value >>= 7) > 0) {
+      buffer <<= 8;
+      buffer |= (value & 0x7F) | 0x80;
+    }
+    while (true) {
+      out.write(buffer & 0xFF);
+      if ((buffer & 0x80) == 0) {
+        break;
+      }
+      buffer >>= 8;
+    }
+  }
+
+  private static void writeInt(OutputStream out, int value) throws IOException {
+    writeShort(out, value >>> 16);
+    writeShort(out, value);
+  }
+
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write((value >> 8) & 0xFF);
+    out.write(value & 0xFF);
+  }
+}
@@ -0,0 +1,515 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.chengtao.pianoview.listener.OnScoreParseListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Author : ChengTao(chengtaolearn@163.com)
+ * Date : 11/3/17
+ * Time : 11:43 PM
+ * Description :
+ */
+
+public class PianoConvertUtils {
+  // 解析器版本，解析结果发生变化时加一(用于使已编译乐谱的缓存失效)
+  public static final int PARSER_VERSION = 1;
+  private static final int STANDARD_DO_GROUP = 3;
+  private static final int STANDARD_DO_POSITION = 0;
+  private static final long STANDARD_FREQUENCY = 240;
+  // 流式读取的缓冲区大小(字符)
+  private static final int READ_BUFFER_SIZE = 4096;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  public static final class Error {
+    public static final String FILE_NOT_EXIT = "file not exist";
+    public static final String READ_FILE_EXCEPTION = "read file exception";
+    public static final String CONFIG_FILE_WRONG = "config file wrong";
+    public static final String TUNE_LENGTH_NOT_ONE = "tune length is not 1";
+    public static final String TUNE_NOT_IN_RANGE = "tune not in range [A-G]";
+    public static final String FREQUENCY_NOT_NUMBER = "frequency is not number";
+    public static final String FREQUENCY_NOT_IN_RANGE = "frequency not int range [60,4000]";
+    public static final String NO_MUSIC_NAME = "no music name";
+    public static final String MUSIC_NOTE_CONFIG_WRONG = "music config wrong";
+  }
+
+  public static final class PianoKey {
+    public static final int BLACK_KEY = 0;
+    public static final int WHITE_KEY = 1;
+    public static final int NULL_KEY = -1;
+    private int group;
+    private int position;
+    private int type;
+    private long frequency;
+
+    public PianoKey() {
+      type = NULL_KEY;
+    }
+
+    public int getGroup() {
+      return group;
+    }
+
+    public void setGroup(int group) {
+      this.group = group;
+    }
+
+    public int getPosition() {
+      return position;
+    }
+
+    public void setPosition(int position) {
+      this.position = position;
+    }
+
+    public int getType() {
+      return type;
+    }
+
+    public void setType(int type) {
+      this.type = type;
+    }
+
+    public long getFrequency() {
+      return frequency;
+    }
+
+    public void setFrequency(long frequency) {
+      this.frequency = frequency;
+    }
+
+    @Override public String toString() {
+      return "PianoKey [group="
+          + group
+          + ", position="
+          + position
+          + ", type="
+          + type
+          + ", frequency="
+          + frequency
+          + "]";
+    }
+  }
+
+  /**
+   * 解析结果，创建后不可修改
+   */
+  public static final class Score {
+    private final String name;
+    private final String config;
+    private final AutoPlayTimeline timeline;
+    private final int[] barLines;
+
+    private Score(String name, String config, AutoPlayTimeline timeline, int[] barLines) {
+      this.name = name;
+      this.config = config;
+      this.timeline = timeline;
+      this.barLines = barLines;
+    }
+
+    /**
+     * @return 乐曲名称
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return 去掉空白后的配置(名称中的空白保留)
+     */
+    public String getConfig() {
+      return config;
+    }
+
+    /**
+     * @return 音符数
+     */
+    public int getKeyCount() {
+      return timeline.size();
+    }
+
+    /**
+     * @param index 音符序号
+     * @return 钢琴键类型(BLACK_KEY、WHITE_KEY 或 NULL_KEY)
+     */
+    public int getKeyType(int index) {
+      return timeline.getType(index);
+    }
+
+    public int getKeyGroup(int index) {
+      return timeline.getGroup(index);
+    }
+
+    public int getKeyPosition(int index) {
+      return timeline.getPosition(index);
+    }
+
+    public long getKeyFrequency(int index) {
+      return timeline.getBreakTime(index);
+    }
+
+    /**
+     * @return 自动播放时间线(频率即间隔时间)
+     */
+    public AutoPlayTimeline getTimeline() {
+      return timeline;
+    }
+
+    /**
+     * @return 小节线数
+     */
+    public int getBarLineCount() {
+      return barLines.length;
+    }
+
+    /**
+     * @param index 小节线序号
+     * @return 该小节线之后第一个音符的序号(小节线在最后时等于音符数)
+     */
+    public int getBarLine(int index) {
+      if (index < 0 || index >= barLines.length) {
+        throw new IndexOutOfBoundsException("index: " + index + ", size: " + barLines.length);
+      }
+      return barLines[index];
+    }
+
+    /**
+     * 转换为钢琴键列表，每次调用都返回新的副本
+     *
+     * @return 不可修改的钢琴键列表
+     */
+    public List<PianoKey> getKeys() {
+      List<PianoKey> keys = new ArrayList<>(timeline.size());
+      for (int i = 0; i < timeline.size(); i++) {
+        PianoKey key = new PianoKey();
+        key.setType(timeline.getType(i));
+        key.setGroup(timeline.getGroup(i));
+        key.setPosition(timeline.getPosition(i));
+        key.setFrequency(timeline.getBreakTime(i));
+        keys.add(key);
+      }
+      return Collections.unmodifiableList(keys);
+    }
+
+    @Override public String toString() {
+      return "Score [name=" + name + ", keyCount=" + timeline.size() + "]";
+    }
+  }
+
+  public static Score convertByFilePath(String configFilePath) throws ScoreParseException {
+    File file = new File(configFilePath);
+    if (file.exists()) {
+      FileInputStream fis;
+      try {
+        fis = new FileInputStream(file);
+      } catch (FileNotFoundException e) {
+        throw new ScoreParseException(Error.FILE_NOT_EXIT);
+      }
+      try {
+        return convertByInputStream(fis);
+      } finally {
+        try {
+          fis.close();
+        } catch (IOException ignored) {
+        }
+      }
+    } else {
+      throw new ScoreParseException(Error.FILE_NOT_EXIT);
+    }
+  }
+
+  public static Score convertByInputStream(InputStream is) throws ScoreParseException {
+    if (is != null) {
+      // 与按行读取拼接的旧行为一致：换行符不属于配置内容
+      return collect(new InputStreamReader(is, UTF_8), true);
+    } else {
+      throw new ScoreParseException(Error.READ_FILE_EXCEPTION);
+    }
+  }
+
+  public static Score convertByConfigString(String configString) throws ScoreParseException {
+    if (configString != null) {
+      return collect(new StringReader(configString), false);
+    } else {
+      throw new ScoreParseException(Error.CONFIG_FILE_WRONG);
+    }
+  }
+
+  /**
+   * 流式解析简谱配置。头部和音符都是边读边解析，每读到一个音符就回调一次，
+   * 内存占用与乐谱长度无关，因此可以在读取完整个文件之前就开始播放。
+   * 换行符被忽略(与 {@link #convertByInputStream(InputStream)} 一致)，Reader 由调用者关闭。
+   *
+   * @param reader 配置来源
+   * @param listener 解析事件接口
+   * @throws ScoreParseException 读取或配置错误
+   */
+  public static void convertByReader(Reader reader, OnScoreParseListener listener)
+      throws ScoreParseException {
+    if (reader == null || listener == null) {
+      throw new ScoreParseException(Error.READ_FILE_EXCEPTION);
+    }
+    parse(reader, true, null, listener);
+  }
+
+  private static Score collect(Reader reader, boolean ignoreLineBreaks)
+      throws ScoreParseException {
+    ScoreCollector collector = new ScoreCollector();
+    StringBuilder strippedConfig = new StringBuilder();
+    parse(reader, ignoreLineBreaks, strippedConfig, collector);
+    return collector.toScore(strippedConfig.toString());
+  }
+
+  /**
+   * 把解析事件收集到时间线中
+   */
+  private static final class ScoreCollector implements OnScoreParseListener {
+    private final AutoPlayTimeline.Builder builder = new AutoPlayTimeline.Builder();
+    private String name;
+    private int[] barLines = new int[16];
+    private int barLineCount = 0;
+
+    @Override public void onScoreStart(String name) {
+      this.name = name;
+    }
+
+    @Override public boolean onScoreNote(int type, int group, int position, long frequency) {
+      builder.add(type, group, position, frequency);
+      return true;
+    }
+
+    @Override public void onScoreBarLine() {
+      if (barLineCount == barLines.length) {
+        barLines = Arrays.copyOf(barLines, barLineCount * 2);
+      }
+      barLines[barLineCount++] = builder.size();
+    }
+
+    @Override public void onScoreEnd() {
+    }
+
+    Score toScore(String config) {
+      return new Score(name, config, builder.build(), Arrays.copyOf(barLines, barLineCount));
+    }
+  }
+
+  /**
+   * 单趟解析：头部 "{...}" 逐字符读取(只缓存头部)，音符部分直接交给 {@link NotationTokenizer}。
+   * 同时记录行号和列号，用于错误信息。
+   *
+   * @param reader 配置来源
+   * @param ignoreLineBreaks 是否忽略换行符
+   * @param strippedConfig 不为null时，写入去掉空白后的配置(名称中的空白保留)
+   * @param listener 解析事件接口
+   * @throws ScoreParseException 读取或配置错误
+   */
+  private static void parse(Reader reader, boolean ignoreLineBreaks, StringBuilder strippedConfig,
+      OnScoreParseListener listener) throws ScoreParseException {
+    char[] buffer = new char[READ_BUFFER_SIZE];
+    StringBuilder headerBuilder = new StringBuilder(64);
+    // '{' 的位置，以及头部每一项(以 '{' 或 ';' 开始)第一个字符的位置
+    int[] entryLines = new int[8];
+    int[] entryColumns = new int[8];
+    int entryCount = 0;
+    boolean entryStart = false;
+    boolean nameStart = false;
+    boolean nameEnd = false;
+    NotationTokenizer tokenizer = null;
+    int line = 1;
+    int column = 0;
+    boolean lineBreak = false;
+    int read;
+    while ((read = read(reader, buffer)) != -1) {
+      for (int i = 0; i < read; i++) {
+        char c = buffer[i];
+        // 换行符属于它所在的行
+        if (lineBreak) {
+          line++;
+          column = 0;
+        }
+        column++;
+        lineBreak = c == '\n';
+        if (ignoreLineBreaks && (c == '\n' || c == '\r')) {
+          continue;
+        }
+        if (tokenizer != null) {
+          // 音符配置
+          if (strippedConfig != null && !Character.isWhitespace(c)) {
+            strippedConfig.append(c);
+          }
+          if (!tokenizer.feed(c, line, column)) {
+            return;
+          }
+          continue;
+        }
+        if (headerBuilder.length() == 0 && c != '{') {
+          throw new ScoreParseException(Error.CONFIG_FILE_WRONG, line, column);
+        }
+        int length = headerBuilder.length();
+        if (!nameStart || nameEnd) {//读取名称没有开始或者已经结束
+          if (!Character.isWhitespace(c)) {//去掉所有空白符
+            headerBuilder.append(c);
+          }
+        } else {
+          headerBuilder.append(c);
+        }
+        if (headerBuilder.length() > length) {
+          if (length == 0 || entryStart) {
+            if (entryCount == entryLines.length) {
+              entryLines = Arrays.copyOf(entryLines, entryCount * 2);
+              entryColumns = Arrays.copyOf(entryColumns, entryCount * 2);
+            }
+            entryLines[entryCount] = line;
+            entryColumns[entryCount] = column;
+            entryCount++;
+            entryStart = false;
+          }
+          if (length == 0 || c == ';') {
+            entryStart = true;
+          }
+        }
+        if (!nameStart) {
+          if (c == ':') {
+            length = headerBuilder.length();
+            if (length >= 5) {
+              String label = headerBuilder.substring(length - 5, length - 1);
+              if (label.equals("name")) {
+                nameStart = true;
+              }
+            }
+          }
+        }
+        if (nameStart && (c == ';' || c == '}')) {
+          nameEnd = true;
+        }
+        if (c == '}') {
+          if (strippedConfig != null) {
+            strippedConfig.append(headerBuilder);
+          }
+          tokenizer = parseHeader(headerBuilder, entryLines, entryColumns, listener);
+        }
+      }
+    }
+    if (tokenizer == null) {
+      throw new ScoreParseException(Error.CONFIG_FILE_WRONG, line, column + 1);
+    }
+    if (tokenizer.finish()) {
+      listener.onScoreEnd();
+    }
+  }
+
+  private static int read(Reader reader, char[] buffer) throws ScoreParseException {
+    try {
+      return reader.read(buffer);
+    } catch (IOException e) {
+      throw new ScoreParseException(Error.READ_FILE_EXCEPTION);
+    }
+  }
+
+  /**
+   * 解析头部基本配置，并创建音符分词器
+   *
+   * @param headerBuilder 去掉空白后的头部 "{...}"
+   * @param entryLines '{' 及头部每一项的行号
+   * @param entryColumns '{' 及头部每一项的列号
+   * @param listener 解析事件接口
+   * @return 音符分词器
+   * @throws ScoreParseException 配置错误
+   */
+  private static NotationTokenizer parseHeader(StringBuilder headerBuilder, int[] entryLines,
+      int[] entryColumns, OnScoreParseListener listener) throws ScoreParseException {
+    int currentDoGroup = STANDARD_DO_GROUP;
+    int currentDoPosition = STANDARD_DO_POSITION;
+    long currentFrequency = STANDARD_FREQUENCY;
+    String name = null;
+    // 基本配置，按 ';' 分隔
+    String baseConfigString = headerBuilder.substring(1, headerBuilder.length() - 1);
+    int entry = 1;
+    int entryBegin = 0;
+    while (entryBegin <= baseConfigString.length()) {
+      int entryEnd = baseConfigString.indexOf(';', entryBegin);
+      if (entryEnd == -1) {
+        entryEnd = baseConfigString.length();
+      }
+      String baseConfig = baseConfigString.substring(entryBegin, entryEnd);
+      int line = entryLines[entry];
+      int column = entryColumns[entry];
+      if (!baseConfig.equals("")) {
+        if (baseConfig.contains("tune:")) {
+          String tune = baseConfig.replace("tune:", "");
+          if (tune.length() != 1) {
+            throw new ScoreParseException(Error.TUNE_LENGTH_NOT_ONE, line, column);
+          }
+          char charTune = tune.toUpperCase().charAt(0);
+          if (charTune < 'A' || charTune > 'G') {
+            throw new ScoreParseException(Error.TUNE_NOT_IN_RANGE, line, column);
+          }
+          if (charTune == 'A') {
+            currentDoGroup--;
+            currentDoPosition = 5;
+          } else if (charTune == 'B') {
+            currentDoGroup--;
+            currentDoPosition = 6;
+          } else {
+            currentDoPosition += ((int) charTune - (int) ('C'));
+          }
+        } else if (baseConfig.contains("frequency:")) {
+          String frequency = baseConfig.replace("frequency:", "");
+          if (!isNumber(frequency)) {
+            throw new ScoreParseException(Error.FREQUENCY_NOT_NUMBER, line, column);
+          }
+          try {
+            currentFrequency = Long.valueOf(frequency);
+          } catch (NumberFormatException e) {
+            // 超出 long 范围，同样视为频率越界
+            throw new ScoreParseException(Error.FREQUENCY_NOT_IN_RANGE, line, column);
+          }
+          if (currentFrequency < 60 || currentFrequency > 4000) {
+            throw new ScoreParseException(Error.FREQUENCY_NOT_IN_RANGE, line, column);
+          }
+        } else if (baseConfig.contains("name:")) {
+          name = baseConfig.replace("name:", "");
+        }
+      }
+      entry++;
+      entryBegin = entryEnd + 1;
+    }
+    if (name == null || name.isEmpty()) {
+      // 没有名称时指向头部开始的位置
+      throw new ScoreParseException(Error.NO_MUSIC_NAME, entryLines[0], entryColumns[0]);
+    }
+    listener.onScoreStart(name);
+    return new NotationTokenizer(currentDoGroup, currentDoPosition, currentFrequency, listener);
+  }
+
+  /**
+   * 判断字符串是否全部由数字组成
+   *
+   * @param value 字符串
+   * @return 是否为数字
+   */
+  private static boolean isNumber(String value) {
+    if (value.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,123 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+
+/**
+ * 88 个钢琴键的统一编号，以及与 MIDI 音符号、{@code Piano} 的组/位置/类型模型之间的换算。
+ *
+ * <p>编号从 0 (A0，MIDI 21) 到 87 (C8，MIDI 108)，即 MIDI 音符号减 21。
+ * 第 0 组只有 A0、A#0、B0 三个键，第 1~7 组从 C 到 B 各 12 个键，第 8 组只有 C8。
+ * 组内白键位置为 0~6 (C D E F G A B)，黑键位置为 0~4 (C# D# F# G# A#)；第 0 组白键为 A0=0、B0=1，黑键 A#0=0。
+ * 按键类型与 {@link AutoPlayTimeline} 中的常量一致。
+ */
+public final class PianoKeyIndex {
+  //钢琴键数目
+  public static final int KEY_COUNT = 88;
+  //最低和最高的 MIDI 音符号
+  public static final int LOWEST_MIDI_NOTE = 21;
+  public static final int HIGHEST_MIDI_NOTE = 108;
+
+  private static final int B = AutoPlayTimeline.BLACK_KEY;
+  private static final int W = AutoPlayTimeline.WHITE_KEY;
+  // 一个八度内(从 C 开始)每个半音的类型和组内位置
+  private static final int[] SEMITONE_TYPES = { W, B, W, B, W, W, B, W, B, W, B, W };
+  private static final int[] SEMITONE_POSITIONS = { 0, 0, 1, 1, 2, 3, 2, 4, 3, 5, 4, 6 };
+  // 组内位置对应的半音
+  private static final int[] WHITE_SEMITONES = { 0, 2, 4, 5, 7, 9, 11 };
+  private static final int[] BLACK_SEMITONES = { 1, 3, 6, 8, 10 };
+  // 第 0 组(A0、A#0、B0)之后第一个键 C1 的编号
+  private static final int FIRST_C_INDEX = 3;
+
+  private static final byte[] TYPES = new byte[KEY_COUNT];
+  private static final byte[] GROUPS = new byte[KEY_COUNT];
+  private static final byte[] POSITIONS = new byte[KEY_COUNT];
+
+  static {
+    TYPES[0] = W;
+    TYPES[1] = B;
+    TYPES[2] = W;
+    POSITIONS[2] = 1;
+    for (int index = FIRST_C_INDEX; index < KEY_COUNT; index++) {
+      int semitone = (index - FIRST_C_INDEX) % 12;
+      TYPES[index] = (byte) SEMITONE_TYPES[semitone];
+      GROUPS[index] = (byte) ((index - FIRST_C_INDEX) / 12 + 1);
+      POSITIONS[index] = (byte) SEMITONE_POSITIONS[semitone];
+    }
+  }
+
+  private PianoKeyIndex() {
+  }
+
+  /**
+   * @param midiNote MIDI 音符号
+   * @return 钢琴键编号，超出钢琴范围(21~108)时返回-1
+   */
+  public static int fromMidiNote(int midiNote) {
+    if (midiNote < LOWEST_MIDI_NOTE || midiNote > HIGHEST_MIDI_NOTE) {
+      return -1;
+    }
+    return midiNote - LOWEST_MIDI_NOTE;
+  }
+
+  /**
+   * @param index 钢琴键编号
+   * @return MIDI 音符号
+   */
+  public static int toMidiNote(int index) {
+    checkIndex(index);
+    return index + LOWEST_MIDI_NOTE;
+  }
+
+  /**
+   * @param index 钢琴键编号
+   * @return 按键类型(BLACK_KEY 或 WHITE_KEY)
+   */
+  public static int getType(int index) {
+    checkIndex(index);
+    return TYPES[index];
+  }
+
+  public static int getGroup(int index) {
+    checkIndex(index);
+    return GROUPS[index];
+  }
+
+  public static int getPosition(int index) {
+    checkIndex(index);
+    return POSITIONS[index];
+  }
+
+  /**
+   * 由组/位置/类型得到编号
+   *
+   * @param type 按键类型(BLACK_KEY 或 WHITE_KEY)
+   * @param group 组数
+   * @param position 组内位置
+   * @return 钢琴键编号，不存在时返回-1
+   */
+  public static int indexOf(int type, int group, int position) {
+    if (group == 0) {
+      if (type == W && (position == 0 || position == 1)) {
+        return position * 2;
+      } else if (type == B && position == 0) {
+        return 1;
+      }
+    } else if (group >= 1 && group <= 7) {
+      int base = FIRST_C_INDEX + (group - 1) * 12;
+      if (type == W && position >= 0 && position < WHITE_SEMITONES.length) {
+        return base + WHITE_SEMITONES[position];
+      } else if (type == B && position >= 0 && position < BLACK_SEMITONES.length) {
+        return base + BLACK_SEMITONES[position];
+      }
+    } else if (group == 8 && type == W && position == 0) {
+      return KEY_COUNT - 1;
+    }
+    return -1;
+  }
+
+  private static void checkIndex(int index) {
+    if (index < 0 || index >= KEY_COUNT) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + KEY_COUNT);
+    }
+  }
+}
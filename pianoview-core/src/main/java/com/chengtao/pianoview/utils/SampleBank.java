@@ -0,0 +1,86 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 离线渲染使用的钢琴采样库，按钢琴键编号(见 {@link PianoKeyIndex})保存解码后的 PCM。
+ * 所有采样必须有相同的采样率和声道数。
+ *
+ * <p>文件命名与库中的 res/raw 一致：白键为 w{组}{位置}.wav，黑键为 b{组}{位置}.wav。
+ */
+public final class SampleBank {
+  public static final class Error {
+    public static final String FORMAT_MISMATCH = "sample format mismatch";
+  }
+
+  private final WavUtils.Pcm[] samples = new WavUtils.Pcm[PianoKeyIndex.KEY_COUNT];
+  private int sampleRate = 0;
+  private int channels = 0;
+
+  /**
+   * 从目录加载所有存在的采样文件，缺少的键在渲染时静音
+   *
+   * @param directory 采样目录
+   * @return 采样库
+   * @throws IOException 读取失败、格式不支持或格式不一致
+   */
+  public static SampleBank load(File directory) throws IOException {
+    SampleBank bank = new SampleBank();
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      File file = new File(directory, sampleFileName(keyIndex));
+      if (file.exists()) {
+        bank.put(keyIndex, WavUtils.read(file));
+      }
+    }
+    return bank;
+  }
+
+  /**
+   * @param keyIndex 钢琴键编号
+   * @return 采样文件名，如 w40.wav
+   */
+  public static String sampleFileName(int keyIndex) {
+    return (PianoKeyIndex.getType(keyIndex) == AutoPlayTimeline.BLACK_KEY ? "b" : "w")
+        + PianoKeyIndex.getGroup(keyIndex) + PianoKeyIndex.getPosition(keyIndex) + ".wav";
+  }
+
+  /**
+   * 加载一个键的采样，输入流由调用者关闭
+   */
+  public SampleBank put(int keyIndex, InputStream wav) throws IOException {
+    return put(keyIndex, WavUtils.read(wav));
+  }
+
+  public SampleBank put(int keyIndex, WavUtils.Pcm pcm) throws IOException {
+    if (sampleRate == 0) {
+      sampleRate = pcm.getSampleRate();
+      channels = pcm.getChannels();
+    } else if (pcm.getSampleRate() != sampleRate || pcm.getChannels() != channels) {
+      throw new IOException(Error.FORMAT_MISMATCH + ":" + sampleFileName(keyIndex));
+    }
+    samples[keyIndex] = pcm;
+    return this;
+  }
+
+  /**
+   * @param keyIndex 钢琴键编号
+   * @return 采样，没有时为null
+   */
+  public WavUtils.Pcm get(int keyIndex) {
+    return samples[keyIndex];
+  }
+
+  /**
+   * @return 采样率，采样库为空时为 0
+   */
+  public int getSampleRate() {
+    return sampleRate;
+  }
+
+  public int getChannels() {
+    return channels;
+  }
+}
@@ -0,0 +1,308 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.listener.OnBatchConvertListener;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量转换乐谱库。文件在有界的 {@link ForkJoinPool} 上并行解析，单个文件出错不会中断整批转换，
+ * 结果写入 {@link ScoreCache} 或输出目录中的二进制乐谱文件(见 {@link ScoreBinaryUtils})。
+ *
+ * <p>文件格式按扩展名判断(见 {@link ScoreCache.SourceFormat#forFileName})。
+ */
+public class ScoreBatchConverter {
+  private static final String BINARY_SUFFIX = ".pvsc";
+
+  public static final class Error {
+    public static final String CANCELLED = "batch convert cancelled";
+    public static final String WRITE_FILE_EXCEPTION = "write file exception";
+  }
+
+  private final ForkJoinPool pool;
+
+  /**
+   * 使用 CPU 核数减一个线程(至少一个)，给主线程留出余量
+   */
+  public ScoreBatchConverter() {
+    this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+  }
+
+  /**
+   * @param parallelism 最大并行线程数
+   */
+  public ScoreBatchConverter(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism: " + parallelism);
+    }
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * 单个文件的转换结果
+   */
+  public static final class Result {
+    private final File source;
+    private final ScoreBinaryUtils.BinaryScore score;
+    private final File output;
+    private final Exception error;
+    private final boolean cancelled;
+
+    private Result(File source, ScoreBinaryUtils.BinaryScore score, File output, Exception error,
+        boolean cancelled) {
+      this.source = source;
+      this.score = score;
+      this.output = output;
+      this.error = error;
+      this.cancelled = cancelled;
+    }
+
+    public File getSource() {
+      return source;
+    }
+
+    /**
+     * @return 编译后的乐谱，失败或被取消时为null
+     */
+    public ScoreBinaryUtils.BinaryScore getScore() {
+      return score;
+    }
+
+    /**
+     * @return 写入的二进制乐谱文件，没有指定输出目录时为null
+     */
+    public File getOutput() {
+      return output;
+    }
+
+    /**
+     * @return 失败原因，解析错误为 {@link ScoreParseException}，成功时为null
+     */
+    public Exception getError() {
+      return error;
+    }
+
+    public boolean isSuccess() {
+      return score != null;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override public String toString() {
+      return "Result [source=" + source + ", success=" + isSuccess() + ", error=" + error + "]";
+    }
+  }
+
+  /**
+   * 正在进行的批量转换
+   */
+  public static final class Task {
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicInteger completed = new AtomicInteger(0);
+    private final Result[] results;
+    private final OnBatchConvertListener listener;
+    private volatile RecursiveAction action;
+
+    private Task(int total, OnBatchConvertListener listener) {
+      this.results = new Result[total];
+      this.listener = listener;
+    }
+
+    /**
+     * 取消转换。正在转换的文件会完成，尚未开始的文件不再转换
+     */
+    public void cancel() {
+      cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+      return cancelled.get();
+    }
+
+    public boolean isDone() {
+      return action.isDone();
+    }
+
+    public int getCompletedCount() {
+      return completed.get();
+    }
+
+    public int getTotalCount() {
+      return results.length;
+    }
+
+    /**
+     * 等待转换结束
+     *
+     * @return 所有文件的结果，顺序与输入一致
+     */
+    public List<Result> get() {
+      action.join();
+      return Collections.unmodifiableList(Arrays.asList(results));
+    }
+  }
+
+  /**
+   * 开始批量转换，立即返回
+   *
+   * @param files 源文件
+   * @param cache 已编译乐谱的缓存，为null时每个文件都重新解析
+   * @param outputDirectory 二进制乐谱的输出目录，为null时不写入文件。输出文件名为源文件名加上
+   * ".pvsc"(如 song.txt.pvsc)，保留扩展名以免同名不同格式的文件互相覆盖
+   * @param listener 进度监听，可以为null
+   * @return 转换任务
+   */
+  public Task convert(List<File> files, ScoreCache cache, File outputDirectory,
+      OnBatchConvertListener listener) {
+    if (outputDirectory != null && !outputDirectory.isDirectory()) {
+      outputDirectory.mkdirs();
+    }
+    File[] sources = files.toArray(new File[files.size()]);
+    Task task = new Task(sources.length, listener);
+    task.action = new ConvertAction(task, sources, 0, sources.length, cache, outputDirectory);
+    pool.execute(task.action);
+    return task;
+  }
+
+  /**
+   * 停止接受新的批量转换，已经开始的转换会继续完成
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * 把文件区间对半拆分，直到只剩一个文件，由空闲线程窃取执行
+   */
+  private static final class ConvertAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Task task;
+    private final File[] sources;
+    private final int from;
+    private final int to;
+    private final ScoreCache cache;
+    private final File outputDirectory;
+
+    ConvertAction(Task task, File[] sources, int from, int to, ScoreCache cache,
+        File outputDirectory) {
+      this.task = task;
+      this.sources = sources;
+      this.from = from;
+      this.to = to;
+      this.cache = cache;
+      this.outputDirectory = outputDirectory;
+    }
+
+    @Override protected void compute() {
+      try {
+        if (to - from > 1) {
+          int middle = (from + to) >>> 1;
+          invokeAll(new ConvertAction(task, sources, from, middle, cache, outputDirectory),
+              new ConvertAction(task, sources, middle, to, cache, outputDirectory));
+        } else if (to > from) {
+          Result result = task.isCancelled() ? new Result(sources[from], null, null,
+              new ScoreParseException(Error.CANCELLED), true)
+              : convert(sources[from], cache, outputDirectory);
+          task.results[from] = result;
+          int completed = task.completed.incrementAndGet();
+          if (task.listener != null) {
+            try {
+              task.listener.onScoreConverted(result, completed, sources.length);
+            } catch (RuntimeException ignored) {
+              // 监听器的异常不能中断整批转换
+            }
+          }
+        }
+      } finally {
+        // 根任务结束时所有子任务都已完成
+        if (this == task.action && task.listener != null) {
+          task.listener.onBatchFinished(
+              Collections.unmodifiableList(Arrays.asList(task.results)), task.isCancelled());
+        }
+      }
+    }
+  }
+
+  private static Result convert(File source, ScoreCache cache, File outputDirectory) {
+    try {
+      byte[] bytes = read(source);
+      ScoreCache.SourceFormat format = ScoreCache.SourceFormat.forFileName(source.getName());
+      ScoreBinaryUtils.BinaryScore score = cache != null
+          ? cache.get(format, bytes)
+          : ScoreBinaryUtils.wrap(ByteBuffer.wrap(ScoreCache.compile(format, bytes)));
+      File output = null;
+      if (outputDirectory != null) {
+        output = new File(outputDirectory, source.getName() + BINARY_SUFFIX);
+        write(score, output);
+      }
+      return new Result(source, score, output, null, false);
+    } catch (Exception e) {
+      // 包括格式错误和损坏文件引发的运行时异常，都只影响当前文件
+      return new Result(source, null, null, e, false);
+    }
+  }
+
+  private static byte[] read(File source) throws ScoreParseException {
+    if (!source.exists()) {
+      throw new ScoreParseException(PianoConvertUtils.Error.FILE_NOT_EXIT);
+    }
+    try {
+      InputStream is = new FileInputStream(source);
+      try {
+        return ScoreCache.readFully(is);
+      } finally {
+        is.close();
+      }
+    } catch (IOException e) {
+      throw new ScoreParseException(PianoConvertUtils.Error.READ_FILE_EXCEPTION);
+    }
+  }
+
+  private static void write(ScoreBinaryUtils.BinaryScore score, File output)
+      throws ScoreParseException {
+    try {
+      FileOutputStream fos = new FileOutputStream(output);
+      try {
+        score.writeTo(fos);
+      } finally {
+        fos.close();
+      }
+    } catch (IOException e) {
+      throw new ScoreParseException(Error.WRITE_FILE_EXCEPTION + ":" + output.getName());
+    }
+  }
+
+  /**
+   * 批量转换的便捷方法：列出目录下的所有文件
+   *
+   * @param directory 乐谱库目录
+   * @return 目录下的文件(不含子目录)，按文件名排序
+   */
+  public static List<File> listScores(File directory) {
+    List<File> files = new ArrayList<>();
+    File[] children = directory.listFiles();
+    if (children != null) {
+      Arrays.sort(children);
+      for (File child : children) {
+        if (child.isFile()) {
+          files.add(child);
+        }
+      }
+    }
+    return files;
+  }
+}
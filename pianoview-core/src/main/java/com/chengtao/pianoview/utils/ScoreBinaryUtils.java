@@ -0,0 +1,306 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlaySource;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 预编译的二进制乐谱格式。文本简谱或 JSON 只需转换一次，之后通过 {@link FileChannel#map}
+ * 直接映射文件，不需要任何解析，播放时直接从映射的缓冲区读取音符。
+ *
+ * <p>文件格式(大端字节序):
+ * <pre>
+ *   头部 32 字节:
+ *     0  int   魔数 "PVSC"
+ *     4  short 版本号
+ *     6  short 标志(FLAG_BAR_INDEX: 包含小节索引)
+ *     8  int   音符数
+ *     12 int   小节线数
+ *     16 int   名称长度(UTF-8 字节数)，名称紧跟在头部之后
+ *     20 int   音符表偏移(8 字节对齐)
+ *     24 int   小节索引偏移(没有时为 0)
+ *     28 int   保留
+ *   音符表: 每个音符 8 字节 [类型 byte][组 byte][位置 byte][保留 byte][间隔时间 int]
+ *   小节索引: 每条小节线一个 int，为其后第一个音符的序号
+ * </pre>
+ */
+public final class ScoreBinaryUtils {
+  public static final int MAGIC = 0x50565343;
+  public static final int VERSION = 1;
+  public static final int FLAG_BAR_INDEX = 1;
+  private static final int HEADER_SIZE = 32;
+  private static final int NOTE_RECORD_SIZE = 8;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  public static final class Error {
+    public static final String FILE_NOT_EXIT = PianoConvertUtils.Error.FILE_NOT_EXIT;
+    public static final String READ_FILE_EXCEPTION = PianoConvertUtils.Error.READ_FILE_EXCEPTION;
+    public static final String NOT_BINARY_SCORE = "not a binary score";
+    public static final String VERSION_NOT_SUPPORTED = "binary score version not supported";
+    public static final String BINARY_SCORE_WRONG = "binary score wrong";
+  }
+
+  private ScoreBinaryUtils() {
+  }
+
+  /**
+   * 内存映射的二进制乐谱，所有读取都直接访问缓冲区，线程安全
+   */
+  public static final class BinaryScore implements AutoPlaySource {
+    private final ByteBuffer buffer;
+    private final String name;
+    private final int size;
+    private final int barLineCount;
+    private final int notesOffset;
+    private final int barsOffset;
+
+    private BinaryScore(ByteBuffer buffer, String name, int size, int barLineCount,
+        int notesOffset, int barsOffset) {
+      this.buffer = buffer;
+      this.name = name;
+      this.size = size;
+      this.barLineCount = barLineCount;
+      this.notesOffset = notesOffset;
+      this.barsOffset = barsOffset;
+    }
+
+    /**
+     * @return 乐曲名称，没有时为空字符串
+     */
+    public String getName() {
+      return name;
+    }
+
+    @Override public int size() {
+      return size;
+    }
+
+    @Override public int getType(int index) {
+      return buffer.get(record(index));
+    }
+
+    @Override public int getGroup(int index) {
+      return buffer.get(record(index) + 1);
+    }
+
+    @Override public int getPosition(int index) {
+      return buffer.get(record(index) + 2);
+    }
+
+    @Override public long getBreakTime(int index) {
+      return buffer.getInt(record(index) + 4) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @return 小节线数，没有小节索引时为 0
+     */
+    public int getBarLineCount() {
+      return barLineCount;
+    }
+
+    /**
+     * @param index 小节线序号
+     * @return 该小节线之后第一个音符的序号
+     */
+    public int getBarLine(int index) {
+      if (index < 0 || index >= barLineCount) {
+        throw new IndexOutOfBoundsException("index: " + index + ", size: " + barLineCount);
+      }
+      return buffer.getInt(barsOffset + index * 4);
+    }
+
+    /**
+     * @return 二进制乐谱占用的字节数
+     */
+    public int getByteSize() {
+      return buffer.limit();
+    }
+
+    /**
+     * 原样写出二进制乐谱(不需要重新编码)
+     *
+     * @param out 输出流，由调用者关闭
+     * @throws IOException 写入失败
+     */
+    public void writeTo(OutputStream out) throws IOException {
+      ByteBuffer data = buffer.duplicate();
+      data.clear();
+      byte[] chunk = new byte[Math.min(data.remaining(), 8192)];
+      while (data.hasRemaining()) {
+        int length = Math.min(chunk.length, data.remaining());
+        data.get(chunk, 0, length);
+        out.write(chunk, 0, length);
+      }
+    }
+
+    private int record(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+      }
+      return notesOffset + index * NOTE_RECORD_SIZE;
+    }
+
+    @Override public String toString() {
+      return "BinaryScore [name=" + name + ", size=" + size + ", barLines=" + barLineCount + "]";
+    }
+  }
+
+  /**
+   * 写入简谱解析结果(包含小节索引)
+   *
+   * @param score 简谱解析结果
+   * @param out 输出流，由调用者关闭
+   * @throws IOException 写入失败
+   */
+  public static void write(PianoConvertUtils.Score score, OutputStream out) throws IOException {
+    int[] barLines = new int[score.getBarLineCount()];
+    for (int i = 0; i < barLines.length; i++) {
+      barLines[i] = score.getBarLine(i);
+    }
+    write(score.getName(), score.getTimeline(), barLines, out);
+  }
+
+  /**
+   * 写入音符序列
+   *
+   * @param name 乐曲名称，可以为null
+   * @param source 音符序列(如 {@code AutoPlayUtils} 得到的时间线)
+   * @param barLines 小节索引，为null时不写入
+   * @param out 输出流，由调用者关闭
+   * @throws IOException 写入失败
+   */
+  public static void write(String name, AutoPlaySource source, int[] barLines, OutputStream out)
+      throws IOException {
+    byte[] nameBytes = name != null ? name.getBytes(UTF_8) : new byte[0];
+    int size = source.size();
+    int barLineCount = barLines != null ? barLines.length : 0;
+    int notesOffset = align(HEADER_SIZE + nameBytes.length);
+    int barsOffset = barLines != null ? notesOffset + size * NOTE_RECORD_SIZE : 0;
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    data.writeInt(MAGIC);
+    data.writeShort(VERSION);
+    data.writeShort(barLines != null ? FLAG_BAR_INDEX : 0);
+    data.writeInt(size);
+    data.writeInt(barLineCount);
+    data.writeInt(nameBytes.length);
+    data.writeInt(notesOffset);
+    data.writeInt(barsOffset);
+    data.writeInt(0);
+    data.write(nameBytes);
+    for (int i = HEADER_SIZE + nameBytes.length; i < notesOffset; i++) {
+      data.writeByte(0);
+    }
+    for (int i = 0; i < size; i++) {
+      long breakTime = source.getBreakTime(i);
+      if (breakTime < 0 || breakTime > 0xFFFFFFFFL) {
+        throw new IllegalArgumentException("break time out of range: " + breakTime);
+      }
+      data.writeByte(source.getType(i));
+      data.writeByte(source.getGroup(i));
+      data.writeByte(source.getPosition(i));
+      data.writeByte(0);
+      data.writeInt((int) breakTime);
+    }
+    for (int i = 0; i < barLineCount; i++) {
+      data.writeInt(barLines[i]);
+    }
+    data.flush();
+  }
+
+  /**
+   * 写入文件
+   *
+   * @param score 简谱解析结果
+   * @param file 目标文件
+   * @throws IOException 写入失败
+   */
+  public static void write(PianoConvertUtils.Score score, File file) throws IOException {
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      write(score, fos);
+    } finally {
+      fos.close();
+    }
+  }
+
+  /**
+   * 以只读方式映射二进制乐谱文件，只校验头部，不解析音符
+   *
+   * @param file 二进制乐谱文件
+   * @return 二进制乐谱
+   * @throws ScoreParseException 文件不存在、读取失败或格式错误
+   */
+  public static BinaryScore map(File file) throws ScoreParseException {
+    if (!file.exists()) {
+      throw new ScoreParseException(Error.FILE_NOT_EXIT);
+    }
+    ByteBuffer buffer;
+    try {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        FileChannel channel = raf.getChannel();
+        // 映射在文件关闭之后仍然有效
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+        raf.close();
+      }
+    } catch (IOException e) {
+      throw new ScoreParseException(Error.READ_FILE_EXCEPTION);
+    }
+    return wrap(buffer);
+  }
+
+  /**
+   * 使用已经在内存中的二进制乐谱，从缓冲区的当前位置开始
+   *
+   * @param buffer 缓冲区，之后不能再修改
+   * @return 二进制乐谱
+   * @throws ScoreParseException 格式错误
+   */
+  public static BinaryScore wrap(ByteBuffer buffer) throws ScoreParseException {
+    ByteBuffer data = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+    int limit = data.limit();
+    if (limit < HEADER_SIZE || data.getInt(0) != MAGIC) {
+      throw new ScoreParseException(Error.NOT_BINARY_SCORE);
+    }
+    int version = data.getShort(4) & 0xFFFF;
+    if (version != VERSION) {
+      throw new ScoreParseException(Error.VERSION_NOT_SUPPORTED + ":" + version);
+    }
+    int flags = data.getShort(6) & 0xFFFF;
+    int size = data.getInt(8);
+    int barLineCount = data.getInt(12);
+    int nameLength = data.getInt(16);
+    int notesOffset = data.getInt(20);
+    int barsOffset = data.getInt(24);
+    boolean hasBars = (flags & FLAG_BAR_INDEX) != 0;
+    // 用 long 计算，避免损坏的头部导致溢出
+    if (size < 0 || nameLength < 0 || barLineCount < 0
+        || (long) HEADER_SIZE + nameLength > notesOffset
+        || (long) notesOffset + (long) size * NOTE_RECORD_SIZE > limit
+        || (hasBars && (barsOffset < notesOffset + (long) size * NOTE_RECORD_SIZE
+        || (long) barsOffset + (long) barLineCount * 4 > limit))
+        || (!hasBars && barLineCount != 0)) {
+      throw new ScoreParseException(Error.BINARY_SCORE_WRONG);
+    }
+    byte[] nameBytes = new byte[nameLength];
+    ByteBuffer nameBuffer = data.duplicate();
+    nameBuffer.position(HEADER_SIZE);
+    nameBuffer.get(nameBytes);
+    return new BinaryScore(data, new String(nameBytes, UTF_8), size, barLineCount, notesOffset,
+        barsOffset);
+  }
+
+  private static int align(int offset) {
+    return (offset + NOTE_RECORD_SIZE - 1) & ~(NOTE_RECORD_SIZE - 1);
+  }
+}
@@ -0,0 +1,369 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 已编译乐谱的两级缓存：内存中按字节预算淘汰的 LRU，以及磁盘上的二进制乐谱文件
+ * (见 {@link ScoreBinaryUtils})。
+ *
+ * <p>缓存键为源文件内容、来源格式、解析器版本和二进制格式版本的 SHA-256，
+ * 因此源文件或解析器发生变化时会自动失效，不需要手动清理。同一首乐谱第二次打开时只需计算一次哈希；
+ * 内存未命中而磁盘命中时直接映射文件，也不需要解析。线程安全。
+ */
+public class ScoreCache {
+  private static final String FILE_SUFFIX = ".pvsc";
+  private static final int READ_BUFFER_SIZE = 8192;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * 源文件格式
+   */
+  public enum SourceFormat {
+    //简谱配置(PianoConvertUtils)
+    NOTATION(PianoConvertUtils.PARSER_VERSION),
+    //自动播放 JSON(AutoPlayJsonDecoder)
+    JSON(AutoPlayJsonDecoder.PARSER_VERSION),
+    //标准 MIDI 文件(MidiConvertUtils)
+    MIDI(MidiConvertUtils.PARSER_VERSION);
+    private final int parserVersion;
+
+    SourceFormat(int parserVersion) {
+      this.parserVersion = parserVersion;
+    }
+
+    public int getParserVersion() {
+      return parserVersion;
+    }
+
+    /**
+     * 根据文件扩展名判断格式：.mid/.midi 为 MIDI，.json 为 JSON，其余为简谱
+     *
+     * @param fileName 文件名
+     * @return 源文件格式
+     */
+    public static SourceFormat forFileName(String fileName) {
+      String lower = fileName.toLowerCase(Locale.US);
+      if (lower.endsWith(".mid") || lower.endsWith(".midi")) {
+        return MIDI;
+      } else if (lower.endsWith(".json")) {
+        return JSON;
+      }
+      return NOTATION;
+    }
+  }
+
+  /**
+   * 缓存统计的快照
+   */
+  public static final class Stats {
+    private final long memoryHits;
+    private final long diskHits;
+    private final long misses;
+    private final long evictions;
+    private final long memoryBytes;
+    private final int memoryEntries;
+
+    private Stats(long memoryHits, long diskHits, long misses, long evictions, long memoryBytes,
+        int memoryEntries) {
+      this.memoryHits = memoryHits;
+      this.diskHits = diskHits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.memoryBytes = memoryBytes;
+      this.memoryEntries = memoryEntries;
+    }
+
+    public long getMemoryHits() {
+      return memoryHits;
+    }
+
+    public long getDiskHits() {
+      return diskHits;
+    }
+
+    /**
+     * @return 两级都未命中、需要解析的次数
+     */
+    public long getMisses() {
+      return misses;
+    }
+
+    /**
+     * @return 因超出字节预算而从内存中淘汰的次数
+     */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public long getMemoryBytes() {
+      return memoryBytes;
+    }
+
+    public int getMemoryEntries() {
+      return memoryEntries;
+    }
+
+    /**
+     * @return 命中率(内存或磁盘)，没有请求时为 0
+     */
+    public float getHitRate() {
+      long total = memoryHits + diskHits + misses;
+      return total == 0 ? 0 : (float) (memoryHits + diskHits) / total;
+    }
+
+    @Override public String toString() {
+      return "Stats [memoryHits=" + memoryHits + ", diskHits=" + diskHits + ", misses=" + misses
+          + ", evictions=" + evictions + ", memoryBytes=" + memoryBytes + ", memoryEntries="
+          + memoryEntries + "]";
+    }
+  }
+
+  private final File directory;
+  private final long memoryBudgetBytes;
+  // 按访问顺序排列，最久未使用的在最前面
+  private final LinkedHashMap<String, ScoreBinaryUtils.BinaryScore> memory =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBytes = 0;
+  private long memoryHits = 0;
+  private long diskHits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * @param directory 磁盘缓存目录，为null时只使用内存缓存
+   * @param memoryBudgetBytes 内存缓存的字节预算(按二进制乐谱的大小计算)
+   */
+  public ScoreCache(File directory, long memoryBudgetBytes) {
+    this.directory = directory;
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    if (directory != null && !directory.isDirectory()) {
+      directory.mkdirs();
+    }
+  }
+
+  /**
+   * 获取已编译的乐谱，未命中时解析并写入两级缓存。输入流由调用者关闭
+   *
+   * @param format 源文件格式
+   * @param source 源文件输入流
+   * @return 二进制乐谱
+   * @throws ScoreParseException 读取失败或源文件格式错误
+   */
+  public ScoreBinaryUtils.BinaryScore get(SourceFormat format, InputStream source)
+      throws ScoreParseException {
+    if (source == null) {
+      throw new ScoreParseException(PianoConvertUtils.Error.READ_FILE_EXCEPTION);
+    }
+    return get(format, readFully(source));
+  }
+
+  /**
+   * 获取已编译的乐谱，未命中时解析并写入两级缓存
+   *
+   * @param format 源文件格式
+   * @param source 源文件内容(简谱和 JSON 为 UTF-8)
+   * @return 二进制乐谱
+   * @throws ScoreParseException 源文件格式错误
+   */
+  public ScoreBinaryUtils.BinaryScore get(SourceFormat format, byte[] source)
+      throws ScoreParseException {
+    String key = key(format, source);
+    synchronized (this) {
+      ScoreBinaryUtils.BinaryScore score = memory.get(key);
+      if (score != null) {
+        memoryHits++;
+        return score;
+      }
+    }
+    // 磁盘和解析都在锁外进行
+    ScoreBinaryUtils.BinaryScore score = readDisk(key);
+    boolean diskHit = score != null;
+    if (score == null) {
+      byte[] compiled = compile(format, source);
+      writeDisk(key, compiled);
+      score = ScoreBinaryUtils.wrap(ByteBuffer.wrap(compiled));
+    }
+    synchronized (this) {
+      if (diskHit) {
+        diskHits++;
+      } else {
+        misses++;
+      }
+      put(key, score);
+    }
+    return score;
+  }
+
+  /**
+   * @return 当前的统计快照
+   */
+  public synchronized Stats getStats() {
+    return new Stats(memoryHits, diskHits, misses, evictions, memoryBytes, memory.size());
+  }
+
+  /**
+   * 清空内存缓存(磁盘缓存保留)
+   */
+  public synchronized void clearMemory() {
+    memory.clear();
+    memoryBytes = 0;
+  }
+
+  /**
+   * 清空两级缓存
+   */
+  public void clear() {
+    clearMemory();
+    if (directory != null) {
+      File[] files = directory.listFiles();
+      if (files != null) {
+        for (File file : files) {
+          if (file.getName().endsWith(FILE_SUFFIX)) {
+            file.delete();
+          }
+        }
+      }
+    }
+  }
+
+  private void put(String key, ScoreBinaryUtils.BinaryScore score) {
+    ScoreBinaryUtils.BinaryScore previous = memory.put(key, score);
+    if (previous != null) {
+      memoryBytes -= previous.getByteSize();
+    }
+    memoryBytes += score.getByteSize();
+    // 淘汰最久未使用的乐谱，直到回到预算之内(刚放入的乐谱总是保留)
+    Iterator<Map.Entry<String, ScoreBinaryUtils.BinaryScore>> iterator =
+        memory.entrySet().iterator();
+    while (memoryBytes > memoryBudgetBytes && memory.size() > 1 && iterator.hasNext()) {
+      Map.Entry<String, ScoreBinaryUtils.BinaryScore> eldest = iterator.next();
+      if (eldest.getKey().equals(key)) {
+        continue;
+      }
+      memoryBytes -= eldest.getValue().getByteSize();
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  private ScoreBinaryUtils.BinaryScore readDisk(String key) {
+    if (directory == null) {
+      return null;
+    }
+    File file = new File(directory, key + FILE_SUFFIX);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      return ScoreBinaryUtils.map(file);
+    } catch (ScoreParseException e) {
+      // 损坏的缓存文件，删除后重新编译
+      file.delete();
+      return null;
+    }
+  }
+
+  private void writeDisk(String key, byte[] compiled) {
+    if (directory == null) {
+      return;
+    }
+    // 先写临时文件再重命名，避免其他线程或进程读到不完整的文件
+    File file = new File(directory, key + FILE_SUFFIX);
+    File temp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      FileOutputStream fos = new FileOutputStream(temp);
+      try {
+        fos.write(compiled);
+      } finally {
+        fos.close();
+      }
+      if (!temp.renameTo(file)) {
+        temp.delete();
+      }
+    } catch (IOException e) {
+      // 磁盘缓存只是优化，写入失败时忽略
+      temp.delete();
+    }
+  }
+
+  /**
+   * 解析源文件并编译为二进制乐谱，不经过缓存
+   */
+  static byte[] compile(SourceFormat format, byte[] source) throws ScoreParseException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(source.length);
+    try {
+      switch (format) {
+        case NOTATION:
+          ScoreBinaryUtils.write(
+              PianoConvertUtils.convertByInputStream(new ByteArrayInputStream(source)), out);
+          break;
+        case JSON:
+          AutoPlayTimeline json = AutoPlayJsonDecoder.decode(
+              new InputStreamReader(new ByteArrayInputStream(source), UTF_8));
+          ScoreBinaryUtils.write(null, json, null, out);
+          break;
+        default:
+          AutoPlayTimeline midi =
+              MidiConvertUtils.convertByInputStream(new ByteArrayInputStream(source));
+          ScoreBinaryUtils.write(null, midi, null, out);
+          break;
+      }
+    } catch (IOException e) {
+      // 写入内存不会失败
+      throw new ScoreParseException(PianoConvertUtils.Error.READ_FILE_EXCEPTION);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * 缓存键: SHA-256(格式、解析器版本、二进制格式版本、源文件内容)的十六进制字符串
+   */
+  static String key(SourceFormat format, byte[] source) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // 所有 Java 平台都必须支持 SHA-256
+      throw new IllegalStateException(e);
+    }
+    digest.update((format.name() + ':' + format.getParserVersion() + ':'
+        + ScoreBinaryUtils.VERSION + ':').getBytes(UTF_8));
+    byte[] hash = digest.digest(source);
+    char[] hex = new char[hash.length * 2];
+    for (int i = 0; i < hash.length; i++) {
+      hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+    }
+    return new String(hex);
+  }
+
+  static byte[] readFully(InputStream is) throws ScoreParseException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[READ_BUFFER_SIZE];
+    try {
+      int read;
+      while ((read = is.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new ScoreParseException(PianoConvertUtils.Error.READ_FILE_EXCEPTION);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,53 @@
+package com.chengtao.pianoview.utils;
+
+/**
+ * 乐谱解析错误。{@link #getMessage()} 与旧版本一致，为 {@link PianoConvertUtils.Error} 中的错误信息
+ * (音符错误时为 "music config wrong:" 加上出错的音符)，另外给出出错位置的行号和列号。
+ */
+public class ScoreParseException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  private final int line;
+  private final int column;
+
+  /**
+   * 没有位置信息的错误(如文件不存在、读取失败)
+   *
+   * @param message 错误信息
+   */
+  public ScoreParseException(String message) {
+    this(message, -1, -1);
+  }
+
+  /**
+   * @param message 错误信息
+   * @param line 行号，从1开始
+   * @param column 列号，从1开始
+   */
+  public ScoreParseException(String message, int line, int column) {
+    super(message);
+    this.line = line;
+    this.column = column;
+  }
+
+  /**
+   * @return 出错位置的行号(从1开始)，没有位置信息时为-1
+   */
+  public int getLine() {
+    return line;
+  }
+
+  /**
+   * @return 出错位置的列号(从1开始)，没有位置信息时为-1
+   */
+  public int getColumn() {
+    return column;
+  }
+
+  @Override public String toString() {
+    if (line < 0) {
+      return super.toString();
+    }
+    return super.toString() + " (line " + line + ", column " + column + ")";
+  }
+}
@@ -0,0 +1,254 @@
+package com.chengtao.pianoview.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 16 位 PCM WAV 文件的读写，纯 Java 实现，不依赖 Android 音频组件。
+ */
+public final class WavUtils {
+  public static final int WAV_HEADER_SIZE = 44;
+  private static final int RIFF = 0x46464952;
+  private static final int WAVE = 0x45564157;
+  private static final int FMT = 0x20746D66;
+  private static final int DATA = 0x61746164;
+  private static final int FORMAT_PCM = 1;
+  private static final int BITS_PER_SAMPLE = 16;
+
+  public static final class Error {
+    public static final String NOT_WAV_FILE = "not a wav file";
+    public static final String WAV_FORMAT_NOT_SUPPORTED = "only 16 bit pcm wav is supported";
+  }
+
+  private WavUtils() {
+  }
+
+  /**
+   * 解码后的 PCM 数据，多声道时按帧交错存放
+   */
+  public static final class Pcm {
+    private final int sampleRate;
+    private final int channels;
+    private final short[] samples;
+
+    public Pcm(int sampleRate, int channels, short[] samples) {
+      this.sampleRate = sampleRate;
+      this.channels = channels;
+      this.samples = samples;
+    }
+
+    public int getSampleRate() {
+      return sampleRate;
+    }
+
+    public int getChannels() {
+      return channels;
+    }
+
+    /**
+     * @return 交错存放的采样，不要修改
+     */
+    public short[] getSamples() {
+      return samples;
+    }
+
+    /**
+     * @return 帧数(每帧包含每个声道的一个采样)
+     */
+    public int getFrameCount() {
+      return samples.length / channels;
+    }
+  }
+
+  /**
+   * WAV 格式信息，用于不解码数据时估算时长和内存占用
+   */
+  public static final class Info {
+    private final int sampleRate;
+    private final int channels;
+    private final long frameCount;
+
+    public Info(int sampleRate, int channels, long frameCount) {
+      this.sampleRate = sampleRate;
+      this.channels = channels;
+      this.frameCount = frameCount;
+    }
+
+    public int getSampleRate() {
+      return sampleRate;
+    }
+
+    public int getChannels() {
+      return channels;
+    }
+
+    public long getFrameCount() {
+      return frameCount;
+    }
+
+    /**
+     * @return 解码后的 PCM 字节数
+     */
+    public long getPcmBytes() {
+      return frameCount * channels * 2;
+    }
+
+    /**
+     * @return 时长(纳秒)
+     */
+    public long getDurationNanos() {
+      return sampleRate == 0 ? 0 : frameCount * 1000000000L / sampleRate;
+    }
+  }
+
+  public static Pcm read(File file) throws IOException {
+    InputStream is = new FileInputStream(file);
+    try {
+      return read(is);
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * 读取 16 位 PCM WAV，跳过 LIST 等其他块。输入流由调用者关闭
+   *
+   * @param is WAV 输入流
+   * @return PCM 数据
+   * @throws IOException 读取失败或格式不支持
+   */
+  public static Pcm read(InputStream is) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+    int[] format = new int[2];
+    long size = readToData(in, format);
+    int sampleRate = format[0];
+    int channels = format[1];
+    // 有些编码器写入的数据长度不准确，以实际读到的为准
+    byte[] bytes = new byte[(int) Math.min(size, Integer.MAX_VALUE - 8)];
+    int read = 0;
+    while (read < bytes.length) {
+      int n = in.read(bytes, read, bytes.length - read);
+      if (n < 0) {
+        break;
+      }
+      read += n;
+    }
+    int frameBytes = channels * 2;
+    short[] samples = new short[read / frameBytes * channels];
+    ByteBuffer.wrap(bytes, 0, samples.length * 2)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .asShortBuffer()
+        .get(samples);
+    return new Pcm(sampleRate, channels, samples);
+  }
+
+  /**
+   * 只读取 WAV 头部，不解码数据。帧数按头部记录的数据长度计算。输入流由调用者关闭
+   *
+   * @param is WAV 输入流
+   * @return 格式信息
+   * @throws IOException 读取失败或格式不支持
+   */
+  public static Info readInfo(InputStream is) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(is, 256));
+    int[] format = new int[2];
+    long size = readToData(in, format);
+    return new Info(format[0], format[1], size / (format[1] * 2));
+  }
+
+  /**
+   * 读取到 data 块的数据开始处
+   *
+   * @param info 输出采样率和声道数
+   * @return data 块的长度
+   */
+  private static long readToData(DataInputStream in, int[] info) throws IOException {
+    try {
+      if (Integer.reverseBytes(in.readInt()) != RIFF) {
+        throw new IOException(Error.NOT_WAV_FILE);
+      }
+      in.readInt();
+      if (Integer.reverseBytes(in.readInt()) != WAVE) {
+        throw new IOException(Error.NOT_WAV_FILE);
+      }
+      int sampleRate = 0;
+      int channels = 0;
+      while (true) {
+        int id = Integer.reverseBytes(in.readInt());
+        long size = Integer.reverseBytes(in.readInt()) & 0xFFFFFFFFL;
+        if (id == FMT) {
+          int format = Short.reverseBytes(in.readShort()) & 0xFFFF;
+          channels = Short.reverseBytes(in.readShort()) & 0xFFFF;
+          sampleRate = Integer.reverseBytes(in.readInt());
+          in.readInt();
+          in.readShort();
+          int bits = Short.reverseBytes(in.readShort()) & 0xFFFF;
+          if (format != FORMAT_PCM || bits != BITS_PER_SAMPLE || channels < 1) {
+            throw new IOException(Error.WAV_FORMAT_NOT_SUPPORTED);
+          }
+          skip(in, size - 16 + (size & 1));
+        } else if (id == DATA) {
+          if (channels == 0) {
+            throw new IOException(Error.NOT_WAV_FILE);
+          }
+          info[0] = sampleRate;
+          info[1] = channels;
+          return size;
+        } else {
+          skip(in, size + (size & 1));
+        }
+      }
+    } catch (EOFException e) {
+      throw new IOException(Error.NOT_WAV_FILE);
+    }
+  }
+
+  /**
+   * 写入 44 字节的 WAV 头部
+   *
+   * @param header 目标缓冲区(从当前位置开始写入)
+   * @param sampleRate 采样率
+   * @param channels 声道数
+   * @param frameCount 帧数
+   */
+  public static void writeHeader(ByteBuffer header, int sampleRate, int channels,
+      long frameCount) {
+    long dataSize = frameCount * channels * 2;
+    if (dataSize > 0xFFFFFFFFL - 36) {
+      throw new IllegalArgumentException("wav too large: " + dataSize + " bytes");
+    }
+    ByteOrder order = header.order();
+    header.order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(RIFF);
+    header.putInt((int) (36 + dataSize));
+    header.putInt(WAVE);
+    header.putInt(FMT);
+    header.putInt(16);
+    header.putShort((short) FORMAT_PCM);
+    header.putShort((short) channels);
+    header.putInt(sampleRate);
+    header.putInt(sampleRate * channels * 2);
+    header.putShort((short) (channels * 2));
+    header.putShort((short) BITS_PER_SAMPLE);
+    header.putInt(DATA);
+    header.putInt((int) dataSize);
+    header.order(order);
+  }
+
+  private static void skip(DataInputStream in, long bytes) throws IOException {
+    while (bytes > 0) {
+      long skipped = in.skip(bytes);
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+      bytes -= skipped;
+    }
+  }
+}
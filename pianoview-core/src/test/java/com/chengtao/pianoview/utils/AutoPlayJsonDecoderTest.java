@@ -0,0 +1,124 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 自动播放 JSON 流式解码测试，以 Gson 树模型读出的字段为准。
+ */
+public class AutoPlayJsonDecoderTest {
+
+  @Test public void littleStarMatchesJsonTree() throws Exception {
+    JsonArray expected = JsonParser.parseReader(asset("little_star.json")).getAsJsonArray();
+    AutoPlayTimeline timeline = AutoPlayJsonDecoder.decode(asset("little_star.json"));
+    assertEquals(expected.size(), timeline.size());
+    for (int i = 0; i < expected.size(); i++) {
+      JsonObject note = expected.get(i).getAsJsonObject();
+      assertEquals(note.get("type").getAsInt(), timeline.getType(i));
+      assertEquals(note.get("group").getAsInt(), timeline.getGroup(i));
+      assertEquals(note.get("position").getAsInt(), timeline.getPosition(i));
+      assertEquals(note.get("break").getAsLong(), timeline.getBreakTime(i));
+    }
+  }
+
+  @Test public void acceptsAllKeyTypeForms() throws Exception {
+    AutoPlayTimeline timeline = AutoPlayJsonDecoder.decode(new StringReader("[{\"type\":\"0\"},"
+        + "{\"type\":\"WHITE\",\"group\":2,\"break\":250},null,"
+        + "{\"position\":1},{\"type\":null,\"extra\":{\"a\":[1,2]}}]"));
+    assertEquals(4, timeline.size());
+    assertEquals(AutoPlayTimeline.BLACK_KEY, timeline.getType(0));
+    assertEquals(AutoPlayTimeline.WHITE_KEY, timeline.getType(1));
+    assertEquals(2, timeline.getGroup(1));
+    assertEquals(250, timeline.getBreakTime(1));
+    assertEquals(AutoPlayTimeline.NULL_KEY, timeline.getType(2));
+    assertEquals(1, timeline.getPosition(2));
+    assertEquals(AutoPlayTimeline.NULL_KEY, timeline.getType(3));
+  }
+
+  @Test public void rejectsMalformedEntriesWithPosition() {
+    assertRejected("[\n {\"type\":1,\"group\":4},\n {\"type\":1,\"group\":\"x\"}\n]", "$[1].group", 3);
+    assertRejected("[{\"type\":3}]", "$[0].type", 1);
+    assertRejected("[{\"type\":true}]", "$[0].type", 1);
+    assertRejected("[{\"break\":-5}]", "$[0].break", 1);
+    assertRejected("[{},\n1]", "$[1]", 2);
+    assertRejected("[{\"type\":1", "$[0].type", 1);
+    assertRejected("[] []", "$", 1);
+  }
+
+  @Test public void decodesLargeFileIncrementally() throws Exception {
+    // 按需生成 100000 个音符的 JSON，整个文件从未完整存在于内存中
+    final int notes = 100000;
+    Reader reader = new Reader() {
+      private final StringBuilder chunk = new StringBuilder();
+      private int note = 0;
+      private int offset = 0;
+
+      @Override public int read(char[] buffer, int off, int len) {
+        if (offset == chunk.length()) {
+          chunk.setLength(0);
+          offset = 0;
+          if (note > notes) {
+            return -1;
+          }
+          if (note == 0) {
+            chunk.append('[');
+          }
+          if (note < notes) {
+            chunk.append(note > 0 ? "," : "")
+                .append("{\"type\":")
+                .append(note % 2)
+                .append(",\"group\":")
+                .append(note % 8)
+                .append(",\"position\":0,\"break\":")
+                .append(note % 1000)
+                .append('}');
+          } else {
+            chunk.append(']');
+          }
+          note++;
+        }
+        int count = Math.min(len, chunk.length() - offset);
+        chunk.getChars(offset, offset + count, buffer, off);
+        offset += count;
+        return count;
+      }
+
+      @Override public void close() {
+      }
+    };
+    AutoPlayTimeline timeline = AutoPlayJsonDecoder.decode(reader);
+    assertEquals(notes, timeline.size());
+    assertEquals(AutoPlayTimeline.WHITE_KEY, timeline.getType(notes - 1));
+    assertEquals((notes - 1) % 8, timeline.getGroup(notes - 1));
+    assertEquals((notes - 1) % 1000, timeline.getBreakTime(notes - 1));
+  }
+
+  private static void assertRejected(String json, String path, int line) {
+    try {
+      AutoPlayJsonDecoder.decode(new StringReader(json));
+      fail("expected decode error for " + json);
+    } catch (ScoreParseException e) {
+      String prefix = AutoPlayJsonDecoder.AUTO_PLAY_JSON_WRONG + ":" + path + ":";
+      assertEquals(prefix, e.getMessage().substring(0, Math.min(prefix.length(),
+          e.getMessage().length())));
+      assertEquals(line, e.getLine());
+    }
+  }
+
+  private Reader asset(String name) throws Exception {
+    InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+    assertNotNull(name, is);
+    return new InputStreamReader(is, "UTF-8");
+  }
+}
@@ -0,0 +1,65 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import com.chengtao.pianoview.listener.OnAutoPlayNoteListener;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 自动播放调度测试：使用虚拟时钟检查按下/松开的时间和前瞻范围。
+ */
+public class AutoPlaySchedulerTest {
+  private final List<String> events = new ArrayList<>();
+  private long now = 0;
+
+  private final AutoPlayScheduler scheduler =
+      new AutoPlayScheduler(2, 1000, new OnAutoPlayNoteListener() {
+        @Override
+        public void onAutoPlayNoteDown(int keyIndex, int lowestKeyIndex, int highestKeyIndex) {
+          events.add(now + " down " + keyIndex + " " + lowestKeyIndex + "-" + highestKeyIndex);
+        }
+
+        @Override public void onAutoPlayNoteUp() {
+          events.add(now + " up");
+        }
+      }) {
+        @Override protected void sleep(long millis) {
+          now += millis;
+        }
+      };
+
+  @Test public void schedulesNotesWithLookahead() throws Exception {
+    scheduler.offer(40, 400);
+    scheduler.offer(AutoPlayTimeline.NULL_KEY, 0, 0, 200);
+    scheduler.offer(AutoPlayTimeline.WHITE_KEY, 4, 0, 800);
+    assertEquals(0, events.size());
+    // 窗口已满，开始播放第一个音符
+    scheduler.offer(50, 600);
+    scheduler.drain();
+    String[] expected = {
+        "0 down 40 39-40", "200 up",
+        "500 up",
+        "600 down 39 39-50", "1000 up",
+        "1400 down 50 50-50", "1700 up"
+    };
+    assertEquals(expected.length, events.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], events.get(i));
+    }
+  }
+
+  @Test public void clearDropsPendingNotes() throws Exception {
+    scheduler.offer(40, 400);
+    scheduler.offer(41, 400);
+    scheduler.offer(42, 400);
+    scheduler.offer(43, 400);
+    scheduler.clear();
+    scheduler.drain();
+    assertEquals(2, events.size());
+    assertEquals("0 down 40 40-42", events.get(0));
+    assertEquals("200 up", events.get(1));
+  }
+}
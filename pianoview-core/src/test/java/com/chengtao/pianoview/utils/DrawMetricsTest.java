@@ -0,0 +1,63 @@
+package com.chengtao.pianoview.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 绘制开销统计测试：计数、快照和重置，以及记录和轮询时不分配对象。
+ */
+public class DrawMetricsTest {
+  @Test public void snapshotReportsCounters() {
+    DrawMetrics metrics = new DrawMetrics();
+    metrics.recordRebuild(5000000);
+    metrics.recordDraw(1000000, 88, 52);
+    metrics.recordDraw(3000000, 88, 52);
+    DrawMetrics.Snapshot snapshot = metrics.getSnapshot();
+    assertEquals(2, snapshot.getDrawCount());
+    assertEquals(176, snapshot.getKeysDrawn());
+    assertEquals(104, snapshot.getTextsDrawn());
+    assertEquals(4000000, snapshot.getDrawNanos());
+    assertEquals(2000000, snapshot.getAverageDrawNanos());
+    assertEquals(3000000, snapshot.getLastDrawNanos());
+    assertEquals(3000000, snapshot.getMaxDrawNanos());
+    assertTrue(snapshot.getDrawP50Nanos() >= 1000000 && snapshot.getDrawP50Nanos() < 1040000);
+    assertEquals(1, snapshot.getRebuildCount());
+    assertEquals(5000000, snapshot.getLastRebuildNanos());
+
+    metrics.reset();
+    assertSame(snapshot, metrics.getSnapshot(snapshot));
+    assertEquals(0, snapshot.getDrawCount());
+    assertEquals(0, snapshot.getDrawP99Nanos());
+    assertEquals(0, snapshot.getRebuildNanos());
+  }
+
+  @Test public void recordingAndPollingDoNotAllocate() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    DrawMetrics metrics = new DrawMetrics();
+    DrawMetrics.Snapshot snapshot = new DrawMetrics.Snapshot();
+    // 预热，避免把类加载计算在内
+    drawFrames(metrics, snapshot, 1000);
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    drawFrames(metrics, snapshot, 10000);
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    assertTrue("allocated " + allocated, allocated < 10000);
+    assertEquals(11000, snapshot.getDrawCount());
+  }
+
+  private static void drawFrames(DrawMetrics metrics, DrawMetrics.Snapshot snapshot, int frames) {
+    for (int i = 0; i < frames; i++) {
+      metrics.recordDraw(100000 + i % 5000, 88, 52);
+      metrics.getSnapshot(snapshot);
+    }
+  }
+}
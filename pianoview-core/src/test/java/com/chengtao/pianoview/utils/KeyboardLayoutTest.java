@@ -0,0 +1,66 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 键盘布局测试：键的位置、边界快照和按坐标查找。
+ */
+public class KeyboardLayoutTest {
+  private final KeyboardLayout layout = new KeyboardLayout(40, 200, 25, 120);
+
+  @Test public void placesKeys() {
+    assertEquals(52 * 40, layout.getWidth());
+    // A0, A#0, B0
+    assertEquals(0, layout.getLeft(0));
+    assertEquals(40, layout.getRight(0));
+    assertTrue(layout.isBlack(1));
+    assertEquals(40 - 12, layout.getLeft(1));
+    assertEquals(40 + 12, layout.getRight(1));
+    assertEquals(120, layout.getBottom(1));
+    assertEquals(200, layout.getBottom(2));
+    // C8 是最后一个白键
+    assertEquals(87, layout.getWhiteKeyIndex(51));
+    assertEquals(51 * 40, layout.getLeft(87));
+    for (int keyIndex = 1; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      assertTrue(layout.getLeft(keyIndex) > layout.getLeft(keyIndex - 1));
+      assertEquals(PianoKeyIndex.getType(keyIndex) == AutoPlayTimeline.BLACK_KEY,
+          layout.isBlack(keyIndex));
+    }
+  }
+
+  @Test public void exposesEdgesAndVersion() {
+    for (int keyIndex = 0; keyIndex < PianoKeyIndex.KEY_COUNT; keyIndex++) {
+      assertEquals(layout.getLeft(keyIndex), layout.getEdge(keyIndex, KeyboardLayout.LEFT));
+      assertEquals(0, layout.getEdge(keyIndex, KeyboardLayout.TOP));
+      assertEquals(layout.getRight(keyIndex), layout.getEdge(keyIndex, KeyboardLayout.RIGHT));
+      assertEquals(layout.getBottom(keyIndex), layout.getEdge(keyIndex, KeyboardLayout.BOTTOM));
+    }
+    // 每个布局的版本号唯一，且按创建顺序递增
+    KeyboardLayout next = new KeyboardLayout(40, 200, 25, 120);
+    assertTrue(layout.getVersion() > 0);
+    assertTrue(next.getVersion() > layout.getVersion());
+  }
+
+  @Test public void findsKeys() {
+    // C4 = 39，左侧没有黑键，右侧是 C#4
+    int c4 = PianoKeyIndex.fromMidiNote(60);
+    int left = layout.getLeft(c4);
+    assertEquals(c4, layout.findKeyIndex(left, 0));
+    assertEquals(c4 + 1, layout.findKeyIndex(left + 39, 0));
+    assertEquals(c4, layout.findKeyIndex(left + 39, 120));
+    assertEquals(c4 + 1, layout.findKeyIndex(layout.getLeft(c4 + 1), 119));
+    assertEquals(c4, layout.findKeyIndex(layout.getLeft(c4 + 1) - 1, 0));
+    // D4 左上角属于 C#4
+    assertEquals(c4 + 1, layout.findKeyIndex(left + 40, 0));
+    assertEquals(c4 + 2, layout.findKeyIndex(left + 40, 199));
+    assertEquals(-1, layout.findKeyIndex(left, 200));
+    assertEquals(-1, layout.findKeyIndex(-1, 0));
+    assertEquals(-1, layout.findKeyIndex(layout.getWidth(), 0));
+    assertFalse(layout.isBlack(layout.findKeyIndex(layout.getWidth() - 1, 0)));
+  }
+}
@@ -0,0 +1,110 @@
+package com.chengtao.pianoview.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 延迟追踪测试：直方图分桶精度和百分位数、分段计时，以及记录时不分配对象。
+ */
+public class LatencyTracerTest {
+  @Test public void bucketsAreContiguousAndPrecise() {
+    int previous = -1;
+    for (long value = 0; value < 1 << 20; value++) {
+      int bucket = LatencyHistogram.bucketOf(value);
+      assertTrue(bucket == previous || bucket == previous + 1);
+      long highest = LatencyHistogram.highestValueOf(bucket);
+      assertTrue(value + " -> " + highest, highest >= value);
+      assertTrue(value + " -> " + highest, highest - value <= Math.max(1, value / 32));
+      previous = bucket;
+    }
+  }
+
+  @Test public void reportsPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getP99());
+    // 1..1000 微秒各一次
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertEquals(1000000L, histogram.getMax());
+    assertEquals(500500.0, histogram.getMean(), 0.001);
+    assertNear(500000L, histogram.getP50());
+    assertNear(950000L, histogram.getP95());
+    assertNear(990000L, histogram.getP99());
+    assertEquals(1000000L, histogram.getValueAtPercentile(100));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+  }
+
+  @Test public void tracesSegmentsOnTheEventThread() throws Exception {
+    LatencyTracer tracer = new LatencyTracer();
+    tracer.beginEvent(1000, 3000);
+    tracer.markKeyResolved(3500);
+    tracer.markAudioStart(3600);
+    tracer.markAudioSubmitted(4600);
+    // 同一事件中的第二个琴键
+    tracer.markKeyResolved(5000);
+    tracer.markAudioStart(5000);
+    tracer.markAudioSubmitted(5200);
+    tracer.endEvent();
+    // 事件结束后以及其他线程的播放不计入
+    tracer.markAudioStart(6000);
+    tracer.markAudioSubmitted(7000);
+    tracer.beginEvent(8000, 8000);
+    Thread other = new Thread(new Runnable() {
+      @Override public void run() {
+        tracer.markKeyResolved(9000);
+        tracer.markAudioStart(9000);
+        tracer.markAudioSubmitted(9000);
+      }
+    });
+    other.start();
+    other.join();
+    tracer.endEvent();
+
+    LatencyHistogram total = tracer.getHistogram(LatencyTracer.Segment.TOTAL);
+    assertEquals(2, total.getCount());
+    assertEquals(4200, total.getMax());
+    assertEquals(2000, tracer.getHistogram(LatencyTracer.Segment.DISPATCH).getMax());
+    assertEquals(2000, tracer.getHistogram(LatencyTracer.Segment.KEY_RESOLUTION).getMax());
+    assertEquals(100, tracer.getHistogram(LatencyTracer.Segment.KEY_TO_AUDIO).getMax());
+    assertEquals(1000, tracer.getHistogram(LatencyTracer.Segment.AUDIO_SUBMIT).getMax());
+  }
+
+  @Test public void recordingDoesNotAllocate() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    LatencyTracer tracer = new LatencyTracer();
+    // 预热，避免把类加载计算在内
+    trace(tracer, 10000);
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    trace(tracer, 100000);
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    assertTrue("allocated " + allocated, allocated < 10000);
+    assertEquals(110000, tracer.getHistogram(LatencyTracer.Segment.TOTAL).getCount());
+  }
+
+  private static void trace(LatencyTracer tracer, int events) {
+    for (int i = 0; i < events; i++) {
+      long t = i * 1000L;
+      tracer.beginEvent(t, t + 300);
+      tracer.markKeyResolved(t + 400);
+      tracer.markAudioStart(t + 450);
+      tracer.markAudioSubmitted(t + 900 + i % 100);
+      tracer.endEvent();
+    }
+  }
+
+  private static void assertNear(long expected, long actual) {
+    assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 32);
+  }
+}
@@ -0,0 +1,179 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 标准 MIDI 文件转换测试，测试文件在内存中生成。
+ */
+public class MidiConvertUtilsTest {
+
+  @Test public void keyIndexRoundTrip() {
+    for (int index = 0; index < PianoKeyIndex.KEY_COUNT; index++) {
+      assertEquals(index, PianoKeyIndex.indexOf(PianoKeyIndex.getType(index),
+          PianoKeyIndex.getGroup(index), PianoKeyIndex.getPosition(index)));
+      assertEquals(index, PianoKeyIndex.fromMidiNote(PianoKeyIndex.toMidiNote(index)));
+    }
+    assertKey(PianoKeyIndex.fromMidiNote(21), AutoPlayTimeline.WHITE_KEY, 0, 0);
+    assertKey(PianoKeyIndex.fromMidiNote(22), AutoPlayTimeline.BLACK_KEY, 0, 0);
+    assertKey(PianoKeyIndex.fromMidiNote(23), AutoPlayTimeline.WHITE_KEY, 0, 1);
+    assertKey(PianoKeyIndex.fromMidiNote(60), AutoPlayTimeline.WHITE_KEY, 4, 0);
+    assertKey(PianoKeyIndex.fromMidiNote(70), AutoPlayTimeline.BLACK_KEY, 4, 4);
+    assertKey(PianoKeyIndex.fromMidiNote(108), AutoPlayTimeline.WHITE_KEY, 8, 0);
+    assertEquals(-1, PianoKeyIndex.fromMidiNote(20));
+    assertEquals(-1, PianoKeyIndex.fromMidiNote(109));
+    assertEquals(-1, PianoKeyIndex.indexOf(AutoPlayTimeline.BLACK_KEY, 8, 0));
+  }
+
+  @Test public void formatZeroWithRunningStatus() throws Exception {
+    // C4 E4 G4 每拍一个，默认速度 120 BPM，后两个音符使用 running status
+    Track track = new Track()
+        .event(0, 0x90, 60, 100)
+        .event(480, 60, 0)
+        .event(0, 64, 100)
+        .event(480, 64, 0)
+        .event(0, 67, 100)
+        .event(240, 0x80, 67, 0)
+        .endOfTrack(240);
+    AutoPlayTimeline timeline = convert(midiFile(0, 480, track));
+    assertEquals(3, timeline.size());
+    assertNote(timeline, 0, AutoPlayTimeline.WHITE_KEY, 4, 0, 500);
+    assertNote(timeline, 1, AutoPlayTimeline.WHITE_KEY, 4, 2, 500);
+    assertNote(timeline, 2, AutoPlayTimeline.WHITE_KEY, 4, 4, 500);
+  }
+
+  @Test public void formatOneMergesTracksWithTempoMap() throws Exception {
+    // 第 960 tick 起速度加倍
+    Track tempo = new Track().tempo(0, 500000).tempo(960, 250000).endOfTrack(0);
+    Track melody = new Track()
+        .event(0, 0x90, 60, 90)
+        .event(480, 62, 90)
+        .event(480, 64, 90)
+        .event(480, 65, 90)
+        .endOfTrack(480);
+    Track bass = new Track()
+        .event(240, 0x91, 48, 90)
+        // 打击乐通道和钢琴范围之外的音符被忽略
+        .event(0, 0x99, 36, 90)
+        .event(0, 0x91, 20, 90)
+        .event(720, 49, 90)
+        .endOfTrack(0);
+    AutoPlayTimeline timeline = convert(midiFile(1, 480, tempo, melody, bass));
+    assertEquals(6, timeline.size());
+    assertNote(timeline, 0, AutoPlayTimeline.WHITE_KEY, 4, 0, 250);
+    assertNote(timeline, 1, AutoPlayTimeline.WHITE_KEY, 3, 0, 250);
+    assertNote(timeline, 2, AutoPlayTimeline.WHITE_KEY, 4, 1, 500);
+    // 同一时刻按音轨顺序，和弦的间隔为 0
+    assertNote(timeline, 3, AutoPlayTimeline.WHITE_KEY, 4, 2, 0);
+    assertNote(timeline, 4, AutoPlayTimeline.BLACK_KEY, 3, 0, 250);
+    assertNote(timeline, 5, AutoPlayTimeline.WHITE_KEY, 4, 3, 250);
+  }
+
+  @Test public void rejectsMalformedFiles() throws Exception {
+    assertRejected(new byte[] { 'R', 'I', 'F', 'F', 0, 0, 0, 6 }, MidiConvertUtils.Error.NOT_MIDI_FILE);
+    Track track = new Track().event(0, 0x90, 60, 100).endOfTrack(0);
+    assertRejected(midiFile(2, 480, track), MidiConvertUtils.Error.MIDI_FORMAT_NOT_SUPPORTED);
+    byte[] complete = midiFile(0, 480, track);
+    byte[] truncated = new byte[complete.length - 3];
+    System.arraycopy(complete, 0, truncated, 0, truncated.length);
+    assertRejected(truncated, MidiConvertUtils.Error.MIDI_FILE_WRONG);
+    assertRejected(midiFile(0, 480, new Track().event(0, 60, 100)),
+        MidiConvertUtils.Error.MIDI_FILE_WRONG);
+  }
+
+  private static AutoPlayTimeline convert(byte[] file) throws ScoreParseException {
+    return MidiConvertUtils.convertByInputStream(new ByteArrayInputStream(file));
+  }
+
+  private static void assertRejected(byte[] file, String error) {
+    try {
+      convert(file);
+      fail("expected " + error);
+    } catch (ScoreParseException e) {
+      assertEquals(error, e.getMessage().split(":")[0]);
+    }
+  }
+
+  private static void assertKey(int index, int type, int group, int position) {
+    assertEquals(type, PianoKeyIndex.getType(index));
+    assertEquals(group, PianoKeyIndex.getGroup(index));
+    assertEquals(position, PianoKeyIndex.getPosition(index));
+  }
+
+  private static void assertNote(AutoPlayTimeline timeline, int i, int type, int group,
+      int position, long breakTime) {
+    assertEquals("type " + i, type, timeline.getType(i));
+    assertEquals("group " + i, group, timeline.getGroup(i));
+    assertEquals("position " + i, position, timeline.getPosition(i));
+    assertEquals("break " + i, breakTime, timeline.getBreakTime(i));
+  }
+
+  private static byte[] midiFile(int format, int division, Track... tracks) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeInt(out, 0x4D546864);
+    writeInt(out, 6);
+    writeShort(out, format);
+    writeShort(out, tracks.length);
+    writeShort(out, division);
+    for (Track track : tracks) {
+      writeInt(out, 0x4D54726B);
+      byte[] data = track.out.toByteArray();
+      writeInt(out, data.length);
+      out.write(data, 0, data.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value >>> 16);
+    writeShort(out, value);
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write((value >> 8) & 0xFF);
+    out.write(value & 0xFF);
+  }
+
+  /**
+   * 音轨数据，事件的字节原样写入(便于构造 running status)
+   */
+  private static final class Track {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    Track event(int delta, int... bytes) {
+      writeVarLen(delta);
+      for (int b : bytes) {
+        out.write(b);
+      }
+      return this;
+    }
+
+    Track tempo(int delta, int tempo) {
+      return event(delta, 0xFF, 0x51, 3, tempo >> 16, (tempo >> 8) & 0xFF, tempo & 0xFF);
+    }
+
+    Track endOfTrack(int delta) {
+      return event(delta, 0xFF, 0x2F, 0);
+    }
+
+    private void writeVarLen(int value) {
+      int buffer = value & 0x7F;
+      while ((value >>= 7) > 0) {
+        buffer <<= 8;
+        buffer |= (value & 0x7F) | 0x80;
+      }
+      while (true) {
+        out.write(buffer & 0xFF);
+        if ((buffer & 0x80) == 0) {
+          break;
+        }
+        buffer >>= 8;
+      }
+    }
+  }
+}
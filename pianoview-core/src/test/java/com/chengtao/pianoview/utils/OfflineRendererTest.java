@@ -0,0 +1,107 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 离线渲染测试：用常量采样验证混音位置、削波和发声数上限，并用库中的真实采样渲染一首乐谱。
+ */
+public class OfflineRendererTest {
+  // 1000 Hz 单声道，1 帧 = 1 毫秒
+  private static final int RATE = 1000;
+  private static final int C4 = PianoKeyIndex.fromMidiNote(60);
+  private static final int D4 = PianoKeyIndex.fromMidiNote(62);
+
+  @Test public void mixesNotesAtTheirStartTimes() throws Exception {
+    SampleBank bank = new SampleBank()
+        .put(C4, constant(100, 10))
+        .put(D4, constant(1000, 4));
+    // C4 在 0 毫秒，休止符，D4 在 5 毫秒，C4 在 8 毫秒
+    AutoPlayTimeline timeline = new AutoPlayTimeline.Builder()
+        .add(AutoPlayTimeline.WHITE_KEY, 4, 0, 3)
+        .add(AutoPlayTimeline.NULL_KEY, 0, 0, 2)
+        .add(AutoPlayTimeline.WHITE_KEY, 4, 1, 3)
+        .add(AutoPlayTimeline.WHITE_KEY, 4, 0, 0)
+        .build();
+    WavUtils.Pcm pcm = render(new OfflineRenderer(bank), timeline);
+    assertEquals(RATE, pcm.getSampleRate());
+    assertEquals(1, pcm.getChannels());
+    short[] expected = new short[18];
+    for (int i = 0; i < 10; i++) {
+      expected[i] += 100;
+      expected[8 + i] += 100;
+    }
+    for (int i = 5; i < 9; i++) {
+      expected[i] += 1000;
+    }
+    assertSamples(expected, pcm.getSamples());
+  }
+
+  @Test public void clipsAndLimitsVoices() throws Exception {
+    SampleBank bank = new SampleBank().put(C4, constant(20000, 10));
+    AutoPlayTimeline.Builder chord = new AutoPlayTimeline.Builder();
+    for (int i = 0; i < 3; i++) {
+      chord.add(AutoPlayTimeline.WHITE_KEY, 4, 0, 2);
+    }
+    // 两个音符叠加超出 16 位范围
+    WavUtils.Pcm clipped = render(new OfflineRenderer(bank), chord.build());
+    assertEquals(Short.MAX_VALUE, clipped.getSamples()[3]);
+    // 最多一个发声时，后一个音符截断前一个
+    WavUtils.Pcm single = render(new OfflineRenderer(bank).setMaxVoices(1), chord.build());
+    assertEquals(14, single.getFrameCount());
+    for (short sample : single.getSamples()) {
+      assertEquals(20000, sample);
+    }
+  }
+
+  @Test public void rendersBundledSamplesFasterThanRealTime() throws Exception {
+    File raw = new File("src/main/res/raw");
+    if (!raw.isDirectory()) {
+      return;
+    }
+    SampleBank bank = SampleBank.load(raw);
+    assertEquals(22050, bank.getSampleRate());
+    assertEquals(2, bank.getChannels());
+    PianoConvertUtils.Score score = PianoConvertUtils.convertByConfigString(
+        "{name:小星星;frequency:300;}1,1,5,5,6,6,5*2|4,4,3,3,2,2,1*2|");
+    File wav = File.createTempFile("render", ".wav");
+    try {
+      OfflineRenderer.Result result = new OfflineRenderer(bank).render(score.getTimeline(), wav);
+      assertEquals(44 + result.getFrameCount() * 4, wav.length());
+      assertTrue(result.toString(), result.getSpeed() > 1);
+      WavUtils.Pcm pcm = WavUtils.read(wav);
+      assertEquals(result.getFrameCount(), pcm.getFrameCount());
+    } finally {
+      wav.delete();
+    }
+  }
+
+  private static WavUtils.Pcm render(OfflineRenderer renderer, AutoPlayTimeline timeline)
+      throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    renderer.render(timeline, Channels.newChannel(out));
+    return WavUtils.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static WavUtils.Pcm constant(int value, int frames) {
+    short[] samples = new short[frames];
+    for (int i = 0; i < frames; i++) {
+      samples[i] = (short) value;
+    }
+    return new WavUtils.Pcm(RATE, 1, samples);
+  }
+
+  private static void assertSamples(short[] expected, short[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals("sample " + i, expected[i], actual[i]);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 演奏录制测试：时间线换算、环形缓冲区覆盖、JSON 和 MIDI 导出的往返，以及记录时不分配对象。
+ */
+public class PerformanceRecorderTest {
+  private static final long MS = 1000000L;
+  // C4、E4、G4
+  private static final int C4 = PianoKeyIndex.fromMidiNote(60);
+  private static final int E4 = PianoKeyIndex.fromMidiNote(64);
+  private static final int G4 = PianoKeyIndex.fromMidiNote(67);
+
+  @Test public void timelineUsesTimeBetweenKeyDowns() {
+    PerformanceRecorder recorder = recordArpeggio(1000 * MS);
+    assertEquals(6, recorder.size());
+    assertTrue(recorder.isKeyDown(0));
+    assertEquals(C4, recorder.getKeyIndex(0));
+    assertEquals(250 * MS, recorder.getTime(0));
+    AutoPlayTimeline timeline = recorder.toTimeline();
+    assertEquals(3, timeline.size());
+    assertNote(timeline, 0, AutoPlayTimeline.WHITE_KEY, 4, 0, 500);
+    assertNote(timeline, 1, AutoPlayTimeline.WHITE_KEY, 4, 2, 500);
+    // 最后一个音符按住 375 毫秒
+    assertNote(timeline, 2, AutoPlayTimeline.WHITE_KEY, 4, 4, 375);
+  }
+
+  @Test public void ringBufferKeepsLatestEvents() {
+    PerformanceRecorder recorder = new PerformanceRecorder(5);
+    recorder.start(0);
+    for (int i = 0; i < 20; i++) {
+      recorder.recordKeyDown(i, i * MS);
+      recorder.recordKeyUp(i, i * MS + MS / 2);
+    }
+    recorder.stop();
+    recorder.recordKeyDown(0, 100 * MS);
+    // 容量向上取整为 8
+    assertEquals(8, recorder.size());
+    assertEquals(32, recorder.getOverwrittenCount());
+    assertEquals(16, recorder.getKeyIndex(0));
+    assertTrue(recorder.isKeyDown(0));
+    assertEquals(19, recorder.getKeyIndex(7));
+    assertFalse(recorder.isKeyDown(7));
+  }
+
+  @Test public void jsonAndMidiRoundTrip() throws Exception {
+    PerformanceRecorder recorder = recordArpeggio(0);
+    AutoPlayTimeline timeline = recorder.toTimeline();
+
+    StringWriter json = new StringWriter();
+    recorder.writeJson(json);
+    assertSame(timeline, AutoPlayJsonDecoder.decode(new StringReader(json.toString())));
+
+    ByteArrayOutputStream midi = new ByteArrayOutputStream();
+    recorder.writeMidi(midi);
+    AutoPlayTimeline imported =
+        MidiConvertUtils.convertByInputStream(new ByteArrayInputStream(midi.toByteArray()));
+    assertEquals(timeline.size(), imported.size());
+    for (int i = 0; i < timeline.size() - 1; i++) {
+      assertEquals(timeline.getBreakTime(i), imported.getBreakTime(i));
+      assertEquals(timeline.getGroup(i), imported.getGroup(i));
+      assertEquals(timeline.getPosition(i), imported.getPosition(i));
+    }
+  }
+
+  @Test public void recordingDoesNotAllocate() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    PerformanceRecorder recorder = new PerformanceRecorder(1024);
+    recorder.start(0);
+    // 预热，避免把类加载计算在内
+    record(recorder, 10000);
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    record(recorder, 100000);
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    // 允许测量本身的少量开销，远小于每个事件一个对象
+    assertTrue("allocated " + allocated, allocated < 10000);
+  }
+
+  private static void record(PerformanceRecorder recorder, int events) {
+    for (int i = 0; i < events; i++) {
+      recorder.recordKeyDown(i % PianoKeyIndex.KEY_COUNT, i);
+      recorder.recordKeyUp(i % PianoKeyIndex.KEY_COUNT, i + 1);
+    }
+  }
+
+  private static PerformanceRecorder recordArpeggio(long start) {
+    PerformanceRecorder recorder = new PerformanceRecorder();
+    recorder.start(start);
+    recorder.recordKeyDown(C4, start + 250 * MS);
+    recorder.recordKeyUp(C4, start + 625 * MS);
+    recorder.recordKeyDown(E4, start + 750 * MS);
+    recorder.recordKeyDown(G4, start + 1250 * MS);
+    recorder.recordKeyUp(E4, start + 1500 * MS);
+    recorder.recordKeyUp(G4, start + 1625 * MS);
+    recorder.stop();
+    return recorder;
+  }
+
+  private static void assertSame(AutoPlayTimeline expected, AutoPlayTimeline actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertNote(actual, i, expected.getType(i), expected.getGroup(i), expected.getPosition(i),
+          expected.getBreakTime(i));
+    }
+  }
+
+  private static void assertNote(AutoPlayTimeline timeline, int i, int type, int group,
+      int position, long breakTime) {
+    assertEquals("type " + i, type, timeline.getType(i));
+    assertEquals("group " + i, group, timeline.getGroup(i));
+    assertEquals("position " + i, position, timeline.getPosition(i));
+    assertEquals("break " + i, breakTime, timeline.getBreakTime(i));
+  }
+}
@@ -0,0 +1,243 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.listener.OnScoreParseListener;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 简谱配置解析的黄金输出测试。黄金文件由旧的基于正则的解析器生成，
+ * 每行格式为 "type,group,position,frequency"，第一行为乐曲名称。
+ */
+public class PianoConvertUtilsTest {
+
+  @Test public void flightOfTheBumbleBeeMatchesGolden() throws Throwable {
+    assertMatchesGolden("flight_of_the_bumble_bee");
+  }
+
+  @Test public void simpleLittleStarMatchesGolden() throws Throwable {
+    assertMatchesGolden("simple_little_star_config");
+  }
+
+  @Test public void highOctaveRejectsSixAndEightTimes() throws Throwable {
+    assertWrongNote("{name:a;}HO3*6", "HO3*6");
+    assertWrongNote("{name:a;}HOH3*8", "HOH3*8");
+    assertEquals(1, keys("{name:a;}LO3*6").size());
+    assertEquals(1, keys("{name:a;}LOL3*8").size());
+  }
+
+  @Test public void wrongNoteReportsWholeToken() throws Throwable {
+    assertWrongNote("{name:a;}1,2|3*0.3,4", "3*0.3");
+    assertWrongNote("{name:a;}1,8", "8");
+    assertWrongNote("{name:a;}1,HX1", "HX1");
+  }
+
+  @Test public void accidentalsResetAtBarLine() throws Throwable {
+    List<PianoConvertUtils.PianoKey> keys = keys("{name:a;}H1,1|1");
+    assertEquals(PianoConvertUtils.PianoKey.BLACK_KEY, keys.get(0).getType());
+    assertEquals(PianoConvertUtils.PianoKey.BLACK_KEY, keys.get(1).getType());
+    assertEquals(PianoConvertUtils.PianoKey.WHITE_KEY, keys.get(2).getType());
+  }
+
+  @Test public void errorsCarryLineAndColumn() {
+    assertErrorAt("{\n  name:a;\n}\n1, 2,\n  3*0.3, 4",
+        PianoConvertUtils.Error.MUSIC_NOTE_CONFIG_WRONG + ":3*0.3", 5, 3);
+    assertErrorAt("{\n  name:a;\n  frequency:20;\n}1",
+        PianoConvertUtils.Error.FREQUENCY_NOT_IN_RANGE, 3, 3);
+    assertErrorAt("{\n  name:a;\n  frequency:99999999999999999999;\n}1",
+        PianoConvertUtils.Error.FREQUENCY_NOT_IN_RANGE, 3, 3);
+    assertErrorAt("{tune:C;;tune:CD;name:a}1", PianoConvertUtils.Error.TUNE_LENGTH_NOT_ONE, 1, 10);
+    assertErrorAt(" {name:a}1", PianoConvertUtils.Error.CONFIG_FILE_WRONG, 1, 1);
+    assertErrorAt("{name:a", PianoConvertUtils.Error.CONFIG_FILE_WRONG, 1, 8);
+    assertErrorAt("\n{tune:C}1", PianoConvertUtils.Error.CONFIG_FILE_WRONG, 1, 1);
+  }
+
+  @Test public void scoreIsImmutable() throws Throwable {
+    PianoConvertUtils.Score score = PianoConvertUtils.convertByConfigString("{ name : a b ; }1, 2");
+    assertEquals(" a b ", score.getName());
+    assertEquals("{name: a b ;}1,2", score.getConfig());
+    assertEquals(2, score.getKeyCount());
+    score.getKeys().get(0).setGroup(7);
+    assertEquals(3, score.getKeyGroup(0));
+    try {
+      score.getKeys().clear();
+      fail("keys must be unmodifiable");
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test public void readerEmitsSameNotesAsList() throws Throwable {
+    InputStream is = getClass().getClassLoader().getResourceAsStream("flight_of_the_bumble_bee");
+    final List<PianoConvertUtils.PianoKey> expected = PianoConvertUtils.convertByInputStream(
+        getClass().getClassLoader().getResourceAsStream("flight_of_the_bumble_bee")).getKeys();
+    final StringBuilder events = new StringBuilder();
+    final int[] index = { 0 };
+    PianoConvertUtils.convertByReader(new InputStreamReader(is, "UTF-8"),
+        new OnScoreParseListener() {
+          @Override public void onScoreStart(String name) {
+            events.append("start:").append(name);
+          }
+
+          @Override public boolean onScoreNote(int type, int group, int position, long frequency) {
+            PianoConvertUtils.PianoKey key = expected.get(index[0]++);
+            assertEquals(key.getType(), type);
+            assertEquals(key.getGroup(), group);
+            assertEquals(key.getPosition(), position);
+            assertEquals(key.getFrequency(), frequency);
+            return true;
+          }
+
+          @Override public void onScoreBarLine() {
+          }
+
+          @Override public void onScoreEnd() {
+            events.append(":end");
+          }
+        });
+    assertEquals(expected.size(), index[0]);
+    assertEquals("start:\"野 蜂 飞 舞\":end", events.toString());
+  }
+
+  @Test public void readerStreamsWithoutBufferingTheScore() throws Throwable {
+    // 一个按需生成音符的 Reader：整个乐谱从未完整存在于内存中
+    final int notes = 200000;
+    Reader reader = new Reader() {
+      private final String header = "{name:stream;}";
+      private int position = 0;
+
+      @Override public int read(char[] buffer, int offset, int length) {
+        int total = header.length() + notes * 2;
+        if (position >= total) {
+          return -1;
+        }
+        int count = 0;
+        while (count < length && position < total) {
+          char c;
+          if (position < header.length()) {
+            c = header.charAt(position);
+          } else {
+            int i = position - header.length();
+            c = i % 2 == 0 ? (char) ('1' + (i / 2) % 7) : (i % 16 == 15 ? '|' : ',');
+          }
+          buffer[offset + count++] = c;
+          position++;
+        }
+        return count;
+      }
+
+      @Override public void close() {
+      }
+    };
+    final int[] counts = new int[2];
+    PianoConvertUtils.convertByReader(reader, new OnScoreParseListener() {
+      @Override public void onScoreStart(String name) {
+      }
+
+      @Override public boolean onScoreNote(int type, int group, int position, long frequency) {
+        counts[0]++;
+        return true;
+      }
+
+      @Override public void onScoreBarLine() {
+        counts[1]++;
+      }
+
+      @Override public void onScoreEnd() {
+      }
+    });
+    assertEquals(notes, counts[0]);
+    assertEquals(notes / 8, counts[1]);
+  }
+
+  @Test public void listenerCanStopParsing() throws Throwable {
+    final int[] count = { 0 };
+    final boolean[] ended = { false };
+    PianoConvertUtils.convertByReader(new StringReader("{name:a;}1,2,3,HX"),
+        new OnScoreParseListener() {
+          @Override public void onScoreStart(String name) {
+          }
+
+          @Override public boolean onScoreNote(int type, int group, int position, long frequency) {
+            return ++count[0] < 2;
+          }
+
+          @Override public void onScoreBarLine() {
+          }
+
+          @Override public void onScoreEnd() {
+            ended[0] = true;
+          }
+        });
+    assertEquals(2, count[0]);
+    assertFalse(ended[0]);
+  }
+
+  private static List<PianoConvertUtils.PianoKey> keys(String config) throws Throwable {
+    return PianoConvertUtils.convertByConfigString(config).getKeys();
+  }
+
+  private static void assertWrongNote(String config, String token) {
+    try {
+      PianoConvertUtils.convertByConfigString(config);
+      fail("expected parse error for " + token);
+    } catch (ScoreParseException e) {
+      assertEquals(PianoConvertUtils.Error.MUSIC_NOTE_CONFIG_WRONG + ":" + token, e.getMessage());
+    }
+  }
+
+  private static void assertErrorAt(String config, String message, int line, int column) {
+    try {
+      PianoConvertUtils.convertByConfigString(config);
+      fail("expected parse error " + message);
+    } catch (ScoreParseException e) {
+      assertEquals(message, e.getMessage());
+      assertEquals("line", line, e.getLine());
+      assertEquals("column", column, e.getColumn());
+    }
+  }
+
+  private void assertMatchesGolden(String asset) throws Throwable {
+    InputStream is = getClass().getClassLoader().getResourceAsStream(asset);
+    assertNotNull(asset, is);
+    PianoConvertUtils.Score score = PianoConvertUtils.convertByInputStream(is);
+    StringBuilder actual = new StringBuilder();
+    actual.append(score.getName()).append('\n');
+    for (PianoConvertUtils.PianoKey key : score.getKeys()) {
+      actual.append(key.getType())
+          .append(',')
+          .append(key.getGroup())
+          .append(',')
+          .append(key.getPosition())
+          .append(',')
+          .append(key.getFrequency())
+          .append('\n');
+    }
+    assertEquals(readResource("golden/" + asset + ".golden"), actual.toString());
+  }
+
+  private String readResource(String name) throws IOException {
+    InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+    assertNotNull(name, is);
+    StringBuilder sb = new StringBuilder();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        sb.append(line).append('\n');
+      }
+    } finally {
+      reader.close();
+    }
+    return sb.toString();
+  }
+}
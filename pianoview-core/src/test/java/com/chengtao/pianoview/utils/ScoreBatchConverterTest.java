@@ -0,0 +1,180 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.listener.OnBatchConvertListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 批量转换测试：单个文件出错不影响其他文件，以及取消之后未开始的文件不再转换。
+ */
+public class ScoreBatchConverterTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private File directory;
+  private ScoreBatchConverter converter;
+
+  @Before public void setUp() throws Exception {
+    directory = File.createTempFile("score-batch", "");
+    directory.delete();
+    directory.mkdirs();
+    converter = new ScoreBatchConverter(4);
+  }
+
+  @After public void tearDown() {
+    converter.shutdown();
+    delete(directory);
+  }
+
+  @Test public void errorsDoNotAbortBatch() throws Exception {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      files.add(write("song" + i + ".txt", "{name:s" + i + ";}1,2,3|4,5,6|"));
+    }
+    files.add(write("broken.txt", "{name:broken;}1,2,X"));
+    files.add(write("timeline.json", "[{\"type\":1,\"group\":4,\"position\":0,\"currentBreakTime\":500}]"));
+    files.add(new File(directory, "missing.txt"));
+    File output = new File(directory, "out");
+
+    final List<Integer> progress = new ArrayList<>();
+    final AtomicBoolean finished = new AtomicBoolean(false);
+    ScoreBatchConverter.Task task = converter.convert(files, null, output,
+        new OnBatchConvertListener() {
+          @Override public void onScoreConverted(ScoreBatchConverter.Result result,
+              int completed, int total) {
+            synchronized (progress) {
+              progress.add(completed);
+            }
+          }
+
+          @Override public void onBatchFinished(List<ScoreBatchConverter.Result> results,
+              boolean cancelled) {
+            finished.set(!cancelled);
+          }
+        });
+    List<ScoreBatchConverter.Result> results = task.get();
+    assertTrue(task.isDone());
+    assertTrue(finished.get());
+    assertEquals(files.size(), progress.size());
+    assertEquals(files.size(), results.size());
+    for (int i = 0; i < 20; i++) {
+      ScoreBatchConverter.Result result = results.get(i);
+      assertTrue(result.toString(), result.isSuccess());
+      assertEquals("s" + i, result.getScore().getName());
+      assertEquals(6, ScoreBinaryUtils.map(result.getOutput()).size());
+    }
+    ScoreBatchConverter.Result broken = results.get(20);
+    assertFalse(broken.isSuccess());
+    assertTrue(broken.getError() instanceof ScoreParseException);
+    assertTrue(broken.getError().getMessage()
+        .startsWith(PianoConvertUtils.Error.MUSIC_NOTE_CONFIG_WRONG));
+    assertEquals(1, results.get(21).getScore().size());
+    assertEquals(PianoConvertUtils.Error.FILE_NOT_EXIT, results.get(22).getError().getMessage());
+  }
+
+  @Test public void sameStemKeepsSeparateOutputs() throws Exception {
+    write("song.txt", "{name:notation;}1,2,3|");
+    write("song.json", "[{\"type\":1,\"group\":4,\"position\":0,\"currentBreakTime\":500}]");
+    File output = new File(directory, "out");
+    List<ScoreBatchConverter.Result> results =
+        converter.convert(ScoreBatchConverter.listScores(directory), null, output, null).get();
+    assertEquals(2, results.size());
+    assertEquals("song.json.pvsc", results.get(0).getOutput().getName());
+    assertEquals("song.txt.pvsc", results.get(1).getOutput().getName());
+    assertEquals(1, ScoreBinaryUtils.map(results.get(0).getOutput()).size());
+    assertEquals(3, ScoreBinaryUtils.map(results.get(1).getOutput()).size());
+    assertEquals("notation", ScoreBinaryUtils.map(results.get(1).getOutput()).getName());
+  }
+
+  @Test public void listenerErrorsDoNotAbortBatch() throws Exception {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      files.add(write("song" + i + ".txt", "{name:s" + i + ";}1,2,3|"));
+    }
+    final AtomicBoolean finished = new AtomicBoolean(false);
+    ScoreBatchConverter.Task task = converter.convert(files, null, null,
+        new OnBatchConvertListener() {
+          @Override public void onScoreConverted(ScoreBatchConverter.Result result,
+              int completed, int total) {
+            throw new IllegalStateException("listener failure");
+          }
+
+          @Override public void onBatchFinished(List<ScoreBatchConverter.Result> results,
+              boolean cancelled) {
+            finished.set(true);
+          }
+        });
+    List<ScoreBatchConverter.Result> results = task.get();
+    assertTrue(finished.get());
+    assertEquals(files.size(), task.getCompletedCount());
+    for (ScoreBatchConverter.Result result : results) {
+      assertTrue(result.toString(), result.isSuccess());
+    }
+  }
+
+  @Test public void cancelSkipsRemainingFiles() throws Exception {
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      files.add(write("song" + i + ".txt", "{name:s" + i + ";}1,2,3|"));
+    }
+    // 单线程时文件按顺序转换，第一个文件完成后取消
+    ScoreBatchConverter sequential = new ScoreBatchConverter(1);
+    final ScoreBatchConverter.Task[] holder = new ScoreBatchConverter.Task[1];
+    final Object lock = new Object();
+    ScoreBatchConverter.Task task;
+    synchronized (lock) {
+      task = sequential.convert(files, new ScoreCache(null, 1 << 20), null,
+          new OnBatchConvertListener() {
+            @Override public void onScoreConverted(ScoreBatchConverter.Result result,
+                int completed, int total) {
+              synchronized (lock) {
+                holder[0].cancel();
+              }
+            }
+
+            @Override public void onBatchFinished(List<ScoreBatchConverter.Result> results,
+                boolean cancelled) {
+            }
+          });
+      holder[0] = task;
+    }
+    List<ScoreBatchConverter.Result> results = task.get();
+    sequential.shutdown();
+    assertTrue(task.isCancelled());
+    assertTrue(results.get(0).isSuccess());
+    assertNull(results.get(0).getOutput());
+    for (int i = 1; i < files.size(); i++) {
+      assertTrue(results.get(i).isCancelled());
+      assertNull(results.get(i).getScore());
+    }
+  }
+
+  private File write(String name, String content) throws IOException {
+    File file = new File(directory, name);
+    FileOutputStream fos = new FileOutputStream(file);
+    fos.write(content.getBytes(UTF_8));
+    fos.close();
+    return file;
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
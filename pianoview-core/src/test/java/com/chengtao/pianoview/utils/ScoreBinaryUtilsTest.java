@@ -0,0 +1,108 @@
+package com.chengtao.pianoview.utils;
+
+import com.chengtao.pianoview.entity.AutoPlaySource;
+import com.chengtao.pianoview.entity.AutoPlayTimeline;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 二进制乐谱的往返测试：从文本来源写入再映射回来，结果必须与文本解析完全一致。
+ */
+public class ScoreBinaryUtilsTest {
+
+  @Test public void notationRoundTripThroughMappedFile() throws Exception {
+    for (String asset : new String[] { "flight_of_the_bumble_bee", "simple_little_star_config" }) {
+      PianoConvertUtils.Score score = PianoConvertUtils.convertByInputStream(open(asset));
+      File file = File.createTempFile(asset, ".pvsc");
+      try {
+        ScoreBinaryUtils.write(score, file);
+        ScoreBinaryUtils.BinaryScore binary = ScoreBinaryUtils.map(file);
+        assertEquals(score.getName(), binary.getName());
+        assertSameNotes(score.getTimeline(), binary);
+        assertEquals(score.getBarLineCount(), binary.getBarLineCount());
+        for (int i = 0; i < score.getBarLineCount(); i++) {
+          assertEquals(score.getBarLine(i), binary.getBarLine(i));
+        }
+      } finally {
+        file.delete();
+      }
+    }
+  }
+
+  @Test public void jsonRoundTripWithoutBarIndex() throws Exception {
+    AutoPlayTimeline timeline =
+        AutoPlayJsonDecoder.decode(new InputStreamReader(open("little_star.json"), "UTF-8"));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ScoreBinaryUtils.write(null, timeline, null, out);
+    ScoreBinaryUtils.BinaryScore binary =
+        ScoreBinaryUtils.wrap(ByteBuffer.wrap(out.toByteArray()));
+    assertEquals("", binary.getName());
+    assertEquals(0, binary.getBarLineCount());
+    assertSameNotes(timeline, binary);
+  }
+
+  @Test public void restsAndBarLinesSurvive() throws Exception {
+    PianoConvertUtils.Score score =
+        PianoConvertUtils.convertByConfigString("{name:休止;}1,0*2|LOL7*0.25,HOH6|");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ScoreBinaryUtils.write(score, out);
+    ScoreBinaryUtils.BinaryScore binary =
+        ScoreBinaryUtils.wrap(ByteBuffer.wrap(out.toByteArray()));
+    assertEquals("休止", binary.getName());
+    assertSameNotes(score.getTimeline(), binary);
+    assertEquals(AutoPlayTimeline.NULL_KEY, binary.getType(1));
+    assertEquals(2, binary.getBarLineCount());
+    assertEquals(2, binary.getBarLine(0));
+    assertEquals(4, binary.getBarLine(1));
+  }
+
+  @Test public void rejectsCorruptFiles() throws Exception {
+    PianoConvertUtils.Score score = PianoConvertUtils.convertByConfigString("{name:a;}1,2,3|4");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ScoreBinaryUtils.write(score, out);
+    byte[] bytes = out.toByteArray();
+
+    byte[] badMagic = bytes.clone();
+    badMagic[0] = 'X';
+    assertRejected(badMagic, ScoreBinaryUtils.Error.NOT_BINARY_SCORE);
+    byte[] badVersion = bytes.clone();
+    badVersion[5] = 9;
+    assertRejected(badVersion, ScoreBinaryUtils.Error.VERSION_NOT_SUPPORTED + ":9");
+    byte[] truncated = new byte[bytes.length - 4];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    assertRejected(truncated, ScoreBinaryUtils.Error.BINARY_SCORE_WRONG);
+  }
+
+  private static void assertRejected(byte[] bytes, String error) {
+    try {
+      ScoreBinaryUtils.wrap(ByteBuffer.wrap(bytes));
+      fail("expected " + error);
+    } catch (ScoreParseException e) {
+      assertEquals(error, e.getMessage());
+    }
+  }
+
+  private static void assertSameNotes(AutoPlaySource expected, AutoPlaySource actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals("type " + i, expected.getType(i), actual.getType(i));
+      assertEquals("group " + i, expected.getGroup(i), actual.getGroup(i));
+      assertEquals("position " + i, expected.getPosition(i), actual.getPosition(i));
+      assertEquals("break " + i, expected.getBreakTime(i), actual.getBreakTime(i));
+    }
+  }
+
+  private InputStream open(String asset) {
+    InputStream is = getClass().getClassLoader().getResourceAsStream(asset);
+    assertNotNull(asset, is);
+    return is;
+  }
+}
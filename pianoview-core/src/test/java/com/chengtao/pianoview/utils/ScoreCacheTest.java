@@ -0,0 +1,103 @@
+package com.chengtao.pianoview.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 已编译乐谱缓存测试：内存命中、磁盘命中、内容变化后失效以及按字节预算淘汰。
+ */
+public class ScoreCacheTest {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final byte[] LITTLE_STAR =
+      "{name:小星星;}1,1,5,5,6,6,5*2|4,4,3,3,2,2,1*2|".getBytes(UTF_8);
+  private File directory;
+
+  @Before public void setUp() throws Exception {
+    directory = File.createTempFile("score-cache", "");
+    directory.delete();
+  }
+
+  @After public void tearDown() {
+    new ScoreCache(directory, 0).clear();
+    directory.delete();
+  }
+
+  @Test public void secondOpenHitsMemory() throws Exception {
+    ScoreCache cache = new ScoreCache(directory, 1 << 20);
+    ScoreBinaryUtils.BinaryScore first = cache.get(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR);
+    ScoreBinaryUtils.BinaryScore second = cache.get(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR);
+    assertSame(first, second);
+    assertEquals("小星星", first.getName());
+    assertEquals(14, first.size());
+    assertEquals(2, first.getBarLineCount());
+    ScoreCache.Stats stats = cache.getStats();
+    assertEquals(1, stats.getMisses());
+    assertEquals(1, stats.getMemoryHits());
+    assertEquals(first.getByteSize(), stats.getMemoryBytes());
+  }
+
+  @Test public void newInstanceHitsDisk() throws Exception {
+    new ScoreCache(directory, 1 << 20).get(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR);
+    ScoreCache cache = new ScoreCache(directory, 1 << 20);
+    ScoreBinaryUtils.BinaryScore score = cache.get(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR);
+    assertEquals(14, score.size());
+    assertEquals(1, cache.getStats().getDiskHits());
+    assertEquals(0, cache.getStats().getMisses());
+  }
+
+  @Test public void changedContentOrFormatInvalidates() throws Exception {
+    byte[] changed = "{name:小星星;}1,1,5,5,6,6,5*2|4,4,3,3,2,2,1*4|".getBytes(UTF_8);
+    assertNotEquals(ScoreCache.key(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR),
+        ScoreCache.key(ScoreCache.SourceFormat.NOTATION, changed));
+    assertNotEquals(ScoreCache.key(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR),
+        ScoreCache.key(ScoreCache.SourceFormat.JSON, LITTLE_STAR));
+    ScoreCache cache = new ScoreCache(directory, 1 << 20);
+    ScoreBinaryUtils.BinaryScore original = cache.get(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR);
+    ScoreBinaryUtils.BinaryScore score = cache.get(ScoreCache.SourceFormat.NOTATION, changed);
+    assertEquals(original.getBreakTime(13) * 2, score.getBreakTime(13));
+    assertEquals(2, cache.getStats().getMisses());
+  }
+
+  @Test public void corruptDiskEntryIsRecompiled() throws Exception {
+    new ScoreCache(directory, 1 << 20).get(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR);
+    File file = new File(directory,
+        ScoreCache.key(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR) + ".pvsc");
+    FileOutputStream fos = new FileOutputStream(file);
+    fos.write(new byte[] { 1, 2, 3 });
+    fos.close();
+    ScoreCache cache = new ScoreCache(directory, 1 << 20);
+    assertEquals(14, cache.get(ScoreCache.SourceFormat.NOTATION, LITTLE_STAR).size());
+    assertEquals(1, cache.getStats().getMisses());
+  }
+
+  @Test public void evictsLeastRecentlyUsedOverBudget() throws Exception {
+    ScoreCache probe = new ScoreCache(null, Long.MAX_VALUE);
+    int size = probe.get(ScoreCache.SourceFormat.NOTATION, score(0)).getByteSize();
+    // 预算只够两首同样大小的乐谱
+    ScoreCache cache = new ScoreCache(null, size * 2);
+    cache.get(ScoreCache.SourceFormat.NOTATION, score(0));
+    cache.get(ScoreCache.SourceFormat.NOTATION, score(1));
+    cache.get(ScoreCache.SourceFormat.NOTATION, score(0));
+    cache.get(ScoreCache.SourceFormat.NOTATION, score(2));
+    ScoreCache.Stats stats = cache.getStats();
+    assertEquals(1, stats.getEvictions());
+    assertEquals(2, stats.getMemoryEntries());
+    // score(1) 最久未使用，已被淘汰；score(0) 仍在内存中
+    cache.get(ScoreCache.SourceFormat.NOTATION, score(0));
+    assertEquals(2, cache.getStats().getMemoryHits());
+    cache.get(ScoreCache.SourceFormat.NOTATION, score(1));
+    assertEquals(4, cache.getStats().getMisses());
+  }
+
+  private static byte[] score(int variant) {
+    return ("{name:s" + variant + ";}1,2,3|4,5,6|").getBytes(UTF_8);
+  }
+}